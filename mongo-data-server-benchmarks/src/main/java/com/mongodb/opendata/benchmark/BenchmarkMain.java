@@ -0,0 +1,39 @@
+package com.mongodb.opendata.benchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Runs JMH with the given arguments and, unless
+ * <code>-rf</code> or <code>-rff</code> is passed, writes the results as JSON
+ * to <code>jmh-result-&lt;timestamp&gt;.json</code> so runs can be collected
+ * for trend tracking.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                          # everything
+ * java -jar target/benchmarks.jar XmlDataParserBenchmark   # one suite
+ * java -jar target/benchmarks.jar -p dataset=synthetic-64mb-w200-n3 JsonDataParserBenchmark
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf") && !jmhArgs.contains("-rff") && !jmhArgs.contains("-h")
+                && !jmhArgs.contains("-l")) {
+            String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            jmhArgs.add(0, "json");
+            jmhArgs.add(0, "-rf");
+            jmhArgs.add(0, "jmh-result-" + timestamp + ".json");
+            jmhArgs.add(0, "-rff");
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+    }
+
+}
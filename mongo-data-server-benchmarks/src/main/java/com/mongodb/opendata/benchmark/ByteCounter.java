@@ -0,0 +1,25 @@
+package com.mongodb.opendata.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary JMH result for the parser benchmarks. Add the input size to
+ * <code>bytes</code> after each invocation and JMH reports it as a rate next
+ * to the primary score, i.e. bytes parsed per second.
+ */
+@State(Scope.Thread)
+@AuxCounters
+public class ByteCounter {
+
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.mongodb.opendata.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Input files for the benchmarks. A dataset is either the name of one of the
+ * sample feeds on the classpath (e.g. <code>recalls.json</code>) or a
+ * generated one described as
+ *
+ * <pre>
+ * synthetic-&lt;megabytes&gt;mb[-w&lt;width&gt;][-n&lt;nesting&gt;]
+ * </pre>
+ *
+ * e.g. <code>synthetic-64mb-w200-n3</code> for 64 MB of records with 200 fields
+ * and three levels of sub-documents. Width defaults to 16 and nesting to 1.
+ *
+ * Files are written to java.io.tmpdir once and reused by later runs, so large
+ * synthetic inputs are only generated the first time.
+ */
+public final class Datasets {
+
+    public static final String RECORDS_ARRAY_NAME = "results";
+    public static final String XML_RECORD_NAME = "record";
+
+    public enum Format {
+        JSON, XML
+    }
+
+    private static final String SYNTHETIC_PREFIX = "synthetic-";
+
+    private static final Map<String, String> SAMPLE_RECORD_NAMES = new HashMap<String, String>();
+    static {
+        SAMPLE_RECORD_NAMES.put("recalls.json", "results");
+        SAMPLE_RECORD_NAMES.put("RecallsDataSet.xml", "PRODUCT");
+        SAMPLE_RECORD_NAMES.put("HospitalReadmissionReduction_small.xml", "row");
+    }
+
+    private Datasets() {
+    }
+
+    public static File file(String dataset, Format format) throws IOException {
+        if (isSynthetic(dataset)) {
+            Spec spec = new Spec(dataset);
+            return synthetic(format, spec.bytes, spec.width, spec.nesting);
+        }
+        return resource(dataset);
+    }
+
+    /**
+     * @return The records array (JSON) or record element (XML) name to parse
+     *         the dataset with
+     */
+    public static String recordName(String dataset, Format format) {
+        if (isSynthetic(dataset)) {
+            return format == Format.JSON ? RECORDS_ARRAY_NAME : XML_RECORD_NAME;
+        }
+        String name = SAMPLE_RECORD_NAMES.get(dataset);
+        if (name == null) {
+            throw new IllegalArgumentException("Unknown record name for " + dataset);
+        }
+        return name;
+    }
+
+    /**
+     * @return <code>count</code> distinct column names in the style of the
+     *         open data feeds
+     */
+    public static List<String> keys(int count) {
+        List<String> keys = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add("column_" + i + "_" + Integer.toString(i * 7919, 36));
+        }
+        return keys;
+    }
+
+    private static boolean isSynthetic(String dataset) {
+        return dataset.startsWith(SYNTHETIC_PREFIX);
+    }
+
+    /**
+     * Copies a classpath resource to a temporary file so every dataset is
+     * read through the same FileInputStream path.
+     */
+    public static File resource(String name) throws IOException {
+        InputStream input = Datasets.class.getClassLoader().getResourceAsStream(name);
+        if (input == null) {
+            throw new IllegalArgumentException("No such dataset: " + name);
+        }
+        File file = new File(System.getProperty("java.io.tmpdir"), "opendata-bench-" + name);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+            }
+        } finally {
+            output.close();
+            input.close();
+        }
+        return file;
+    }
+
+    /**
+     * Generates (or reuses) a document of about <code>targetBytes</code> bytes
+     * whose records have <code>width</code> fields and <code>nesting</code>
+     * levels of sub-documents. The content only depends on the arguments.
+     */
+    public static File synthetic(Format format, long targetBytes, int width, int nesting) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "opendata-bench-" + targetBytes + "-w" + width
+                + "-n" + nesting + "." + format.name().toLowerCase());
+        if (file.exists() && file.length() >= targetBytes) {
+            return file;
+        }
+        File partial = new File(file.getPath() + ".tmp");
+        CountingWriter writer = new CountingWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(partial), "UTF-8"), 1 << 16));
+        Random random = new Random(42);
+        try {
+            if (format == Format.JSON) {
+                writer.write("{\"" + RECORDS_ARRAY_NAME + "\":[\n");
+            } else {
+                writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<data>\n");
+            }
+            long record = 0;
+            while (writer.count < targetBytes) {
+                if (format == Format.JSON) {
+                    if (record > 0) {
+                        writer.write(",\n");
+                    }
+                    writeJsonObject(writer, random, width, nesting);
+                } else {
+                    writeXmlElement(writer, random, XML_RECORD_NAME, width, nesting);
+                    writer.write('\n');
+                }
+                record++;
+            }
+            writer.write(format == Format.JSON ? "\n]}\n" : "</data>\n");
+        } finally {
+            writer.close();
+        }
+        if (!partial.renameTo(file)) {
+            throw new IOException("Could not rename " + partial + " to " + file);
+        }
+        return file;
+    }
+
+    private static void writeJsonObject(Writer writer, Random random, int width, int nesting) throws IOException {
+        writer.write('{');
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("\"field_" + i + "\":");
+            String value = value(random, i);
+            writer.write(i % 4 == 0 ? "\"" + value + "\"" : value);
+        }
+        if (nesting > 0) {
+            writer.write(",\"nested\":");
+            writeJsonObject(writer, random, Math.max(1, width / 2), nesting - 1);
+        }
+        writer.write('}');
+    }
+
+    private static void writeXmlElement(Writer writer, Random random, String name, int width, int nesting)
+            throws IOException {
+        writer.write("<" + name + ">");
+        for (int i = 0; i < width; i++) {
+            writer.write("<field_" + i + ">" + value(random, i) + "</field_" + i + ">");
+        }
+        if (nesting > 0) {
+            writeXmlElement(writer, random, "nested", Math.max(1, width / 2), nesting - 1);
+        }
+        writer.write("</" + name + ">");
+    }
+
+    /*
+     * Cycles through string, integer, float and boolean values.
+     */
+    private static String value(Random random, int field) {
+        switch (field % 4) {
+        case 0:
+            return "value " + Long.toString(random.nextLong(), 36);
+        case 1:
+            return Integer.toString(random.nextInt(100000));
+        case 2:
+            return Double.toString(random.nextDouble() * 1000);
+        default:
+            return random.nextBoolean() ? "true" : "false";
+        }
+    }
+
+    private static class Spec {
+
+        long bytes;
+        int width = 16;
+        int nesting = 1;
+
+        Spec(String dataset) {
+            for (String part : dataset.substring(SYNTHETIC_PREFIX.length()).toLowerCase().split("-")) {
+                if (part.endsWith("mb")) {
+                    bytes = Long.parseLong(part.substring(0, part.length() - 2)) * 1024L * 1024L;
+                } else if (part.startsWith("w")) {
+                    width = Integer.parseInt(part.substring(1));
+                } else if (part.startsWith("n")) {
+                    nesting = Integer.parseInt(part.substring(1));
+                } else {
+                    throw new IllegalArgumentException("Bad synthetic dataset spec: " + dataset);
+                }
+            }
+            if (bytes == 0) {
+                throw new IllegalArgumentException("Synthetic dataset needs a size, e.g. synthetic-64mb: " + dataset);
+            }
+        }
+    }
+
+    private static class CountingWriter extends Writer {
+
+        private final Writer delegate;
+        long count;
+
+        CountingWriter(Writer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            delegate.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str) throws IOException {
+            delegate.write(str);
+            count += str.length();
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            delegate.write(c);
+            count++;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+}
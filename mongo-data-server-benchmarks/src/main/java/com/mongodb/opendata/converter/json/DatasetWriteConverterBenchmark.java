@@ -0,0 +1,93 @@
+package com.mongodb.opendata.converter.json;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.dspl.model.DataType;
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Info;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.benchmark.Datasets;
+
+/**
+ * Cost of converting the DSPL metadata of a dataset with
+ * <code>columnCount</code> columns to a DBObject.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=benchmark-log4j.xml")
+public class DatasetWriteConverterBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int columnCount;
+
+    DatasetWriteConverter converter = new DatasetWriteConverter();
+    Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = constructDataset(Datasets.keys(columnCount));
+    }
+
+    @Benchmark
+    public DBObject convert() {
+        return converter.convert(dataset);
+    }
+
+    private Dataset constructDataset(List<String> keys) {
+        Dataset dataset = new Dataset();
+        dataset.setDatasetId("benchmark");
+        dataset.setName("benchmark");
+
+        Info info = new Info();
+        info.setName("benchmark");
+        dataset.setInfo(info);
+
+        Info sliceInfo = new Info();
+        sliceInfo.setName("slice");
+        Slice slice = new Slice();
+        slice.setName("slice");
+        slice.setType("table");
+        slice.setTable("slice");
+        slice.setInfo(sliceInfo);
+        dataset.addSlice(slice);
+
+        Table table = new Table();
+        table.setId("slice");
+        dataset.addTable(table);
+        Info tableInfo = new Info();
+        tableInfo.setName("slice");
+        table.setInfo(tableInfo);
+
+        for (String key : keys) {
+            slice.addDimension(key);
+
+            Column column = new Column();
+            column.setId(key);
+            column.setName(key);
+            column.setType(DataType.STRING);
+            table.addColumn(column);
+        }
+        return dataset;
+    }
+
+}
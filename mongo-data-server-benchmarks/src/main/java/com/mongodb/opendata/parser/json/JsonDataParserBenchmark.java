@@ -0,0 +1,87 @@
+package com.mongodb.opendata.parser.json;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mongodb.DBObject;
+import com.mongodb.opendata.benchmark.ByteCounter;
+import com.mongodb.opendata.benchmark.Datasets;
+import com.mongodb.opendata.benchmark.Datasets.Format;
+import com.mongodb.opendata.parser.ParseDataListener;
+
+/**
+ * Parse throughput of the JSON parsers. The <code>bytes</code> counter is
+ * reported as a rate, i.e. bytes parsed per second.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar JsonDataParserBenchmark -p dataset=synthetic-1024mb-w50-n2
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Dlog4j.configuration=benchmark-log4j.xml" })
+public class JsonDataParserBenchmark {
+
+    @Param({ "recalls.json", "synthetic-1024mb" })
+    public String dataset;
+
+    File file;
+    String recordsArrayName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Datasets.file(dataset, Format.JSON);
+        recordsArrayName = Datasets.recordName(dataset, Format.JSON);
+    }
+
+    @Benchmark
+    public void simpleJsonParser(ByteCounter counter, Blackhole blackhole) throws IOException {
+        SimpleJsonParser parser = new SimpleJsonParser();
+        parser.setRecordsArrayName(recordsArrayName);
+        parser.parse(open(), consumer(blackhole));
+        counter.bytes += file.length();
+    }
+
+    @Benchmark
+    public void keyCompressingJsonParser(ByteCounter counter, Blackhole blackhole) throws IOException {
+        KeyCompressingJsonParser parser = new KeyCompressingJsonParser();
+        parser.setRecordsArrayName(recordsArrayName);
+        parser.parse(open(), consumer(blackhole));
+        counter.bytes += file.length();
+    }
+
+    private BufferedInputStream open() throws IOException {
+        return new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    }
+
+    static ParseDataListener consumer(final Blackhole blackhole) {
+        return new ParseDataListener() {
+
+            @Override
+            public void recordComplete(DBObject record) {
+                blackhole.consume(record);
+            }
+        };
+    }
+
+}
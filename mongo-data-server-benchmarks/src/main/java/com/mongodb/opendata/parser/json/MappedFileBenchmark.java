@@ -0,0 +1,86 @@
+package com.mongodb.opendata.parser.json;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mongodb.opendata.benchmark.ByteCounter;
+import com.mongodb.opendata.benchmark.Datasets;
+import com.mongodb.opendata.benchmark.Datasets.Format;
+import com.mongodb.opendata.util.MappedFileInputStream;
+
+/**
+ * Parse throughput of {@link KeyCompressingJsonParser} reading a file through
+ * a {@link FileInputStream} (<code>stream</code>) or a
+ * {@link MappedFileInputStream} (<code>mapped</code>). Use a dataset larger
+ * than the machine's memory to measure reads from disk rather than from the
+ * page cache.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar MappedFileBenchmark -p dataset=synthetic-16384mb
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Dlog4j.configuration=benchmark-log4j.xml" })
+public class MappedFileBenchmark {
+
+    @Param({ "recalls.json", "synthetic-1024mb" })
+    public String dataset;
+
+    @Param({ "stream", "mapped" })
+    public String path;
+
+    File file;
+    String recordsArrayName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Datasets.file(dataset, Format.JSON);
+        recordsArrayName = Datasets.recordName(dataset, Format.JSON);
+    }
+
+    @Benchmark
+    public void keyCompressingJsonParser(ByteCounter counter, Blackhole blackhole) throws IOException {
+        KeyCompressingJsonParser parser = new KeyCompressingJsonParser();
+        parser.setRecordsArrayName(recordsArrayName);
+        InputStream input = open();
+        try {
+            parser.parse(input, JsonDataParserBenchmark.consumer(blackhole));
+        } finally {
+            input.close();
+        }
+        counter.bytes += file.length();
+    }
+
+    private InputStream open() throws IOException {
+        if ("stream".equals(path)) {
+            return new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        }
+        if ("mapped".equals(path)) {
+            return new MappedFileInputStream(file);
+        }
+        throw new IllegalArgumentException("Unknown path: " + path);
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.mongodb.opendata.parser.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mongodb.DBObject;
+import com.mongodb.opendata.benchmark.ByteCounter;
+import com.mongodb.opendata.benchmark.Datasets;
+import com.mongodb.opendata.benchmark.Datasets.Format;
+import com.mongodb.opendata.parser.ParseDataListener;
+
+/**
+ * Parse throughput of the streaming XML parser. The <code>bytes</code>
+ * counter is reported as a rate, i.e. bytes parsed per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Dlog4j.configuration=benchmark-log4j.xml" })
+public class XmlDataParserBenchmark {
+
+    @Param({ "RecallsDataSet.xml", "synthetic-256mb" })
+    public String dataset;
+
+    File file;
+    String recordName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Datasets.file(dataset, Format.XML);
+        recordName = Datasets.recordName(dataset, Format.XML);
+    }
+
+    @Benchmark
+    public void xmlDataParser(ByteCounter counter, final Blackhole blackhole) throws IOException,
+            XMLStreamException {
+        XmlDataParser parser = new XmlDataParser();
+        parser.setRecordName(recordName);
+        parser.parse(new BufferedInputStream(new FileInputStream(file), 1 << 16), new ParseDataListener() {
+
+            @Override
+            public void recordComplete(DBObject record) {
+                blackhole.consume(record);
+            }
+        });
+        counter.bytes += file.length();
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.mongodb.opendata.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.opendata.benchmark.Datasets;
+
+/**
+ * Time to build the key compression dictionary for a record with
+ * <code>keyCount</code> columns, in one pass ({@link CompressedKeyMap}) and
+ * one key at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=benchmark-log4j.xml")
+public class KeyCompressionUtilsBenchmark {
+
+    @Param({ "100", "10000", "100000" })
+    public int keyCount;
+
+    List<String> keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = Datasets.keys(keyCount);
+    }
+
+    @Benchmark
+    public Map<String, String> getKeyToCompressedKeyMap() {
+        return KeyCompressionUtils.getKeyToCompressedKeyMap(keys);
+    }
+
+    @Benchmark
+    public CompressedKeyMap compressedKeyMap() {
+        return CompressedKeyMap.build(keys);
+    }
+
+    @Benchmark
+    public Map<String, String> addKeyToCompressedKeyToKeyMap() {
+        Map<String, String> compressedKeyToKeyMap = new HashMap<String, String>();
+        for (String key : keys) {
+            KeyCompressionUtils.addKeyToCompressedKeyToKeyMap(key, compressedKeyToKeyMap);
+        }
+        return compressedKeyToKeyMap;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.mongodb.opendata.writer.json;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.DBObject;
+import com.mongodb.opendata.benchmark.ByteCounter;
+import com.mongodb.opendata.benchmark.Datasets;
+import com.mongodb.opendata.benchmark.Datasets.Format;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.parser.ParseDataListener;
+import com.mongodb.opendata.parser.json.SimpleJsonParser;
+
+/**
+ * Serializing a page of query results: the JsonGenerator based
+ * {@link JsonResultWriter} against the previous DBObject.toString() per record
+ * through a PrintWriter. Records come from a synthetic dataset with an
+ * ObjectId _id added, as they would be read back from MongoDB; output goes to
+ * a stream that only counts bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Dlog4j.configuration=benchmark-log4j.xml" })
+public class JsonResultWriterBenchmark {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Param({ "100000" })
+    public int records;
+
+    @Param({ "synthetic-128mb" })
+    public String dataset;
+
+    List<DBObject> results;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        results = new ArrayList<DBObject>(records);
+        SimpleJsonParser parser = new SimpleJsonParser();
+        parser.setRecordsArrayName(Datasets.recordName(dataset, Format.JSON));
+        parser.parse(new BufferedInputStream(new FileInputStream(Datasets.file(dataset, Format.JSON)), 1 << 16),
+                new ParseDataListener() {
+
+                    @Override
+                    public void recordComplete(DBObject record) {
+                        if (results.size() < records) {
+                            record.put("_id", new ObjectId());
+                            results.add(record);
+                        }
+                    }
+                });
+        if (results.size() < records) {
+            throw new IllegalStateException(dataset + " only has " + results.size() + " records");
+        }
+    }
+
+    @Benchmark
+    public void printWriterToString(ByteCounter counter) {
+        NullOutputStream output = new NullOutputStream();
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output,
+                UTF8)));
+        writer.println("{\"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            writer.print(results.get(i).toString());
+            if (i < results.size() - 1) {
+                writer.println(",");
+            }
+        }
+        writer.println("]}");
+        writer.flush();
+        counter.bytes += output.count;
+    }
+
+    @Benchmark
+    public void jsonResultWriter(ByteCounter counter) throws IOException {
+        NullOutputStream output = new NullOutputStream();
+        JsonResultWriter writer = new JsonResultWriter(output);
+        Response response = new Response();
+        response.setTotal((long) results.size());
+        writer.start(response);
+        for (DBObject record : results) {
+            writer.write(record);
+        }
+        response.setCount(results.size());
+        writer.end(response);
+        counter.bytes += output.count;
+    }
+
+    static class NullOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
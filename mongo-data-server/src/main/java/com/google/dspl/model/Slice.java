@@ -53,6 +53,10 @@ public final class Slice implements DatasetItem<Slice> {
   private List<String> metrics = new ArrayList<String>();
   
   private SortedMap<String, String> keyToCompressedKeyMap = new TreeMap<String, String>();
+  
+  private String recordName;
+  
+  private String rollupOf;
 
   /**
    * @return The unique identifier of the slice in the dataset
@@ -400,4 +404,40 @@ public void setType(String type) {
 public void setTable(String table) {
     this.table = table;
 }
+
+/**
+ * @return The compressed field name each original field name was stored
+ *         under, empty if keys were not compressed
+ */
+public SortedMap<String, String> getKeyToCompressedKeyMap() {
+    return keyToCompressedKeyMap;
+}
+
+public void setKeyToCompressedKeyMap(SortedMap<String, String> keyToCompressedKeyMap) {
+    this.keyToCompressedKeyMap = keyToCompressedKeyMap;
+}
+
+/**
+ * @return The element name of the records in the source XML document, used
+ *         when the slice is exported as XML; null for other sources
+ */
+public String getRecordName() {
+    return recordName;
+}
+
+public void setRecordName(String recordName) {
+    this.recordName = recordName;
+}
+
+/**
+ * @return The name of the slice whose records this slice aggregates, null if
+ *         it holds records rather than a rollup
+ */
+public String getRollupOf() {
+    return rollupOf;
+}
+
+public void setRollupOf(String rollupOf) {
+    this.rollupOf = rollupOf;
+}
 }
@@ -162,6 +162,8 @@ public final class Table implements DatasetItem<Table> {
         private String format;
         private Value constantValue;
         private ColumnMapping columnMapping;
+        private Double nullRatio;
+        private Long cardinality;
 
         /**
          * @return The identifier of the table column
@@ -236,6 +238,36 @@ public final class Table implements DatasetItem<Table> {
             this.columnMapping = columnMapping;
         }
 
+        /**
+         * @return The fraction of records without a value for the column, if
+         *         it was measured when loading
+         */
+        public Double getNullRatio() {
+            return nullRatio;
+        }
+
+        /**
+         * Sets the fraction of records without a value for the column
+         */
+        public void setNullRatio(Double nullRatio) {
+            this.nullRatio = nullRatio;
+        }
+
+        /**
+         * @return The estimated number of distinct values in the column, if it
+         *         was measured when loading
+         */
+        public Long getCardinality() {
+            return cardinality;
+        }
+
+        /**
+         * Sets the estimated number of distinct values in the column
+         */
+        public void setCardinality(Long cardinality) {
+            this.cardinality = cardinality;
+        }
+
         @Override
         public Column clone() {
             Column column = new Column();
@@ -244,6 +276,8 @@ public final class Table implements DatasetItem<Table> {
             column.type = type;
             column.constantValue = cloneItem(constantValue);
             column.columnMapping = cloneItem(columnMapping);
+            column.nullRatio = nullRatio;
+            column.cardinality = cardinality;
 
             checkState(equals(column));
             return column;
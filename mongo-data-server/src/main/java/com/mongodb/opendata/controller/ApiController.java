@@ -1,22 +1,33 @@
 package com.mongodb.opendata.controller;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Writer;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
-import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.domain.AggregateQuery;
+import com.mongodb.opendata.domain.Query;
+import com.mongodb.opendata.service.AggregateService;
+import com.mongodb.opendata.service.QueryParameters;
 import com.mongodb.opendata.service.QueryService;
+import com.mongodb.opendata.writer.ResultWriter;
+import com.mongodb.opendata.writer.csv.CsvResultWriter;
+import com.mongodb.opendata.writer.json.JsonResultWriter;
+import com.mongodb.opendata.writer.xml.XmlResultWriter;
 
 /**
  * Handles requests for the application home page.
@@ -30,22 +41,109 @@ public class ApiController {
 	@Autowired
 	private QueryService queryService;
 	
+	@Autowired
+	private AggregateService aggregateService;
+	
 	@RequestMapping(value = "/api/{dataSet}/{collection}", 
-			produces={"application/json", "application/xml"},
+			produces={"application/json", "application/xml", "text/csv"},
+			method = RequestMethod.GET)
+	public void xml(@PathVariable String dataSet,
+			@PathVariable String collection,
+			@RequestParam(value = QueryParameters.AFTER, required = false) String after,
+			@RequestParam(value = QueryParameters.LIMIT, required = false) Integer limit,
+			@RequestParam(value = QueryParameters.FIELDS, required = false) String fields,
+			@RequestParam(value = QueryParameters.SORT, required = false) String sort,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		
+		Query query = new Query(dataSet, collection);
+		query.setFilter(queryService.filter(dataSet, collection, parameters(request)));
+		query.setProjection(QueryParameters.projection(fields));
+		query.setSort(QueryParameters.sort(sort));
+		query.setAfter(after);
+		query.setLimit(limit != null ? limit : 0);
+		query.setUrl(pageUrl(request));
+		
+		queryService.query(query, resultWriter(request, response));
+	}
+	
+	@RequestMapping(value = "/api/{dataSet}/{collection}/aggregate", 
+			produces={"application/json", "application/xml", "text/csv"},
 			method = RequestMethod.GET)
-	public @ResponseBody Response xml(@PathVariable String dataSet,
-			@PathVariable String collection, Writer output, HttpServletRequest request) throws IOException {
+	public void aggregate(@PathVariable String dataSet,
+			@PathVariable String collection,
+			@RequestParam(value = QueryParameters.GROUP_BY, required = false) String groupBy,
+			@RequestParam(value = QueryParameters.METRICS, required = false) String metrics,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
 		
-		PrintWriter writer = new PrintWriter(output);
+		AggregateQuery query = new AggregateQuery(dataSet, collection);
+		query.setGroupBy(QueryParameters.groupBy(groupBy));
+		query.setAggregates(QueryParameters.aggregates(metrics));
+		query.setFilter(queryService.filter(dataSet, collection, parameters(request)));
+		aggregateService.aggregate(query, resultWriter(request, response));
+	}
+	
+	/**
+	 * Builds or rebuilds the rollup of a collection by a comma separated list
+	 * of dimensions.
+	 */
+	@RequestMapping(value = "/api/{dataSet}/{collection}/rollups", produces = "text/plain",
+			method = RequestMethod.POST)
+	public @ResponseBody String rollup(@PathVariable String dataSet,
+			@PathVariable String collection,
+			@RequestParam(value = "dimensions") String dimensions) {
+		return aggregateService.buildRollup(dataSet, collection, QueryParameters.groupBy(dimensions));
+	}
+	
+	/*
+	 * The writer for the format the request URI ends in, JSON by default.
+	 */
+	private ResultWriter resultWriter(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		// no Content-Length, so the container streams the body with chunked transfer encoding
 		String uri = request.getRequestURI();
-		if (uri.endsWith("json")) {
-			queryService.queryJson(dataSet, collection, writer);
-		} else if (uri.endsWith("xml")) {
-			
+		if (uri.endsWith("xml")) {
+			response.setContentType("application/xml;charset=UTF-8");
+			return new XmlResultWriter(response.getOutputStream());
 		} else if (uri.endsWith("csv")) {
-			
+			response.setContentType("text/csv;charset=UTF-8");
+			return new CsvResultWriter(response.getOutputStream());
+		}
+		response.setContentType("application/json;charset=UTF-8");
+		return new JsonResultWriter(response.getOutputStream());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Map<String, String[]> parameters(HttpServletRequest request) {
+		return request.getParameterMap();
+	}
+	
+	/*
+	 * The request URL and its parameters except "after", which next page links
+	 * are built from.
+	 */
+	private String pageUrl(HttpServletRequest request) {
+		StringBuilder url = new StringBuilder(request.getRequestURL());
+		String queryString = request.getQueryString();
+		if (queryString != null) {
+			char separator = '?';
+			for (String param : queryString.split("&")) {
+				if (param.length() > 0 && !param.equals("after") && !param.startsWith("after=")) {
+					url.append(separator).append(param);
+					separator = '&';
+				}
+			}
 		}
-		return null;
+		return url.toString();
+	}
+	
+	@ExceptionHandler(IllegalArgumentException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	public @ResponseBody String badRequest(IllegalArgumentException e) {
+		return e.getMessage();
+	}
+	
+	@RequestMapping(value = "/api/stats", produces = "text/plain", method = RequestMethod.GET)
+	public @ResponseBody String stats() {
+		return queryService.getStatistics().toString();
 	}
 
 }
@@ -7,7 +7,6 @@ import net.eusashead.hateoas.converter.hal.HalHttpMessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
-import org.springframework.data.mongodb.core.MongoFactoryBean;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.http.converter.HttpMessageConverter;
@@ -20,20 +19,14 @@ import com.theoryinpractise.halbuilder.api.RepresentationFactory;
 @Configuration
 public class AppConfig extends WebMvcConfigurationSupport {
 
+	/*
+	 * The Mongo instance is the pooled one defined in root-context.xml
+	 */
 	public @Bean MongoOperations mongoTemplate(Mongo mongo) {
 		MongoTemplate mongoTemplate = new MongoTemplate(mongo, "test");
 		return mongoTemplate;
 	}
 
-	/*
-	 * Factory bean that creates the Mongo instance
-	 */
-	public @Bean MongoFactoryBean mongo() {
-		MongoFactoryBean mongo = new MongoFactoryBean();
-		mongo.setHost("localhost");
-		return mongo;
-	}
-
 	/*
 	 * Use this post processor to translate any MongoExceptions thrown in @Repository annotated classes
 	 */
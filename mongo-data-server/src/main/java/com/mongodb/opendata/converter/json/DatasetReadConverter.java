@@ -1,7 +1,11 @@
 package com.mongodb.opendata.converter.json;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.core.convert.converter.Converter;
 
+import com.google.dspl.model.DataType;
 import com.google.dspl.model.Dataset;
 import com.google.dspl.model.Info;
 import com.google.dspl.model.Slice;
@@ -33,47 +37,95 @@ public class DatasetReadConverter implements Converter<DBObject, Dataset> {
         info.setDescription((String)dbo.get("info.description"));
         info.setUrl((String)dbo.get("info.url"));
         
-
+        DBObject slices = (DBObject)dbo.get("slices");
+        if (slices != null) {
+            for (String sliceName : slices.keySet()) {
+                DBObject sliceDbo = (DBObject)slices.get(sliceName);
+                Slice slice = new Slice();
+                dataset.addSlice(slice);
+                slice.setName(sliceName);
+                slice.setTable((String)sliceDbo.get("table"));
+                slice.setType((String)sliceDbo.get("type"));
+                
+                DBObject sliceInfoDbo = (DBObject)sliceDbo.get("info");
+                if (sliceInfoDbo != null) {
+                    Info sliceInfo = new Info();
+                    slice.setInfo(sliceInfo);
+                    sliceInfo.setName((String)sliceInfoDbo.get("name"));
+                    sliceInfo.setDescription((String)sliceInfoDbo.get("description"));
+                }
+                
+                slice.setDimensions(strings(sliceDbo.get("dimensions")));
+                slice.setMetrics(strings(sliceDbo.get("metrics")));
+                slice.setRecordName((String)sliceDbo.get("recordName"));
+                slice.setRollupOf((String)sliceDbo.get("rollupOf"));
+                
+                List<?> compressedKeys = (List<?>)sliceDbo.get("compressedKeys");
+                if (compressedKeys != null) {
+                    for (Object entry : compressedKeys) {
+                        DBObject entryDbo = (DBObject)entry;
+                        slice.getKeyToCompressedKeyMap().put((String)entryDbo.get("key"),
+                                (String)entryDbo.get("compressedKey"));
+                    }
+                }
+            }
+        }
         
-//        DBObject slices = new BasicDBObject();
-//        dbo.put("slices", slices);
-//        
-//        for (Slice slice : dataset.getSlices()) {
-//            DBObject sliceDbo = new BasicDBObject();
-//            slices.put(slice.getName(), sliceDbo);
-//            sliceDbo.put("table", slice.getTable());
-//            sliceDbo.put("type", slice.getType());
-//            
-//            DBObject sliceInfo = new BasicDBObject();
-//            sliceDbo.put("info", sliceInfo);
-//            sliceInfo.put("name", slice.getInfo().getName());
-//            sliceInfo.put("description", slice.getInfo().getDescription());
-//            
-//            
-//            sliceDbo.put("dimensions", slice.getDimensions());
-//            sliceDbo.put("metrics", slice.getMetrics());
-//        }
-//        
-//        DBObject tablesDbo = new BasicDBObject();
-//        dbo.put("tables", tablesDbo);
-//        for (Table table : dataset.getTables()) {
-//            DBObject tableDbo = new BasicDBObject();
-//            tablesDbo.put("sources", table.getSources());
-//            tablesDbo.put(table.getInfo().getName(), tableDbo);
-//        
-//            DBObject columnsDbo = new BasicDBObject();
-//            tableDbo.put("columns", columnsDbo);
-//            for (Column column : table.getColumns()) {
-//                
-//                
-//                DBObject columnFields = new BasicDBObject();
-//                columnsDbo.put(column.getId(), columnFields);
-//                columnFields.put("name", column.getName());
-//                columnFields.put("type", column.getType().name().toLowerCase());
-//            }
-//        }
+        DBObject tablesDbo = (DBObject)dbo.get("tables");
+        if (tablesDbo != null) {
+            for (String tableName : tablesDbo.keySet()) {
+                Object tableValue = tablesDbo.get(tableName);
+                // "sources" is a list next to the tables
+                if (!(tableValue instanceof DBObject) || tableValue instanceof List) {
+                    continue;
+                }
+                DBObject tableDbo = (DBObject)tableValue;
+                Table table = new Table();
+                dataset.addTable(table);
+                table.setId(tableName);
+                Info tableInfo = new Info();
+                tableInfo.setName(tableName);
+                table.setInfo(tableInfo);
+                
+                DBObject columnsDbo = (DBObject)tableDbo.get("columns");
+                if (columnsDbo == null) {
+                    continue;
+                }
+                for (String columnId : columnsDbo.keySet()) {
+                    DBObject columnFields = (DBObject)columnsDbo.get(columnId);
+                    Column column = new Column();
+                    column.setId(columnId);
+                    column.setName((String)columnFields.get("name"));
+                    String type = (String)columnFields.get("type");
+                    if (type != null) {
+                        column.setType(DataType.valueOf(type.toUpperCase()));
+                    }
+                    column.setFormat((String)columnFields.get("format"));
+                    Number nullRatio = (Number)columnFields.get("nullRatio");
+                    if (nullRatio != null) {
+                        column.setNullRatio(nullRatio.doubleValue());
+                    }
+                    Number cardinality = (Number)columnFields.get("cardinality");
+                    if (cardinality != null) {
+                        column.setCardinality(cardinality.longValue());
+                    }
+                    table.addColumn(column);
+                }
+            }
+        }
         
         return dataset;
     }
+    
+    @SuppressWarnings("unchecked")
+    private List<String> strings(Object list) {
+        List<String> strings = new ArrayList<String>();
+        if (list != null) {
+            for (Object value : (List<Object>)list) {
+                strings.add((String)value);
+            }
+        }
+        return strings;
+    }
 
 }
@@ -1,11 +1,14 @@
 package com.mongodb.opendata.converter.json;
 
+import java.util.Map;
+
 import org.springframework.core.convert.converter.Converter;
 
 import com.google.dspl.model.Dataset;
 import com.google.dspl.model.Slice;
 import com.google.dspl.model.Table;
 import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
@@ -48,6 +51,21 @@ public class DatasetWriteConverter implements Converter<Dataset, DBObject> {
             
             sliceDbo.put("dimensions", slice.getDimensions());
             sliceDbo.put("metrics", slice.getMetrics());
+            if (slice.getRecordName() != null) {
+                sliceDbo.put("recordName", slice.getRecordName());
+            }
+            if (slice.getRollupOf() != null) {
+                sliceDbo.put("rollupOf", slice.getRollupOf());
+            }
+            if (!slice.getKeyToCompressedKeyMap().isEmpty()) {
+                // a list, the dotted paths of nested keys can't be field names
+                BasicDBList compressedKeys = new BasicDBList();
+                for (Map.Entry<String, String> entry : slice.getKeyToCompressedKeyMap().entrySet()) {
+                    compressedKeys.add(new BasicDBObject("key", entry.getKey()).append("compressedKey",
+                            entry.getValue()));
+                }
+                sliceDbo.put("compressedKeys", compressedKeys);
+            }
         }
         
         DBObject tablesDbo = new BasicDBObject();
@@ -66,6 +84,15 @@ public class DatasetWriteConverter implements Converter<Dataset, DBObject> {
                 columnsDbo.put(column.getId(), columnFields);
                 columnFields.put("name", column.getName());
                 columnFields.put("type", column.getType().name().toLowerCase());
+                if (column.getFormat() != null) {
+                    columnFields.put("format", column.getFormat());
+                }
+                if (column.getNullRatio() != null) {
+                    columnFields.put("nullRatio", column.getNullRatio());
+                }
+                if (column.getCardinality() != null) {
+                    columnFields.put("cardinality", column.getCardinality());
+                }
             }
         }
         
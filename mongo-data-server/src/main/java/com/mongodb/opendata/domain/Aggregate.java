@@ -0,0 +1,47 @@
+package com.mongodb.opendata.domain;
+
+/**
+ * One value computed per group of an {@link AggregateQuery}, e.g. the sum of
+ * a metric. COUNT without a field counts records.
+ */
+public class Aggregate {
+	
+	public enum Function {
+		SUM, COUNT, MIN, MAX, AVG
+	}
+	
+	private final Function function;
+	private final String field;
+	
+	public Aggregate(Function function, String field) {
+		if (field == null && function != Function.COUNT) {
+			throw new IllegalArgumentException(function.name().toLowerCase() + " needs a field");
+		}
+		this.function = function;
+		this.field = field;
+	}
+	
+	public Function getFunction() {
+		return function;
+	}
+	/**
+	 * @return The metric the function is applied to, null for a record count
+	 */
+	public String getField() {
+		return field;
+	}
+	/**
+	 * @return The name of the result field, e.g. "price_avg" or "count"
+	 */
+	public String getName() {
+		String function = this.function.name().toLowerCase();
+		return field == null ? function : field + "_" + function;
+	}
+	
+	@Override
+	public String toString() {
+		String function = this.function.name().toLowerCase();
+		return field == null ? function : function + "(" + field + ")";
+	}
+
+}
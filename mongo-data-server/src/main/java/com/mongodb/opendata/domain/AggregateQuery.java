@@ -0,0 +1,51 @@
+package com.mongodb.opendata.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.DBObject;
+
+/**
+ * Grouped results for a collection: the records matching the filter are
+ * grouped by the <code>groupBy</code> dimensions and each group is reduced to
+ * the requested aggregates. Without dimensions there is a single group.
+ */
+public class AggregateQuery {
+	
+	private String dataSet;
+	private String collection;
+	private List<String> groupBy = new ArrayList<String>();
+	private List<Aggregate> aggregates = new ArrayList<Aggregate>();
+	private DBObject filter;
+	
+	public AggregateQuery(String dataSet, String collection) {
+		this.dataSet = dataSet;
+		this.collection = collection;
+	}
+	
+	public String getDataSet() {
+		return dataSet;
+	}
+	public String getCollection() {
+		return collection;
+	}
+	public List<String> getGroupBy() {
+		return groupBy;
+	}
+	public void setGroupBy(List<String> groupBy) {
+		this.groupBy = groupBy;
+	}
+	public List<Aggregate> getAggregates() {
+		return aggregates;
+	}
+	public void setAggregates(List<Aggregate> aggregates) {
+		this.aggregates = aggregates;
+	}
+	public DBObject getFilter() {
+		return filter;
+	}
+	public void setFilter(DBObject filter) {
+		this.filter = filter;
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.mongodb.opendata.domain;
+
+import com.mongodb.DBObject;
+
+/**
+ * One page of an API query: which collection to read, the filter, projection
+ * and sort, where the previous page ended and how many records to return.
+ */
+public class Query {
+	
+	private String dataSet;
+	private String collection;
+	private DBObject filter;
+	private DBObject projection;
+	private DBObject sort;
+	private String after;
+	private int limit;
+	private String url;
+	
+	public Query(String dataSet, String collection) {
+		this.dataSet = dataSet;
+		this.collection = collection;
+	}
+	
+	public String getDataSet() {
+		return dataSet;
+	}
+	public String getCollection() {
+		return collection;
+	}
+	public DBObject getFilter() {
+		return filter;
+	}
+	public void setFilter(DBObject filter) {
+		this.filter = filter;
+	}
+	/**
+	 * @return The fields to return, null for all fields
+	 */
+	public DBObject getProjection() {
+		return projection;
+	}
+	public void setProjection(DBObject projection) {
+		this.projection = projection;
+	}
+	/**
+	 * @return The sort order, ending in a unique key; null to sort by _id
+	 */
+	public DBObject getSort() {
+		return sort;
+	}
+	public void setSort(DBObject sort) {
+		this.sort = sort;
+	}
+	/**
+	 * @return The continuation token returned with the previous page, null
+	 *         for the first page
+	 */
+	public String getAfter() {
+		return after;
+	}
+	public void setAfter(String after) {
+		this.after = after;
+	}
+	public int getLimit() {
+		return limit;
+	}
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+	/**
+	 * @return The request URL, including the query string but without the
+	 *         after parameter, that next page links are built from
+	 */
+	public String getUrl() {
+		return url;
+	}
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+}
@@ -1,17 +1,76 @@
 package com.mongodb.opendata.domain;
 
+import java.util.List;
+
+import com.mongodb.opendata.util.KeyDictionary;
+
 public class Response {
 	
-	private int total;
+	private Long total;
+	private int count;
+	private String next;
+	private String nextLink;
+	private List<String> columns;
+	private String recordName;
 	private String slice;
 	private String dataset;
+	private KeyDictionary keyDictionary = KeyDictionary.IDENTITY;
 	
-	public int getTotal() {
+	/**
+	 * @return The number of records matching the query across all pages,
+	 *         null when it is not counted (on pages after the first)
+	 */
+	public Long getTotal() {
 		return total;
 	}
-	public void setTotal(int total) {
+	public void setTotal(Long total) {
 		this.total = total;
 	}
+	/**
+	 * @return The number of records in this page
+	 */
+	public int getCount() {
+		return count;
+	}
+	public void setCount(int count) {
+		this.count = count;
+	}
+	/**
+	 * @return The continuation token to pass as <code>after</code> for the
+	 *         next page, null on the last page
+	 */
+	public String getNext() {
+		return next;
+	}
+	public void setNext(String next) {
+		this.next = next;
+	}
+	public String getNextLink() {
+		return nextLink;
+	}
+	public void setNextLink(String nextLink) {
+		this.nextLink = nextLink;
+	}
+	/**
+	 * @return The record fields in column order, from the projection or the
+	 *         collection's metadata; null if neither is known
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+	public void setColumns(List<String> columns) {
+		this.columns = columns;
+	}
+	/**
+	 * @return The element name of the records in the source document, null
+	 *         if it was not XML
+	 */
+	public String getRecordName() {
+		return recordName;
+	}
+	public void setRecordName(String recordName) {
+		this.recordName = recordName;
+	}
 	public String getSlice() {
 		return slice;
 	}
@@ -24,5 +83,15 @@ public class Response {
 	public void setDataset(String dataset) {
 		this.dataset = dataset;
 	}
+	/**
+	 * @return The mapping from the stored (compressed) field names of the
+	 *         records back to their original names
+	 */
+	public KeyDictionary getKeyDictionary() {
+		return keyDictionary;
+	}
+	public void setKeyDictionary(KeyDictionary keyDictionary) {
+		this.keyDictionary = keyDictionary;
+	}
 
 }
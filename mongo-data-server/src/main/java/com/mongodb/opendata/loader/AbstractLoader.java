@@ -0,0 +1,257 @@
+package com.mongodb.opendata.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.Mongo;
+import com.mongodb.WriteConcern;
+import com.mongodb.opendata.parser.AbstractDataParser;
+import com.mongodb.opendata.parser.KeyCompressionStatistics;
+import com.mongodb.opendata.parser.TypeCoercingListener;
+import com.mongodb.opendata.parser.TypeCoercingListener.ColumnCoercion;
+import com.mongodb.opendata.util.CompressedInput;
+
+/**
+ * Settings shared by the loaders for writing parsed records to MongoDB. A
+ * load takes its settings as {@link LoadOptions}, or a copy of the loader's
+ * defaults.
+ *
+ * With <code>writerThreads</code> set to 0 records are inserted on the parser
+ * thread, otherwise parsing and inserting run in a pipeline (see
+ * {@link ParallelInsertListener}).
+ *
+ * Compressed input is decompressed while it is parsed (see
+ * {@link CompressedInput}); each file of a zip archive is loaded into a
+ * collection of its own.
+ */
+public abstract class AbstractLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractLoader.class);
+
+    @Autowired
+    protected Mongo mongo;
+
+    @Autowired
+    protected MetadataLoader metadataLoader;
+
+    @Autowired
+    protected IndexBuilder indexBuilder;
+
+    @Autowired
+    protected RollupBuilder rollupBuilder;
+
+    // the defaults, loads work on a copy
+    protected final LoadOptions options = new LoadOptions();
+
+    /**
+     * @return A copy of the default settings, to change for one load
+     */
+    public LoadOptions getOptions() {
+        return options.copy();
+    }
+
+
+    protected BatchInsertListener createInserter(DBCollection collection, LoadOptions options) {
+        if (options.getWriterThreads() == 0) {
+            return new BatchInsertListener(collection, options.getBatchSize(), options.getBatchBytes(),
+                    options.getWriteConcern());
+        }
+        return new ParallelInsertListener(collection, options.getBatchSize(), options.getBatchBytes(),
+                options.getWriteConcern(), options.getWriterThreads(), options.getQueueCapacity());
+    }
+
+    /**
+     * Opens input to load, decompressing it if it is compressed.
+     */
+    protected CompressedInput decompress(InputStream input, LoadOptions options) throws IOException {
+        return new CompressedInput(input, options.getDecompressThreads());
+    }
+
+    /**
+     * @return The collection to load the current unit of the input into: the
+     *         collection itself, or for a file of a zip archive the
+     *         collection name followed by '_' and the file name without its
+     *         directory and extension
+     */
+    protected static String collectionName(String collectionName, CompressedInput input) {
+        String name = input.getName();
+        if (name == null) {
+            return collectionName;
+        }
+        name = name.substring(name.lastIndexOf('/') + 1);
+        int extension = name.indexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        return collectionName + "_" + name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    /**
+     * Finishes inserting after parsing. If parsing failed, a failure to finish
+     * is logged rather than thrown, so that it doesn't hide the parse error.
+     */
+    protected static void finishInserts(BatchInsertListener inserter, boolean parsed) {
+        if (parsed) {
+            inserter.finish();
+            return;
+        }
+        try {
+            inserter.finish();
+        } catch (RuntimeException e) {
+            logger.error("Finishing the inserts failed after a parse error", e);
+        }
+    }
+
+    /**
+     * Logs the key compression ratio of a loaded collection, measured against
+     * its collStats size (which includes any documents loaded before).
+     */
+    protected void logKeyCompression(DBCollection collection, KeyCompressionStatistics compression) {
+        CommandResult stats = collection.getStats();
+        Object size = stats.get("size");
+        if (!stats.ok() || !(size instanceof Number)) {
+            logger.info("Key compression for " + collection.getFullName() + ": " + compression);
+            return;
+        }
+        long storedBytes = ((Number) size).longValue();
+        logger.info(String.format("Key compression for %s: %s, %d bytes stored, ratio %.2f",
+                collection.getFullName(), compression, storedBytes, compression.getCompressionRatio(storedBytes)));
+    }
+
+    /**
+     * Sets up how the parser converts values, see
+     * {@link AbstractDataParser#setColumns(Collection)}.
+     */
+    protected void configureTypeCoercion(AbstractDataParser parser, LoadOptions options) {
+        parser.setColumns(options.getColumns());
+        parser.setTypeSampleSize(options.getTypeSampleSize());
+    }
+
+    /**
+     * Logs the values that were converted for each column, as a warning for
+     * columns where some didn't fit.
+     */
+    protected void logTypeCoercion(DBCollection collection, TypeCoercingListener coercion) {
+        if (coercion == null) {
+            return;
+        }
+        for (ColumnCoercion column : coercion.getCoercions()) {
+            if (column.getFailureCount() > 0) {
+                logger.warn("Type coercion for " + collection.getFullName() + ": " + column);
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Type coercion for " + collection.getFullName() + ": " + column);
+            }
+        }
+    }
+
+    /**
+     * Indexes the slice dimensions of a loaded collection, unless turned off.
+     */
+    protected void buildIndexes(DBCollection collection, Dataset dataset, LoadOptions options) {
+        if (options.isBuildIndexes()) {
+            indexBuilder.buildIndexes(collection, dataset);
+        }
+    }
+
+    /**
+     * Rolls up a loaded collection by each of the configured dimension
+     * subsets, and rebuilds the rollups it had before the load (see
+     * {@link MetadataLoader#removeRollups(String, String)}). A previous
+     * rollup that can't be rebuilt (its dimensions are gone, or it would have
+     * too many groups now) is dropped rather than left stale.
+     */
+    protected void buildRollups(DBCollection collection, Dataset dataset, LoadOptions options,
+            List<Slice> previousRollups) {
+        if (!options.getRollupDimensions().isEmpty()) {
+            rollupBuilder.buildRollups(collection, dataset, options.getRollupDimensions());
+        }
+        for (Slice rollup : previousRollups) {
+            if (options.getRollupDimensions().contains(rollup.getDimensions())) {
+                continue;
+            }
+            try {
+                rollupBuilder.buildRollup(collection, dataset, rollup.getDimensions());
+            } catch (RuntimeException e) {
+                logger.warn("Dropping " + rollup.getName() + ", it could not be rebuilt after loading into "
+                        + collection.getFullName() + ": " + e.getMessage());
+                collection.getDB().getCollection(rollup.getName()).drop();
+            }
+        }
+    }
+
+    /**
+     * Drops the rollups taken out before a load that failed, they no longer
+     * match the records.
+     */
+    protected static void dropRollups(DBCollection collection, List<Slice> rollups) {
+        for (Slice rollup : rollups) {
+            collection.getDB().getCollection(rollup.getName()).drop();
+        }
+    }
+
+    // the setters change the defaults, see LoadOptions for what they mean
+
+    public void setBatchSize(int batchSize) {
+        options.setBatchSize(batchSize);
+    }
+
+    public void setBatchBytes(int batchBytes) {
+        options.setBatchBytes(batchBytes);
+    }
+
+    public void setWriteConcern(WriteConcern writeConcern) {
+        options.setWriteConcern(writeConcern);
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        options.setWriterThreads(writerThreads);
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        options.setQueueCapacity(queueCapacity);
+    }
+
+    public void setKeySampleSize(int keySampleSize) {
+        options.setKeySampleSize(keySampleSize);
+    }
+
+    public void setTypeSampleSize(int typeSampleSize) {
+        options.setTypeSampleSize(typeSampleSize);
+    }
+
+    public void setColumns(Collection<Column> columns) {
+        options.setColumns(columns);
+    }
+
+    public void setParseThreads(int parseThreads) {
+        options.setParseThreads(parseThreads);
+    }
+
+    public void setOrderedParsing(boolean orderedParsing) {
+        options.setOrderedParsing(orderedParsing);
+    }
+
+    public void setDecompressThreads(int decompressThreads) {
+        options.setDecompressThreads(decompressThreads);
+    }
+
+    public void setBuildIndexes(boolean buildIndexes) {
+        options.setBuildIndexes(buildIndexes);
+    }
+
+    public void setRollupDimensions(List<List<String>> rollupDimensions) {
+        options.setRollupDimensions(rollupDimensions);
+    }
+
+}
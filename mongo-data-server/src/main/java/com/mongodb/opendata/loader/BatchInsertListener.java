@@ -0,0 +1,141 @@
+package com.mongodb.opendata.loader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.opendata.parser.ParseDataListener;
+
+/**
+ * Buffers parsed records and writes them to a collection with one
+ * <code>insert(List&lt;DBObject&gt;)</code> call per batch. A batch is flushed
+ * once it holds <code>batchSize</code> documents or roughly
+ * <code>batchBytes</code> bytes, whichever comes first, so memory stays
+ * bounded no matter how large the input is.
+ *
+ * Call {@link #finish()} after parsing to write the last partial batch.
+ */
+public class BatchInsertListener implements ParseDataListener {
+
+    protected static final Logger logger = LoggerFactory.getLogger(BatchInsertListener.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_BATCH_BYTES = 4 * 1024 * 1024;
+
+    protected final DBCollection collection;
+    protected final WriteConcern writeConcern;
+    protected final LoadStatistics statistics = new LoadStatistics();
+
+    private final int batchSize;
+    private final int batchBytes;
+
+    private List<DBObject> batch;
+    private int bytes;
+
+    public BatchInsertListener(DBCollection collection) {
+        this(collection, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_BYTES, WriteConcern.ACKNOWLEDGED);
+    }
+
+    public BatchInsertListener(DBCollection collection, int batchSize, int batchBytes, WriteConcern writeConcern) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.collection = collection;
+        this.batchSize = batchSize;
+        this.batchBytes = batchBytes;
+        this.writeConcern = writeConcern;
+        this.batch = new ArrayList<DBObject>(batchSize);
+    }
+
+    @Override
+    public void recordComplete(DBObject record) {
+        statistics.recordParsed();
+        batch.add(record);
+        bytes += estimateSize(record);
+        if (batch.size() >= batchSize || bytes >= batchBytes) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Flushing batch of " + batch.size() + " (~" + bytes + " bytes) for "
+                    + collection.getFullName());
+        }
+        write(batch);
+        batch = new ArrayList<DBObject>(batchSize);
+        bytes = 0;
+    }
+
+    /**
+     * Writes the last partial batch. Subclasses also wait here for any
+     * outstanding writes.
+     */
+    public void finish() {
+        flush();
+        statistics.parseComplete();
+        statistics.writeComplete();
+    }
+
+    protected void write(List<DBObject> records) {
+        collection.insert(records, writeConcern);
+        statistics.batchWritten(records.size());
+    }
+
+    public LoadStatistics getStatistics() {
+        return statistics;
+    }
+
+    public long getInsertCount() {
+        return statistics.getWrittenCount();
+    }
+
+    public long getBatchCount() {
+        return statistics.getBatchCount();
+    }
+
+    /**
+     * Rough BSON size of a value, good enough to bound a batch without
+     * encoding every document twice.
+     */
+    static int estimateSize(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        } else if (value instanceof String) {
+            return ((String) value).length() + 5;
+        } else if (value instanceof Number) {
+            return 8;
+        } else if (value instanceof DBObject && !(value instanceof List)) {
+            DBObject dbo = (DBObject) value;
+            int size = 5;
+            for (String key : dbo.keySet()) {
+                size += key.length() + 2 + estimateSize(dbo.get(key));
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            int size = 5;
+            for (Object element : (Collection<?>) value) {
+                size += 4 + estimateSize(element);
+            }
+            return size;
+        } else if (value instanceof Map) {
+            int size = 5;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 2 + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        return 16;
+    }
+
+}
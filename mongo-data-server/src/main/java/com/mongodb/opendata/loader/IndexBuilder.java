@@ -0,0 +1,275 @@
+package com.mongodb.opendata.loader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.util.KeyDictionary;
+
+/**
+ * Indexes a loaded collection for the API's filters, based on the slice
+ * dimensions of its metadata:
+ * <ul>
+ * <li>a single field index on each dimension with more than
+ * {@link #MIN_SINGLE_INDEX_CARDINALITY} distinct values, most selective
+ * first, up to <code>maxSingleIndexes</code></li>
+ * <li>one compound index on the {@link #COMPOUND_INDEX_FIELDS} dimensions
+ * with the fewest distinct values, least selective first, for filters that
+ * combine them</li>
+ * </ul>
+ * Without cardinality statistics every dimension gets a single field index.
+ *
+ * Indexes are built in the background on the stored (compressed) field names
+ * and named with an "auto_" prefix. Indexes that already exist are left
+ * alone and "auto_" indexes that are no longer planned are dropped, so
+ * running it again after a reload only builds what changed.
+ */
+@Service
+public class IndexBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexBuilder.class);
+
+    public static final String INDEX_NAME_PREFIX = "auto_";
+
+    public static final int MIN_SINGLE_INDEX_CARDINALITY = 2;
+
+    public static final int COMPOUND_INDEX_FIELDS = 3;
+
+    public static final int DEFAULT_MAX_SINGLE_INDEXES = 10;
+
+    private int maxSingleIndexes = DEFAULT_MAX_SINGLE_INDEXES;
+
+    public IndexStatistics buildIndexes(DBCollection collection, Dataset dataset) {
+        IndexStatistics statistics = new IndexStatistics();
+        Map<String, DBObject> planned = planIndexes(dataset, collection.getName());
+
+        Map<String, DBObject> existing = new HashMap<String, DBObject>();
+        for (DBObject index : collection.getIndexInfo()) {
+            existing.put((String) index.get("name"), (DBObject) index.get("key"));
+        }
+        for (Iterator<Map.Entry<String, DBObject>> i = existing.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, DBObject> index = i.next();
+            String name = index.getKey();
+            if (name.startsWith(INDEX_NAME_PREFIX) && !sameKeys(index.getValue(), planned.get(name))) {
+                collection.dropIndex(name);
+                statistics.dropped.add(name);
+                i.remove();
+            }
+        }
+        for (Map.Entry<String, DBObject> index : planned.entrySet()) {
+            if (exists(index.getValue(), existing.values())) {
+                statistics.kept.add(index.getKey());
+            } else {
+                collection.createIndex(index.getValue(), new BasicDBObject("name", index.getKey()).append(
+                        "background", true));
+                statistics.built.add(index.getKey());
+            }
+        }
+
+        CommandResult stats = collection.getStats();
+        if (stats.ok()) {
+            statistics.dataBytes = number(stats.get("size"));
+            statistics.indexBytes = number(stats.get("totalIndexSize"));
+        }
+        logger.info("Indexes for " + collection.getFullName() + ": " + statistics);
+        return statistics;
+    }
+
+    /*
+     * An index on the same fields, whatever its name, e.g. one created by hand.
+     */
+    private static boolean exists(DBObject keys, Collection<DBObject> indexes) {
+        for (DBObject index : indexes) {
+            if (sameKeys(keys, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Compares field order and direction; the server may return 1 as a
+     * double.
+     */
+    private static boolean sameKeys(DBObject a, DBObject b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        List<String> fields = new ArrayList<String>(a.keySet());
+        if (!fields.equals(new ArrayList<String>(b.keySet()))) {
+            return false;
+        }
+        for (String field : fields) {
+            Object direction = a.get(field);
+            Object other = b.get(field);
+            if (direction instanceof Number && other instanceof Number) {
+                if (((Number) direction).doubleValue() != ((Number) other).doubleValue()) {
+                    return false;
+                }
+            } else if (direction == null || !direction.equals(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * @return The index keys on stored field names by index name, in the
+     *         order they should be built
+     */
+    Map<String, DBObject> planIndexes(Dataset dataset, String sliceName) {
+        Map<String, DBObject> indexes = new LinkedHashMap<String, DBObject>();
+        Slice slice = slice(dataset, sliceName);
+        if (slice == null || slice.getDimensions().isEmpty()) {
+            return indexes;
+        }
+        KeyDictionary keys = new KeyDictionary(slice.getKeyToCompressedKeyMap());
+        final Map<String, Long> cardinalities = cardinalities(dataset, slice);
+
+        List<String> dimensions = new ArrayList<String>(slice.getDimensions());
+        boolean known = cardinalities.keySet().containsAll(dimensions);
+        if (!known) {
+            for (int i = 0; i < dimensions.size() && i < maxSingleIndexes; i++) {
+                addIndex(indexes, keys, dimensions.get(i));
+            }
+            return indexes;
+        }
+
+        // most distinct values first
+        Collections.sort(dimensions, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return cardinalities.get(b).compareTo(cardinalities.get(a));
+            }
+        });
+        List<String> compound = new ArrayList<String>();
+        for (int i = dimensions.size() - 1; i >= 0 && compound.size() < COMPOUND_INDEX_FIELDS; i--) {
+            if (cardinalities.get(dimensions.get(i)) > 1) {
+                compound.add(dimensions.get(i));
+            }
+        }
+        if (compound.size() < 2) {
+            compound.clear();
+        }
+
+        int singleIndexes = 0;
+        for (String dimension : dimensions) {
+            // the compound index serves its first field too
+            boolean prefix = !compound.isEmpty() && compound.get(0).equals(dimension);
+            if (singleIndexes < maxSingleIndexes && cardinalities.get(dimension) > MIN_SINGLE_INDEX_CARDINALITY
+                    && !prefix) {
+                addIndex(indexes, keys, dimension);
+                singleIndexes++;
+            }
+        }
+        if (!compound.isEmpty()) {
+            addIndex(indexes, keys, compound.toArray(new String[compound.size()]));
+        }
+        return indexes;
+    }
+
+    private static void addIndex(Map<String, DBObject> indexes, KeyDictionary keys, String... fields) {
+        BasicDBObject index = new BasicDBObject();
+        StringBuilder name = new StringBuilder(INDEX_NAME_PREFIX);
+        for (String field : fields) {
+            String storedField = keys.compress(field);
+            index.put(storedField, 1);
+            if (name.length() > INDEX_NAME_PREFIX.length()) {
+                name.append('_');
+            }
+            name.append(storedField);
+        }
+        indexes.put(name.toString(), index);
+    }
+
+    private static Slice slice(Dataset dataset, String sliceName) {
+        for (Slice slice : dataset.getSlices()) {
+            if (sliceName.equals(slice.getName())) {
+                return slice;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Long> cardinalities(Dataset dataset, Slice slice) {
+        Map<String, Long> cardinalities = new HashMap<String, Long>();
+        for (Table table : dataset.getTables()) {
+            if (!slice.getName().equals(table.getInfo().getName())) {
+                continue;
+            }
+            for (Column column : table.getColumns()) {
+                if (column.getCardinality() != null) {
+                    cardinalities.put(column.getId(), column.getCardinality());
+                }
+            }
+        }
+        return cardinalities;
+    }
+
+    public void setMaxSingleIndexes(int maxSingleIndexes) {
+        this.maxSingleIndexes = maxSingleIndexes;
+    }
+
+    /**
+     * What {@link IndexBuilder#buildIndexes(DBCollection, Dataset)} did, and
+     * the index size against the data size afterwards. Background builds may
+     * still be running when the sizes are read.
+     */
+    public static class IndexStatistics {
+
+        private final List<String> built = new ArrayList<String>();
+        private final List<String> kept = new ArrayList<String>();
+        private final List<String> dropped = new ArrayList<String>();
+        private long dataBytes;
+        private long indexBytes;
+
+        public List<String> getBuilt() {
+            return built;
+        }
+
+        public List<String> getKept() {
+            return kept;
+        }
+
+        public List<String> getDropped() {
+            return dropped;
+        }
+
+        public long getDataBytes() {
+            return dataBytes;
+        }
+
+        public long getIndexBytes() {
+            return indexBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("built %s, kept %s, dropped %s, %d index bytes for %d data bytes (%.1f%%)", built,
+                    kept, dropped, indexBytes, dataBytes, dataBytes > 0 ? 100.0 * indexBytes / dataBytes : 0);
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.mongodb.opendata.loader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.WriteConcern;
+
+/**
+ * The settings of one load. The loaders are shared beans; their setters
+ * change the defaults, and each load works on a copy (see
+ * {@link AbstractLoader#getOptions()}), so loads running at the same time
+ * don't see each other's settings.
+ */
+public class LoadOptions {
+
+    public static final int DEFAULT_TYPE_SAMPLE_SIZE = 1000;
+
+    private int batchSize = BatchInsertListener.DEFAULT_BATCH_SIZE;
+
+    private int batchBytes = BatchInsertListener.DEFAULT_BATCH_BYTES;
+
+    private WriteConcern writeConcern = WriteConcern.ACKNOWLEDGED;
+
+    private int writerThreads = ParallelInsertListener.DEFAULT_WRITER_THREADS;
+
+    private int queueCapacity = ParallelInsertListener.DEFAULT_QUEUE_CAPACITY;
+
+    private int keySampleSize;
+
+    private int typeSampleSize = DEFAULT_TYPE_SAMPLE_SIZE;
+
+    private Collection<Column> columns;
+
+    private boolean buildIndexes = true;
+
+    private List<List<String>> rollupDimensions = new ArrayList<List<String>>();
+
+    private int parseThreads;
+
+    private boolean orderedParsing = true;
+
+    private int decompressThreads = 1;
+
+    private char columnSeparator = CsvSchema.DEFAULT_COLUMN_SEPARATOR;
+
+    public LoadOptions copy() {
+        LoadOptions copy = new LoadOptions();
+        copy.batchSize = batchSize;
+        copy.batchBytes = batchBytes;
+        copy.writeConcern = writeConcern;
+        copy.writerThreads = writerThreads;
+        copy.queueCapacity = queueCapacity;
+        copy.keySampleSize = keySampleSize;
+        copy.typeSampleSize = typeSampleSize;
+        copy.columns = columns != null ? new ArrayList<Column>(columns) : null;
+        copy.buildIndexes = buildIndexes;
+        copy.rollupDimensions = new ArrayList<List<String>>();
+        for (List<String> dimensions : rollupDimensions) {
+            copy.rollupDimensions.add(new ArrayList<String>(dimensions));
+        }
+        copy.parseThreads = parseThreads;
+        copy.orderedParsing = orderedParsing;
+        copy.decompressThreads = decompressThreads;
+        copy.columnSeparator = columnSeparator;
+        return copy;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchBytes() {
+        return batchBytes;
+    }
+
+    public void setBatchBytes(int batchBytes) {
+        this.batchBytes = batchBytes;
+    }
+
+    public WriteConcern getWriteConcern() {
+        return writeConcern;
+    }
+
+    public void setWriteConcern(WriteConcern writeConcern) {
+        this.writeConcern = writeConcern;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    /**
+     * @param writerThreads The number of threads inserting batches, 0 to
+     *            insert on the parser thread (see
+     *            {@link ParallelInsertListener})
+     */
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getKeySampleSize() {
+        return keySampleSize;
+    }
+
+    /**
+     * @param keySampleSize The number of records whose key counts decide the
+     *            key compression codes, 0 (the default) for md5 prefix codes
+     */
+    public void setKeySampleSize(int keySampleSize) {
+        this.keySampleSize = keySampleSize;
+    }
+
+    public int getTypeSampleSize() {
+        return typeSampleSize;
+    }
+
+    /**
+     * @param typeSampleSize The number of records column types are inferred
+     *            from to convert text values, 0 to store values as parsed
+     */
+    public void setTypeSampleSize(int typeSampleSize) {
+        this.typeSampleSize = typeSampleSize;
+    }
+
+    public Collection<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param columns Declared column types to convert values to instead of
+     *            inferring them
+     */
+    public void setColumns(Collection<Column> columns) {
+        this.columns = columns;
+    }
+
+    public boolean isBuildIndexes() {
+        return buildIndexes;
+    }
+
+    /**
+     * @param buildIndexes Whether to index the slice dimensions after a load
+     *            (see {@link IndexBuilder}), true by default
+     */
+    public void setBuildIndexes(boolean buildIndexes) {
+        this.buildIndexes = buildIndexes;
+    }
+
+    public List<List<String>> getRollupDimensions() {
+        return rollupDimensions;
+    }
+
+    /**
+     * @param rollupDimensions The dimension subsets to build rollups by after
+     *            a load (see {@link RollupBuilder}), none by default
+     */
+    public void setRollupDimensions(List<List<String>> rollupDimensions) {
+        this.rollupDimensions = rollupDimensions;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    /**
+     * @param parseThreads The number of threads to parse one file on, for
+     *            the formats that can be split, 0 (the default) to parse on
+     *            the loading thread
+     */
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    public boolean isOrderedParsing() {
+        return orderedParsing;
+    }
+
+    /**
+     * @param orderedParsing Whether records parsed on several threads are
+     *            inserted in file order (the default) or as they are parsed
+     */
+    public void setOrderedParsing(boolean orderedParsing) {
+        this.orderedParsing = orderedParsing;
+    }
+
+    public int getDecompressThreads() {
+        return decompressThreads;
+    }
+
+    /**
+     * @param decompressThreads The number of threads to decompress gzip
+     *            input on, 1 by default
+     */
+    public void setDecompressThreads(int decompressThreads) {
+        this.decompressThreads = decompressThreads;
+    }
+
+    public char getColumnSeparator() {
+        return columnSeparator;
+    }
+
+    /**
+     * @param columnSeparator The character between values of CSV input, ','
+     *            by default
+     */
+    public void setColumnSeparator(char columnSeparator) {
+        this.columnSeparator = columnSeparator;
+    }
+
+}
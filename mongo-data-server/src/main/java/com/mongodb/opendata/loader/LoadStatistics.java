@@ -0,0 +1,109 @@
+package com.mongodb.opendata.loader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for a single load, shared between the parser thread and the writer
+ * threads. Comparing the parse rate with the write rate, the time the parser
+ * spent blocked and the queue depth shows whether a deployment needs more
+ * writer threads or whether MongoDB is the bottleneck.
+ */
+public class LoadStatistics {
+
+    private final long startTime = System.nanoTime();
+    private volatile long parseEndTime;
+    private volatile long writeEndTime;
+
+    private volatile long parsedCount;
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private volatile long blockedNanos;
+    private volatile int queueDepth;
+    private volatile int maxQueueDepth;
+
+    /*
+     * Called from the parser thread only.
+     */
+    void recordParsed() {
+        parsedCount++;
+    }
+
+    void parserBlocked(long nanos) {
+        blockedNanos += nanos;
+    }
+
+    void queueDepth(int depth) {
+        queueDepth = depth;
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    void parseComplete() {
+        parseEndTime = System.nanoTime();
+    }
+
+    /*
+     * Called from the writer threads.
+     */
+    void batchWritten(int records) {
+        writtenCount.addAndGet(records);
+        batchCount.incrementAndGet();
+    }
+
+    void writeComplete() {
+        writeEndTime = System.nanoTime();
+    }
+
+    public long getParsedCount() {
+        return parsedCount;
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getParserBlockedMillis() {
+        return blockedNanos / 1000000L;
+    }
+
+    public double getParsedPerSecond() {
+        return perSecond(parsedCount, parseEndTime);
+    }
+
+    public double getWrittenPerSecond() {
+        return perSecond(writtenCount.get(), writeEndTime);
+    }
+
+    public long getElapsedMillis() {
+        long end = writeEndTime != 0 ? writeEndTime : System.nanoTime();
+        return (end - startTime) / 1000000L;
+    }
+
+    private double perSecond(long count, long endTime) {
+        long end = endTime != 0 ? endTime : System.nanoTime();
+        long elapsed = end - startTime;
+        return elapsed > 0 ? count * 1000000000.0 / elapsed : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("parsed %d (%.0f/s), written %d (%.0f/s) in %d batches, "
+                + "queue depth %d (max %d), parser blocked %d ms, elapsed %d ms", getParsedCount(),
+                getParsedPerSecond(), getWrittenCount(), getWrittenPerSecond(), getBatchCount(), getQueueDepth(),
+                getMaxQueueDepth(), getParserBlockedMillis(), getElapsedMillis());
+    }
+
+}
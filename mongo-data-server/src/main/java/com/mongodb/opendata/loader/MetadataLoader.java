@@ -1,6 +1,11 @@
 package com.mongodb.opendata.loader;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -11,6 +16,8 @@ import com.google.dspl.model.Info;
 import com.google.dspl.model.Slice;
 import com.google.dspl.model.Table;
 import com.google.dspl.model.Table.Column;
+import com.mongodb.opendata.parser.ColumnProfile;
+import com.mongodb.opendata.parser.SchemaInferenceListener;
 import com.mongodb.opendata.repository.DatasetRepository;
 
 @Service
@@ -20,8 +27,135 @@ public class MetadataLoader {
     DatasetRepository datasetRepository;
     
     public void loadMetadata(Set<String> keySet, String name, String sliceName) {
+        loadMetadata(keySet, name, sliceName, null);
+    }
+    
+    /**
+     * @param recordName The element name of the records, for XML sources
+     */
+    public void loadMetadata(Set<String> keySet, String name, String sliceName, String recordName) {
+        Dataset dataset = constructDataset(keySet, name, sliceName);
+        dataset.getSlices().get(0).setRecordName(recordName);
+        save(dataset, sliceName);
+    }
+    
+    /**
+     * Saves the metadata together with the key compression dictionary the
+     * records were stored with, so the API can decompress them on read.
+     * Column types and the split into dimensions and metrics come from the
+     * profiles <code>schema</code> collected while loading. The metadata of
+     * the dataset's other collections is kept.
+     *
+     * @return The saved metadata
+     */
+    public Dataset loadMetadata(Map<String, String> keyToCompressedKeyMap, SchemaInferenceListener schema,
+            String name, String sliceName, String recordName) {
+        // columns are the top level fields, nested paths only matter for decompression
+        Set<String> keySet = new LinkedHashSet<String>();
+        for (String key : keyToCompressedKeyMap.keySet()) {
+            if (key.indexOf('.') < 0) {
+                keySet.add(key);
+            }
+        }
         Dataset dataset = constructDataset(keySet, name, sliceName);
+        Slice slice = dataset.getSlices().get(0);
+        slice.setRecordName(recordName);
+        slice.setKeyToCompressedKeyMap(new TreeMap<String, String>(keyToCompressedKeyMap));
+        applySchema(dataset, keyToCompressedKeyMap, schema);
+        return save(dataset, sliceName);
+    }
+    
+    /**
+     * Takes the rollups of a collection out of the dataset's metadata before
+     * records are loaded into it, so aggregates are answered from the records
+     * until the rollups are rebuilt.
+     *
+     * @return The rollup slices taken out
+     */
+    public List<Slice> removeRollups(String name, String sliceName) {
+        Dataset dataset = datasetRepository.findOne(name);
+        List<Slice> rollups = new ArrayList<Slice>();
+        if (dataset == null) {
+            return rollups;
+        }
+        List<Slice> slices = new ArrayList<Slice>();
+        for (Slice slice : dataset.getSlices()) {
+            if (RollupBuilder.ROLLUP_TYPE.equals(slice.getType()) && sliceName.equals(slice.getRollupOf())) {
+                rollups.add(slice);
+            } else {
+                slices.add(slice);
+            }
+        }
+        if (!rollups.isEmpty()) {
+            dataset.setSlices(slices);
+            datasetRepository.save(dataset);
+        }
+        return rollups;
+    }
+    
+    /*
+     * Saves the slice and table of a loaded collection into the dataset's
+     * existing metadata.
+     */
+    private Dataset save(Dataset loaded, String sliceName) {
+        Dataset dataset = merge(datasetRepository.findOne(loaded.getDatasetId()), loaded, sliceName);
         datasetRepository.save(dataset);
+        return dataset;
+    }
+    
+    /**
+     * @return <code>existing</code> with its slice and table named
+     *         <code>sliceName</code> replaced by those of <code>loaded</code>,
+     *         or <code>loaded</code> if there is no existing metadata
+     */
+    static Dataset merge(Dataset existing, Dataset loaded, String sliceName) {
+        if (existing == null) {
+            return loaded;
+        }
+        List<Slice> slices = new ArrayList<Slice>();
+        for (Slice slice : existing.getSlices()) {
+            if (!sliceName.equals(slice.getName())) {
+                slices.add(slice);
+            }
+        }
+        slices.addAll(loaded.getSlices());
+        existing.setSlices(slices);
+        
+        List<Table> tables = new ArrayList<Table>();
+        for (Table table : existing.getTables()) {
+            if (table.getInfo() == null || !sliceName.equals(table.getInfo().getName())) {
+                tables.add(table);
+            }
+        }
+        tables.addAll(loaded.getTables());
+        existing.setTables(tables);
+        return existing;
+    }
+    
+    private void applySchema(Dataset dataset, Map<String, String> keyToCompressedKeyMap,
+            SchemaInferenceListener schema) {
+        Slice slice = dataset.getSlices().get(0);
+        List<String> dimensions = new ArrayList<String>();
+        List<String> metrics = new ArrayList<String>();
+        for (Column column : dataset.getTables().get(0).getColumns()) {
+            String key = column.getId();
+            ColumnProfile profile = schema.getProfiles().get(keyToCompressedKeyMap.get(key));
+            if (profile == null) {
+                dimensions.add(key);
+                continue;
+            }
+            column.setType(profile.getType());
+            column.setFormat(profile.getFormat());
+            column.setNullRatio(profile.getNullRatio(schema.getRecordCount()));
+            column.setCardinality(profile.getCardinality());
+            if (profile.isMetric(key)) {
+                metrics.add(key);
+            } else {
+                dimensions.add(key);
+            }
+        }
+        slice.setDimensions(dimensions);
+        slice.setMetrics(metrics);
     }
     
     private Dataset constructDataset(Set<String> keySet, String datasetName, String sliceName) {
@@ -0,0 +1,154 @@
+package com.mongodb.opendata.loader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/**
+ * Hands full batches to a pool of writer threads through a bounded queue, so
+ * parsing and inserting overlap. When MongoDB falls behind the queue fills up
+ * and the parser thread blocks until a writer takes the next batch.
+ *
+ * A failed insert stops the load: the remaining batches are discarded, the
+ * parser sees the error on its next batch and {@link #finish()} rethrows it.
+ * Loaders must call {@link #finish()} even when parsing fails so the writer
+ * threads shut down.
+ */
+public class ParallelInsertListener extends BatchInsertListener {
+
+    public static final int DEFAULT_WRITER_THREADS = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    private static final List<DBObject> END_OF_INPUT = new ArrayList<DBObject>(0);
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final BlockingQueue<List<DBObject>> queue;
+    private final ExecutorService writers;
+    private final int writerThreads;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    public ParallelInsertListener(DBCollection collection, int batchSize, int batchBytes, WriteConcern writeConcern,
+            int writerThreads, int queueCapacity) {
+        super(collection, batchSize, batchBytes, writeConcern);
+        if (writerThreads < 1) {
+            throw new IllegalArgumentException("writerThreads must be positive");
+        }
+        this.writerThreads = writerThreads;
+        this.queue = new ArrayBlockingQueue<List<DBObject>>(queueCapacity);
+        this.writers = Executors.newFixedThreadPool(writerThreads, new WriterThreadFactory(collection.getFullName()));
+        for (int i = 0; i < writerThreads; i++) {
+            writers.execute(new Writer());
+        }
+    }
+
+    @Override
+    protected void write(List<DBObject> records) {
+        checkFailure();
+        enqueue(records);
+    }
+
+    @Override
+    public void finish() {
+        try {
+            flush();
+        } finally {
+            statistics.parseComplete();
+            for (int i = 0; i < writerThreads; i++) {
+                enqueue(END_OF_INPUT);
+            }
+            writers.shutdown();
+            try {
+                while (!writers.awaitTermination(1, TimeUnit.SECONDS)) {
+                    logger.debug("Waiting for writers: " + statistics);
+                }
+            } catch (InterruptedException e) {
+                writers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            statistics.writeComplete();
+        }
+        checkFailure();
+    }
+
+    private void enqueue(List<DBObject> records) {
+        long start = System.nanoTime();
+        try {
+            queue.put(records);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for writer threads", e);
+        }
+        statistics.parserBlocked(System.nanoTime() - start);
+        statistics.queueDepth(queue.size());
+    }
+
+    private void checkFailure() {
+        Throwable e = failure.get();
+        if (e != null) {
+            throw new RuntimeException("Insert into " + collection.getFullName() + " failed", e);
+        }
+    }
+
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                List<DBObject> records;
+                while ((records = queue.take()) != END_OF_INPUT) {
+                    statistics.queueDepth(queue.size());
+                    if (failure.get() == null) {
+                        ParallelInsertListener.super.write(records);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                // errors too, a writer that dies silently would leave the parser blocked
+                failure.compareAndSet(null, e);
+                logger.error("Insert into " + collection.getFullName() + " failed", e);
+                // keep draining so the parser never blocks on a dead pool
+                drain();
+            }
+        }
+
+        private void drain() {
+            try {
+                while (queue.take() != END_OF_INPUT) {
+                    // discard
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        WriterThreadFactory(String collectionName) {
+            this.prefix = "insert-" + poolNumber.incrementAndGet() + "-" + collectionName + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
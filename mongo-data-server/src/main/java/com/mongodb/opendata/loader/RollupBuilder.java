@@ -0,0 +1,295 @@
+package com.mongodb.opendata.loader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Info;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.AggregationOutput;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.opendata.repository.DatasetRepository;
+import com.mongodb.opendata.util.KeyDictionary;
+
+/**
+ * Materializes rollups of a loaded collection: for a subset of its slice
+ * dimensions, one document per combination of their values holding the
+ * record count and the sum, count, min and max of every metric, from which
+ * any coarser grouping and averages can be computed.
+ *
+ * A rollup of <code>recalls</code> by state and year is stored in
+ * <code>recalls_rollup_&lt;state&gt;-&lt;year&gt;</code> (stored field names)
+ * as
+ *
+ * <pre>
+ * {_id: {&lt;state&gt;: "NY", &lt;year&gt;: 2002}, count: 17, &lt;units&gt;_sum: 1200,
+ *  &lt;units&gt;_n: 15, &lt;units&gt;_min: 1, &lt;units&gt;_max: 400}
+ * </pre>
+ *
+ * and registered as a slice of type {@link #ROLLUP_TYPE} whose
+ * <code>rollupOf</code> is the collection. Rollups are computed on the server
+ * with the aggregation framework; MongoDB before 2.6 returns its result
+ * inline, so a rollup is refused if the column cardinalities predict more
+ * than <code>maxGroups</code> groups.
+ */
+@Service
+public class RollupBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollupBuilder.class);
+
+    public static final String ROLLUP_TYPE = "rollup";
+
+    public static final String COUNT = "count";
+    public static final String SUM_SUFFIX = "_sum";
+    public static final String COUNT_SUFFIX = "_n";
+    public static final String MIN_SUFFIX = "_min";
+    public static final String MAX_SUFFIX = "_max";
+
+    public static final long DEFAULT_MAX_GROUPS = 100000;
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    @Autowired
+    DatasetRepository datasetRepository;
+
+    private long maxGroups = DEFAULT_MAX_GROUPS;
+
+    /**
+     * Builds or rebuilds one rollup per dimension subset and saves the
+     * dataset metadata with them.
+     *
+     * @return The rollup slices
+     */
+    public List<Slice> buildRollups(DBCollection collection, Dataset dataset, List<List<String>> dimensionSets) {
+        List<Slice> rollups = new ArrayList<Slice>();
+        for (List<String> dimensions : dimensionSets) {
+            rollups.add(rollup(collection, dataset, dimensions));
+        }
+        if (!rollups.isEmpty()) {
+            save(dataset, rollups);
+        }
+        return rollups;
+    }
+
+    public Slice buildRollup(DBCollection collection, Dataset dataset, List<String> dimensions) {
+        List<List<String>> dimensionSets = new ArrayList<List<String>>();
+        dimensionSets.add(dimensions);
+        return buildRollups(collection, dataset, dimensionSets).get(0);
+    }
+
+    private Slice rollup(DBCollection collection, Dataset dataset, List<String> dimensions) {
+        Slice slice = slice(dataset, collection.getName());
+        if (slice == null) {
+            throw new IllegalArgumentException("No metadata for " + collection.getFullName());
+        }
+        for (String dimension : dimensions) {
+            if (!slice.getDimensions().contains(dimension)) {
+                throw new IllegalArgumentException(dimension + " is not a dimension of " + collection.getFullName());
+            }
+        }
+        long groups = estimateGroups(dataset, slice, dimensions);
+        if (groups > maxGroups) {
+            throw new IllegalArgumentException("A rollup of " + collection.getFullName() + " by " + dimensions
+                    + " would have about " + groups + " groups, more than " + maxGroups);
+        }
+
+        KeyDictionary keys = new KeyDictionary(slice.getKeyToCompressedKeyMap());
+        List<String> storedDimensions = new ArrayList<String>();
+        for (String dimension : dimensions) {
+            storedDimensions.add(keys.compress(dimension));
+        }
+        List<String> storedMetrics = new ArrayList<String>();
+        for (String metric : slice.getMetrics()) {
+            storedMetrics.add(keys.compress(metric));
+        }
+
+        long start = System.currentTimeMillis();
+        AggregationOutput output = collection.aggregate(groupStage(storedDimensions, storedMetrics));
+        output.getCommandResult().throwOnError();
+        String name = rollupName(collection.getName(), storedDimensions);
+        int count = replace(collection.getDB(), name, output.results());
+        logger.info("Rolled up " + collection.getFullName() + " by " + dimensions + " into " + name + ": " + count
+                + " groups in " + (System.currentTimeMillis() - start) + " ms");
+
+        Slice rollup = new Slice();
+        rollup.setName(name);
+        rollup.setType(ROLLUP_TYPE);
+        rollup.setRollupOf(slice.getName());
+        rollup.setDimensions(new ArrayList<String>(dimensions));
+        rollup.setMetrics(new ArrayList<String>(slice.getMetrics()));
+        rollup.getKeyToCompressedKeyMap().putAll(slice.getKeyToCompressedKeyMap());
+        Info info = new Info();
+        info.setName(name);
+        rollup.setInfo(info);
+
+        withRollups(dataset, Collections.singletonList(rollup));
+        return rollup;
+    }
+
+    /*
+     * Saves the rollups into the dataset's metadata as it is now rather than
+     * as it was read before the aggregation, so that other collections of the
+     * dataset loaded or rolled up meanwhile are kept.
+     */
+    private void save(Dataset dataset, List<Slice> rollups) {
+        Dataset current = datasetRepository.findOne(dataset.getDatasetId());
+        datasetRepository.save(current != null ? withRollups(current, rollups) : dataset);
+    }
+
+    /**
+     * @return <code>dataset</code> with the slices named like the rollups
+     *         replaced by them
+     */
+    static Dataset withRollups(Dataset dataset, List<Slice> rollups) {
+        Set<String> names = new HashSet<String>();
+        for (Slice rollup : rollups) {
+            names.add(rollup.getName());
+        }
+        List<Slice> slices = new ArrayList<Slice>();
+        for (Slice existing : dataset.getSlices()) {
+            if (!names.contains(existing.getName())) {
+                slices.add(existing);
+            }
+        }
+        slices.addAll(rollups);
+        dataset.setSlices(slices);
+        return dataset;
+    }
+
+    /**
+     * @return The $group stage computing a rollup from records
+     */
+    static DBObject groupStage(List<String> storedDimensions, List<String> storedMetrics) {
+        BasicDBObject id = new BasicDBObject();
+        for (String dimension : storedDimensions) {
+            id.put(dimension, "$" + dimension);
+        }
+        BasicDBObject group = new BasicDBObject("_id", id);
+        group.put(COUNT, new BasicDBObject("$sum", 1));
+        for (String metric : storedMetrics) {
+            String field = "$" + metric;
+            group.put(metric + SUM_SUFFIX, new BasicDBObject("$sum", field));
+            group.put(metric + COUNT_SUFFIX, countValues(metric));
+            group.put(metric + MIN_SUFFIX, new BasicDBObject("$min", field));
+            group.put(metric + MAX_SUFFIX, new BasicDBObject("$max", field));
+        }
+        return new BasicDBObject("$group", group);
+    }
+
+    /**
+     * @return A $group accumulator counting the records in which
+     *         <code>storedField</code> has a value
+     */
+    public static DBObject countValues(String storedField) {
+        // missing fields are null after $ifNull
+        String field = "$" + storedField;
+        BasicDBObject isNull = new BasicDBObject("$eq", list(new BasicDBObject("$ifNull", list(field, null)), null));
+        return new BasicDBObject("$sum", new BasicDBObject("$cond", list(isNull, 0, 1)));
+    }
+
+    private static List<Object> list(Object... values) {
+        List<Object> list = new ArrayList<Object>();
+        for (Object value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    /*
+     * Writes the groups to a temporary collection and renames it over the
+     * previous rollup, so readers never see a partial one.
+     */
+    private static int replace(DB db, String name, Iterable<DBObject> groups) {
+        DBCollection temporary = db.getCollection(name + "_tmp");
+        temporary.drop();
+        List<DBObject> batch = new ArrayList<DBObject>(INSERT_BATCH_SIZE);
+        int count = 0;
+        for (DBObject group : groups) {
+            batch.add(group);
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                temporary.insert(batch, WriteConcern.ACKNOWLEDGED);
+                batch.clear();
+            }
+            count++;
+        }
+        if (!batch.isEmpty()) {
+            temporary.insert(batch, WriteConcern.ACKNOWLEDGED);
+        }
+        if (count == 0) {
+            db.getCollection(name).drop();
+        } else {
+            temporary.rename(name, true);
+        }
+        return count;
+    }
+
+    /**
+     * @return The collection name of the rollup of <code>collection</code> by
+     *         the given stored dimension names
+     */
+    public static String rollupName(String collection, List<String> storedDimensions) {
+        StringBuilder name = new StringBuilder(collection).append("_rollup_");
+        for (int i = 0; i < storedDimensions.size(); i++) {
+            if (i > 0) {
+                name.append('-');
+            }
+            name.append(storedDimensions.get(i));
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return The product of the dimensions' cardinalities, or 0 if one of
+     *         them is not known
+     */
+    public static long estimateGroups(Dataset dataset, Slice slice, List<String> dimensions) {
+        long groups = 1;
+        for (String dimension : dimensions) {
+            Long cardinality = null;
+            for (Table table : dataset.getTables()) {
+                if (table.getInfo() != null && slice.getName().equals(table.getInfo().getName())) {
+                    for (Column column : table.getColumns()) {
+                        if (dimension.equals(column.getId())) {
+                            cardinality = column.getCardinality();
+                        }
+                    }
+                }
+            }
+            if (cardinality == null) {
+                return 0;
+            }
+            // saturate instead of overflowing
+            groups = groups > Long.MAX_VALUE / Math.max(cardinality, 1) ? Long.MAX_VALUE : groups
+                    * Math.max(cardinality, 1);
+        }
+        return groups;
+    }
+
+    private static Slice slice(Dataset dataset, String name) {
+        for (Slice slice : dataset.getSlices()) {
+            if (name.equals(slice.getName())) {
+                return slice;
+            }
+        }
+        return null;
+    }
+
+    public void setMaxGroups(long maxGroups) {
+        this.maxGroups = maxGroups;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.mongodb.opendata.loader.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.mongodb.DBCollection;
+import com.mongodb.opendata.loader.AbstractLoader;
+import com.mongodb.opendata.loader.BatchInsertListener;
+import com.mongodb.opendata.loader.LoadOptions;
+import com.mongodb.opendata.parser.SchemaInferenceListener;
+import com.mongodb.opendata.parser.csv.CsvDataParser;
+import com.mongodb.opendata.util.CompressedInput;
+import com.mongodb.opendata.util.MappedFileInputStream;
+
+@Service
+public class CsvLoader extends AbstractLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvLoader.class);
+
+    /**
+     * Loads a local file, read through memory-mapped windows (see
+     * {@link MappedFileInputStream}).
+     */
+    public void load(File file, String dbName, String collectionName) throws IOException {
+        load(file, dbName, collectionName, getOptions());
+    }
+
+    public void load(File file, String dbName, String collectionName, LoadOptions options) throws IOException {
+        InputStream input = new MappedFileInputStream(file);
+        try {
+            load(input, dbName, collectionName, options);
+        } finally {
+            input.close();
+        }
+    }
+
+    public void load(InputStream input, String dbName, String collectionName) throws IOException {
+        load(input, dbName, collectionName, getOptions());
+    }
+
+    public void load(InputStream input, String dbName, String collectionName, LoadOptions options) throws IOException {
+        CompressedInput units = decompress(input, options);
+        try {
+            while (units.next()) {
+                loadUnit(units.getInputStream(), dbName, collectionName(collectionName, units), options);
+            }
+        } finally {
+            units.close();
+        }
+    }
+
+    private void loadUnit(InputStream input, String dbName, String collectionName, LoadOptions options) throws IOException {
+        MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
+
+        CsvDataParser parser = new CsvDataParser();
+        parser.setColumnSeparator(options.getColumnSeparator());
+        parser.setKeySampleSize(options.getKeySampleSize());
+        configureTypeCoercion(parser, options);
+
+        DBCollection collection = mongoTemplate.getCollection(collectionName);
+        // aggregates use the records until the rollups are rebuilt
+        List<Slice> previousRollups = metadataLoader.removeRollups(dbName, collectionName);
+        BatchInsertListener inserter = createInserter(collection, options);
+        SchemaInferenceListener schema = new SchemaInferenceListener(inserter);
+        boolean parsed = false;
+        try {
+            parser.parse(input, schema);
+            parsed = true;
+        } finally {
+            finishInserts(inserter, parsed);
+            if (!parsed) {
+                dropRollups(collection, previousRollups);
+            }
+        }
+        logger.info("Loaded " + dbName + "." + collectionName + ": " + inserter.getStatistics());
+        logKeyCompression(collection, parser.getKeyCompressionStatistics());
+        logTypeCoercion(collection, parser.getTypeCoercingListener());
+
+        Dataset dataset = metadataLoader.loadMetadata(parser.getKeyToCompressedKeyMap(), schema, dbName,
+                collectionName, null);
+        buildIndexes(collection, dataset, options);
+        buildRollups(collection, dataset, options, previousRollups);
+    }
+
+    public void setColumnSeparator(char columnSeparator) {
+        options.setColumnSeparator(columnSeparator);
+    }
+}
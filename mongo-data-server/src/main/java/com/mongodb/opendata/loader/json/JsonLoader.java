@@ -1,24 +1,30 @@
 package com.mongodb.opendata.loader.json;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
-import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.JsonParseException;
-import com.mongodb.DBObject;
-import com.mongodb.Mongo;
-import com.mongodb.opendata.loader.MetadataLoader;
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.mongodb.DBCollection;
+import com.mongodb.opendata.loader.AbstractLoader;
+import com.mongodb.opendata.loader.BatchInsertListener;
+import com.mongodb.opendata.loader.LoadOptions;
+import com.mongodb.opendata.parser.SchemaInferenceListener;
+import com.mongodb.opendata.parser.json.JsonLinesParser;
 import com.mongodb.opendata.parser.json.KeyCompressingJsonParser;
+import com.mongodb.opendata.util.CompressedInput;
+import com.mongodb.opendata.util.MappedFileInputStream;
 
 @Service
-public class JsonLoader {
+public class JsonLoader extends AbstractLoader {
     
     private static final Logger logger = LoggerFactory.getLogger(JsonLoader.class);
     
@@ -27,30 +33,106 @@ public class JsonLoader {
     
     //@Autowired
     //MongoFactoryBean mongoFactory;
-    
-    @Autowired
-    Mongo mongo;
-    
-    @Autowired 
-    MetadataLoader metadataLoader;
+
+    /**
+     * Loads a local file, read through memory-mapped windows (see
+     * {@link MappedFileInputStream}).
+     */
+    public void load(File file, String dbName, String collectionName, String recordsArrayName) throws JsonParseException, IOException {
+        load(file, dbName, collectionName, recordsArrayName, getOptions());
+    }
+
+    public void load(File file, String dbName, String collectionName, String recordsArrayName, LoadOptions options) throws JsonParseException, IOException {
+        InputStream input = new MappedFileInputStream(file);
+        try {
+            load(input, dbName, collectionName, recordsArrayName, options);
+        } finally {
+            input.close();
+        }
+    }
 
     public void load(InputStream input, String dbName, String collectionName, String recordsArrayName) throws JsonParseException, IOException {
+        load(input, dbName, collectionName, recordsArrayName, getOptions());
+    }
+
+    public void load(InputStream input, String dbName, String collectionName, String recordsArrayName, LoadOptions options) throws JsonParseException, IOException {
+        CompressedInput units = decompress(input, options);
+        try {
+            while (units.next()) {
+                KeyCompressingJsonParser parser = new KeyCompressingJsonParser();
+                parser.setRecordsArrayName(recordsArrayName);
+                load(parser, units.getInputStream(), dbName, collectionName(collectionName, units), options);
+            }
+        } finally {
+            units.close();
+        }
+    }
+
+    /**
+     * Loads newline delimited JSON, one record per line.
+     */
+    public void loadLines(File file, String dbName, String collectionName) throws JsonParseException, IOException {
+        loadLines(file, dbName, collectionName, getOptions());
+    }
+
+    public void loadLines(File file, String dbName, String collectionName, LoadOptions options) throws JsonParseException, IOException {
+        InputStream input = new MappedFileInputStream(file);
+        try {
+            loadLines(input, dbName, collectionName, options);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Loads newline delimited JSON, one record per line.
+     */
+    public void loadLines(InputStream input, String dbName, String collectionName) throws JsonParseException, IOException {
+        loadLines(input, dbName, collectionName, getOptions());
+    }
+
+    public void loadLines(InputStream input, String dbName, String collectionName, LoadOptions options) throws JsonParseException, IOException {
+        CompressedInput units = decompress(input, options);
+        try {
+            while (units.next()) {
+                load(new JsonLinesParser(), units.getInputStream(), dbName, collectionName(collectionName, units),
+                        options);
+            }
+        } finally {
+            units.close();
+        }
+    }
+
+    private void load(KeyCompressingJsonParser parser, InputStream input, String dbName, String collectionName, LoadOptions options) throws JsonParseException, IOException {
         MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
         
-        KeyCompressingJsonParser parser = new KeyCompressingJsonParser();
-        parser.setRecordsArrayName(recordsArrayName);
-        
-        List<DBObject> recallRecords = parser.parse(input);
-        
-        
-        Set<String> keySet = parser.getKeyToCompressedKeyMap().keySet();
+        parser.setKeySampleSize(options.getKeySampleSize());
+        parser.setParseThreads(options.getParseThreads());
+        parser.setOrdered(options.isOrderedParsing());
+        configureTypeCoercion(parser, options);
         
-        metadataLoader.loadMetadata(keySet, dbName, collectionName);
-        
-        
-        for (DBObject record : recallRecords) {
-            mongoTemplate.getCollection(collectionName).insert(record);
-            
+        DBCollection collection = mongoTemplate.getCollection(collectionName);
+        // aggregates use the records until the rollups are rebuilt
+        List<Slice> previousRollups = metadataLoader.removeRollups(dbName, collectionName);
+        BatchInsertListener inserter = createInserter(collection, options);
+        SchemaInferenceListener schema = new SchemaInferenceListener(inserter);
+        boolean parsed = false;
+        try {
+            parser.parse(input, schema);
+            parsed = true;
+        } finally {
+            finishInserts(inserter, parsed);
+            if (!parsed) {
+                dropRollups(collection, previousRollups);
+            }
         }
+        logger.info("Loaded " + dbName + "." + collectionName + ": " + inserter.getStatistics());
+        logKeyCompression(collection, parser.getKeyCompressionStatistics());
+        logTypeCoercion(collection, parser.getTypeCoercingListener());
+        
+        Dataset dataset = metadataLoader.loadMetadata(parser.getKeyToCompressedKeyMap(), schema, dbName,
+                collectionName, null);
+        buildIndexes(collection, dataset, options);
+        buildRollups(collection, dataset, options, previousRollups);
     }
 }
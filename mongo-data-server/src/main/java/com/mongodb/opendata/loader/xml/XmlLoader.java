@@ -1,52 +1,98 @@
 package com.mongodb.opendata.loader.xml;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
-import java.util.Set;
 
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
-import com.mongodb.DBObject;
-import com.mongodb.Mongo;
-import com.mongodb.opendata.loader.MetadataLoader;
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.mongodb.DBCollection;
+import com.mongodb.opendata.loader.AbstractLoader;
+import com.mongodb.opendata.loader.BatchInsertListener;
+import com.mongodb.opendata.loader.LoadOptions;
+import com.mongodb.opendata.parser.SchemaInferenceListener;
 import com.mongodb.opendata.parser.xml.XmlDataParser;
+import com.mongodb.opendata.util.CompressedInput;
+import com.mongodb.opendata.util.MappedFileInputStream;
 
 @Service
-public class XmlLoader {
+public class XmlLoader extends AbstractLoader {
     
     private static final Logger logger = LoggerFactory.getLogger(XmlLoader.class);
-    
-    @Autowired
-    Mongo mongo;
-    
-    @Autowired 
-    MetadataLoader metadataLoader;
+
+    /**
+     * Loads a local file, read through memory-mapped windows (see
+     * {@link MappedFileInputStream}).
+     */
+    public void load(File file, String dbName, String collectionName, String recordName, String recordNamespace) throws IOException, XMLStreamException, FactoryConfigurationError {
+        load(file, dbName, collectionName, recordName, recordNamespace, getOptions());
+    }
+
+    public void load(File file, String dbName, String collectionName, String recordName, String recordNamespace, LoadOptions options) throws IOException, XMLStreamException, FactoryConfigurationError {
+        InputStream input = new MappedFileInputStream(file);
+        try {
+            load(input, dbName, collectionName, recordName, recordNamespace, options);
+        } finally {
+            input.close();
+        }
+    }
 
     public void load(InputStream input, String dbName, String collectionName, String recordName, String recordNamespace) throws IOException, XMLStreamException, FactoryConfigurationError {
+        load(input, dbName, collectionName, recordName, recordNamespace, getOptions());
+    }
+
+    public void load(InputStream input, String dbName, String collectionName, String recordName, String recordNamespace, LoadOptions options) throws IOException, XMLStreamException, FactoryConfigurationError {
+        CompressedInput units = decompress(input, options);
+        try {
+            while (units.next()) {
+                loadUnit(units.getInputStream(), dbName, collectionName(collectionName, units), recordName,
+                        recordNamespace, options);
+            }
+        } finally {
+            units.close();
+        }
+    }
+
+    private void loadUnit(InputStream input, String dbName, String collectionName, String recordName, String recordNamespace, LoadOptions options) throws IOException, XMLStreamException, FactoryConfigurationError {
         MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
         
         XmlDataParser parser = new XmlDataParser();
         parser.setRecordName(recordName);
         parser.setRecordNamespace(recordNamespace);
+        parser.setKeySampleSize(options.getKeySampleSize());
+        configureTypeCoercion(parser, options);
         
-        List<DBObject> recallRecords = parser.parse(input);
-        
-        Set<String> keySet = parser.getKeyToCompressedKeyMap().keySet();
-        
-        metadataLoader.loadMetadata(keySet, dbName, collectionName);
-        
-        
-        for (DBObject record : recallRecords) {
-            mongoTemplate.getCollection(collectionName).insert(record);
-            
+        DBCollection collection = mongoTemplate.getCollection(collectionName);
+        // aggregates use the records until the rollups are rebuilt
+        List<Slice> previousRollups = metadataLoader.removeRollups(dbName, collectionName);
+        BatchInsertListener inserter = createInserter(collection, options);
+        SchemaInferenceListener schema = new SchemaInferenceListener(inserter);
+        boolean parsed = false;
+        try {
+            parser.parse(input, schema);
+            parsed = true;
+        } finally {
+            finishInserts(inserter, parsed);
+            if (!parsed) {
+                dropRollups(collection, previousRollups);
+            }
         }
+        logger.info("Loaded " + dbName + "." + collectionName + ": " + inserter.getStatistics());
+        logKeyCompression(collection, parser.getKeyCompressionStatistics());
+        logTypeCoercion(collection, parser.getTypeCoercingListener());
+        
+        Dataset dataset = metadataLoader.loadMetadata(parser.getKeyToCompressedKeyMap(), schema, dbName,
+                collectionName, recordName);
+        buildIndexes(collection, dataset, options);
+        buildRollups(collection, dataset, options, previousRollups);
     }
 }
@@ -1,58 +1,146 @@
 package com.mongodb.opendata.parser;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.dspl.model.Table.Column;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
 public class AbstractDataParser {
-    
+
     protected static final Logger logger = LoggerFactory.getLogger(AbstractDataParser.class);
-    
-    protected LinkedList<Object> stack = new LinkedList<Object>();
+
+    /*
+     * Open containers, innermost last. isList says whether each entry is a
+     * List or a DBObject so add() doesn't need instanceof checks.
+     */
+    private Object[] containers = new Object[16];
+    private boolean[] isList = new boolean[16];
+    protected int top = -1;
+
     protected int recordCount = 0;
     protected ParseDataListener listener;
 
+    protected Collection<Column> columns;
+    protected int typeSampleSize;
+    protected TypeCoercingListener typeCoercingListener;
+
     public AbstractDataParser() {
         super();
     }
 
+    /**
+     * Puts a {@link TypeCoercingListener} in front of <code>listener</code> if
+     * columns were declared or a type sample size was set.
+     */
+    protected ParseDataListener coerceTypes(ParseDataListener listener) {
+        if (columns != null) {
+            typeCoercingListener = new TypeCoercingListener(listener, columns);
+        } else if (typeSampleSize > 0) {
+            typeCoercingListener = new TypeCoercingListener(listener, typeSampleSize);
+        } else {
+            typeCoercingListener = null;
+            return listener;
+        }
+        return typeCoercingListener;
+    }
+
+    protected void finishTypeCoercion() {
+        if (typeCoercingListener != null) {
+            typeCoercingListener.finish();
+        }
+    }
+
+    /**
+     * @param columns The declared types of the top level fields, values are
+     *            converted to them
+     */
+    public void setColumns(Collection<Column> columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * @param typeSampleSize The number of records to infer column types from
+     *            when no columns are declared, 0 (the default) to keep values
+     *            as they are parsed
+     */
+    public void setTypeSampleSize(int typeSampleSize) {
+        this.typeSampleSize = typeSampleSize;
+    }
+
+    /**
+     * @return The value conversions of the last parse, <code>null</code> if
+     *         values were not converted
+     */
+    public TypeCoercingListener getTypeCoercingListener() {
+        return typeCoercingListener;
+    }
+
+    /**
+     * Adds a scalar value to the innermost open container.
+     */
     @SuppressWarnings("unchecked")
     protected void add(String key, Object value) {
-        logger.debug("add(): " + key + " : " + value);
-        if (stack.isEmpty()) {
-            stack.push(new BasicDBObject());
+        if (isList[top]) {
+            ((List<Object>) containers[top]).add(value);
         } else {
-            Object top = stack.getFirst();
-            if (top instanceof DBObject) {
-                if (value instanceof List) {
-                    ((DBObject) top).put(key, value);
-                    stack.push(value);
-                } else if (value instanceof DBObject) {
-                    ((DBObject) top).put(key, value);
-                    stack.push(value);
-                } else {
-                    ((DBObject) top).put(key, value);
-                }
-    
-            } else if (top instanceof List) {
-                if (value instanceof List) {
-                    ((List<Object>) top).add(value);
-                    stack.push(value);
-                } else if (value instanceof DBObject) {
-                    ((List<Object>) top).add(value);
-                    stack.push(value);
-                } else {
-                    ((List<Object>) top).add(value);
-                }
-            } else {
-                throw new RuntimeException("Unexpected stack element " + top.getClass().getName());
-            }
+            ((DBObject) containers[top]).put(key, value);
+        }
+    }
+
+    /**
+     * Opens a new object, adding it to the innermost open container if
+     * <code>attach</code> is true.
+     */
+    protected DBObject startObject(String key, boolean attach) {
+        DBObject object = new BasicDBObject();
+        if (attach && top >= 0) {
+            add(key, object);
+        }
+        push(object, false);
+        return object;
+    }
+
+    /**
+     * Opens a new list and adds it to the innermost open container.
+     */
+    protected List<Object> startList(String key) {
+        List<Object> list = new ArrayList<Object>();
+        if (top >= 0) {
+            add(key, list);
+        }
+        push(list, true);
+        return list;
+    }
+
+    protected Object end() {
+        Object container = containers[top];
+        containers[top--] = null;
+        return container;
+    }
+
+    protected void clear() {
+        while (top >= 0) {
+            containers[top--] = null;
+        }
+    }
+
+    private void push(Object container, boolean list) {
+        if (++top == containers.length) {
+            Object[] newContainers = new Object[top * 2];
+            boolean[] newIsList = new boolean[top * 2];
+            System.arraycopy(containers, 0, newContainers, 0, top);
+            System.arraycopy(isList, 0, newIsList, 0, top);
+            containers = newContainers;
+            isList = newIsList;
         }
+        containers[top] = container;
+        isList[top] = list;
     }
 
     protected void addRecord(DBObject top) {
@@ -60,4 +148,4 @@ public class AbstractDataParser {
         recordCount++;
     }
 
-}
\ No newline at end of file
+}
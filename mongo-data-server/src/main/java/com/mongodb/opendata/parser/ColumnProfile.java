@@ -0,0 +1,170 @@
+package com.mongodb.opendata.parser;
+
+import java.util.Date;
+import java.util.List;
+
+import com.google.dspl.model.DataType;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.util.HyperLogLog;
+import com.mongodb.opendata.util.ValueTypes;
+
+/**
+ * What a {@link SchemaInferenceListener} has seen of one top level field: how
+ * often each type occurred, how many values were null and roughly how many
+ * were distinct.
+ */
+public class ColumnProfile {
+
+    /**
+     * Numeric columns with more distinct values than this are metrics.
+     */
+    public static final int MAX_DIMENSION_CARDINALITY = 20;
+
+    /**
+     * About one in 27 8 digit numbers from 18000101 to 21991231 reads as a
+     * {@link ValueTypes#COMPACT_DATE}, so a column of them is only taken for
+     * dates if it has at least this many values...
+     */
+    public static final int MIN_COMPACT_DATES = 10;
+
+    /**
+     * ...making up at least this share of the values offered, nulls included.
+     */
+    public static final double MIN_COMPACT_DATE_SHARE = 0.5;
+
+    private static final DataType[] TYPES = DataType.values();
+
+    private final long[] typeCounts = new long[TYPES.length];
+    private final HyperLogLog distinctValues = new HyperLogLog();
+    private long count;
+    private long nullCount;
+    private long nestedCount;
+    private String dateFormat;
+    private boolean mixedDateFormats;
+
+    /**
+     * Blank text counts as null, open data feeds use it for missing values.
+     */
+    public void offer(Object value) {
+        count++;
+        if (value == null || (value instanceof String && ((String) value).trim().length() == 0)) {
+            nullCount++;
+        } else if (value instanceof DBObject || value instanceof List) {
+            nestedCount++;
+        } else {
+            DataType type = ValueTypes.typeOf(value);
+            if (type == null) {
+                type = DataType.STRING;
+            }
+            typeCounts[type.ordinal()]++;
+            if (type == DataType.DATE && value instanceof String) {
+                offerDateFormat(ValueTypes.dateFormat((String) value));
+            }
+            offerDistinct(value);
+        }
+    }
+
+    private void offerDateFormat(String format) {
+        if (dateFormat == null) {
+            dateFormat = format;
+        } else if (!dateFormat.equals(format)) {
+            mixedDateFormats = true;
+        }
+    }
+
+    private void offerDistinct(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            distinctValues.offer(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Number) {
+            distinctValues.offer(((Number) value).longValue());
+        } else if (value instanceof Date) {
+            distinctValues.offer(((Date) value).getTime());
+        } else {
+            distinctValues.offer(value.toString());
+        }
+    }
+
+    /**
+     * The narrowest type that fits every non-null value: integers mixed with
+     * decimals are FLOAT, any other mix is STRING. Text dates only count as
+     * DATE if they all have the same format. 8 digit dates mixed with other
+     * integers, or too few of them to tell, were integers all along.
+     */
+    public DataType getType() {
+        long integers = count(DataType.INTEGER);
+        long floats = count(DataType.FLOAT);
+        long dates = count(DataType.DATE);
+        long booleans = count(DataType.BOOLEAN);
+        long values = count - nullCount;
+        if (values == 0 || nestedCount > 0 || count(DataType.STRING) > 0) {
+            return DataType.STRING;
+        } else if (dates == values) {
+            if (mixedDateFormats) {
+                return DataType.STRING;
+            }
+            boolean fewCompactDates = dates < MIN_COMPACT_DATES || dates < count * MIN_COMPACT_DATE_SHARE;
+            return ValueTypes.COMPACT_DATE.equals(dateFormat) && fewCompactDates ? DataType.INTEGER : DataType.DATE;
+        } else if (booleans == values) {
+            return DataType.BOOLEAN;
+        } else if (integers == values) {
+            return DataType.INTEGER;
+        } else if (dates > 0 && integers + dates == values && ValueTypes.COMPACT_DATE.equals(dateFormat)
+                && !mixedDateFormats) {
+            return DataType.INTEGER;
+        } else if (integers + floats == values) {
+            return DataType.FLOAT;
+        }
+        return DataType.STRING;
+    }
+
+    /**
+     * @return The format of text dates, for a DATE column
+     */
+    public String getFormat() {
+        return getType() == DataType.DATE ? dateFormat : null;
+    }
+
+    private long count(DataType type) {
+        return typeCounts[type.ordinal()];
+    }
+
+    /**
+     * @param recordCount All records parsed, including those without the
+     *            field
+     */
+    public double getNullRatio(long recordCount) {
+        return recordCount > 0 ? (double) (nullCount + recordCount - count) / recordCount : 0;
+    }
+
+    public long getCardinality() {
+        return distinctValues.cardinality();
+    }
+
+    /**
+     * Decimals are measurements. Integers are too unless they have few
+     * distinct values, like years or ratings, or are named like identifiers.
+     * Everything else is a dimension.
+     */
+    public boolean isMetric(String name) {
+        DataType type = getType();
+        if (type == DataType.FLOAT) {
+            return true;
+        }
+        return type == DataType.INTEGER && getCardinality() > MAX_DIMENSION_CARDINALITY && !isIdentifier(name);
+    }
+
+    private static boolean isIdentifier(String name) {
+        String lowerCaseName = name.toLowerCase();
+        return lowerCaseName.equals("id") || lowerCaseName.endsWith("_id") || lowerCaseName.endsWith("-id")
+                || name.endsWith("Id") || name.endsWith("ID") || lowerCaseName.endsWith("code");
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getNullCount() {
+        return nullCount;
+    }
+
+}
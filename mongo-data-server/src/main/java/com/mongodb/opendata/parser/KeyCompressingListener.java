@@ -0,0 +1,256 @@
+package com.mongodb.opendata.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.util.KeyCompressionUtils;
+
+/**
+ * Wraps another {@link ParseDataListener} and replaces the keys of each
+ * record, including those of sub-documents and of documents in lists, with
+ * their compressed form before passing it on.
+ *
+ * Keys are compressed per path: the fields of a sub-document only have to be
+ * distinct from their siblings, so short codes are reused at every level.
+ * List positions are not part of the path, i.e. the documents in
+ * <code>{"recalls": [{...}, {...}]}</code> share the dictionary of
+ * <code>recalls</code>. The dictionary maps each original dotted path to its
+ * compressed path, e.g. <code>REASON.REASON_CODE</code> to <code>4.e</code>.
+ *
+ * By default the dictionary for a path is built from md5 prefixes of the keys
+ * of the first document seen there. With a <code>sampleSize</code> the first
+ * records are held back and counted instead, and the most frequent keys get
+ * the shortest codes (see
+ * {@link KeyCompressionUtils#getKeyToCompressedKeyMapByFrequency(Map)});
+ * {@link #finish()} must then be called once the last record has been
+ * parsed.
+ *
+ * Either way the dictionary is extended as new keys show up in later records.
+ * Keys already handed out never change, so the final dictionary decompresses
+ * every record of the load.
+ */
+public class KeyCompressingListener implements ParseDataListener {
+
+    private final ParseDataListener delegate;
+    private final int sampleSize;
+
+    final Map<String, String> keyToCompressedKeyMap = new LinkedHashMap<String, String>();
+    final Map<String, String> compressedKeyToKeyMap = new LinkedHashMap<String, String>();
+
+    private final Level root = new Level(null, null);
+    private final KeyCompressionStatistics statistics = new KeyCompressionStatistics();
+
+    private List<DBObject> sample;
+
+    public KeyCompressingListener(ParseDataListener delegate) {
+        this(delegate, 0);
+    }
+
+    /**
+     * @param sampleSize The number of records to count keys in before
+     *            assigning codes by frequency, 0 for md5 prefixes
+     */
+    public KeyCompressingListener(ParseDataListener delegate, int sampleSize) {
+        this.delegate = delegate;
+        this.sampleSize = sampleSize;
+        if (sampleSize > 0) {
+            sample = new ArrayList<DBObject>(sampleSize);
+        }
+    }
+
+    @Override
+    public void recordComplete(DBObject record) {
+        if (sample != null) {
+            root.count(record);
+            sample.add(record);
+            if (sample.size() >= sampleSize) {
+                finish();
+            }
+            return;
+        }
+        delegate.recordComplete(compress(record, root));
+    }
+
+    /**
+     * Assigns codes from the sampled records, if that hasn't happened yet,
+     * and passes them on.
+     */
+    public void finish() {
+        if (sample == null) {
+            return;
+        }
+        List<DBObject> records = sample;
+        sample = null;
+        root.assignByFrequency();
+        for (DBObject record : records) {
+            delegate.recordComplete(compress(record, root));
+        }
+    }
+
+    private DBObject compress(DBObject object, Level level) {
+        Set<String> keys = object.keySet();
+        if (level.isEmpty() && sampleSize == 0) {
+            level.addAll(keys);
+        }
+        BasicDBObject compressedKeyDbo = new BasicDBObject();
+        for (String key : keys) {
+            String compressedKey = level.compressedKey(key);
+            statistics.keyWritten(key, compressedKey);
+            compressedKeyDbo.put(compressedKey, compressValue(object.get(key), level, key));
+        }
+        return compressedKeyDbo;
+    }
+
+    /*
+     * Lists are compressed in place, their documents all use the dictionary
+     * of the list's key.
+     */
+    @SuppressWarnings("unchecked")
+    private Object compressValue(Object value, Level level, String key) {
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            for (int i = 0; i < list.size(); i++) {
+                Object element = list.get(i);
+                if (element instanceof DBObject || element instanceof List) {
+                    list.set(i, compressValue(element, level, key));
+                }
+            }
+            return list;
+        } else if (value instanceof DBObject) {
+            return compress((DBObject) value, level.child(key));
+        }
+        return value;
+    }
+
+    public Map<String, String> getKeyToCompressedKeyMap() {
+        return keyToCompressedKeyMap;
+    }
+
+    public Map<String, String> getCompressedKeyToKeyMap() {
+        return compressedKeyToKeyMap;
+    }
+
+    public KeyCompressionStatistics getStatistics() {
+        return statistics;
+    }
+
+    /*
+     * The dictionary for the keys under one path.
+     */
+    private class Level {
+
+        private final Level parent;
+        private final String parentKey;
+        private final Map<String, String> keyToCompressedKey = new HashMap<String, String>();
+        private final Map<String, String> compressedKeyToKey = new HashMap<String, String>();
+        private Map<String, Level> children;
+        private Map<String, Integer> keyCounts;
+        private int nextCode;
+
+        Level(Level parent, String parentKey) {
+            this.parent = parent;
+            this.parentKey = parentKey;
+        }
+
+        boolean isEmpty() {
+            return keyToCompressedKey.isEmpty();
+        }
+
+        /*
+         * Nothing has been written under this path yet, so the keys can be
+         * assigned together.
+         */
+        void addAll(Set<String> keys) {
+            Map<String, String> compressedKeys = KeyCompressionUtils.getKeyToCompressedKeyMap(keys);
+            for (Map.Entry<String, String> entry : compressedKeys.entrySet()) {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        void count(DBObject object) {
+            if (keyCounts == null) {
+                keyCounts = new HashMap<String, Integer>();
+            }
+            for (String key : object.keySet()) {
+                Integer count = keyCounts.get(key);
+                keyCounts.put(key, count == null ? 1 : count + 1);
+                countValue(key, object.get(key));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void countValue(String key, Object value) {
+            if (value instanceof List) {
+                for (Object element : (List<Object>) value) {
+                    countValue(key, element);
+                }
+            } else if (value instanceof DBObject) {
+                child(key).count((DBObject) value);
+            }
+        }
+
+        void assignByFrequency() {
+            if (keyCounts != null) {
+                Map<String, String> compressedKeys = KeyCompressionUtils.getKeyToCompressedKeyMapByFrequency(keyCounts);
+                for (Map.Entry<String, String> entry : compressedKeys.entrySet()) {
+                    add(entry.getKey(), entry.getValue());
+                }
+                nextCode = compressedKeys.size();
+                keyCounts = null;
+            }
+            if (children != null) {
+                for (Level child : children.values()) {
+                    child.assignByFrequency();
+                }
+            }
+        }
+
+        String compressedKey(String key) {
+            String compressedKey = keyToCompressedKey.get(key);
+            if (compressedKey == null) {
+                if (sampleSize > 0) {
+                    compressedKey = KeyCompressionUtils.code(nextCode++);
+                } else {
+                    compressedKey = KeyCompressionUtils.addKeyWithoutDisplacing(key, compressedKeyToKey);
+                }
+                add(key, compressedKey);
+            }
+            return compressedKey;
+        }
+
+        private void add(String key, String compressedKey) {
+            keyToCompressedKey.put(key, compressedKey);
+            compressedKeyToKey.put(compressedKey, key);
+            keyToCompressedKeyMap.put(path(key), compressedPath(compressedKey));
+            compressedKeyToKeyMap.put(compressedPath(compressedKey), path(key));
+        }
+
+        private String path(String key) {
+            return parent == null ? key : parent.path(parentKey) + "." + key;
+        }
+
+        private String compressedPath(String compressedKey) {
+            return parent == null ? compressedKey : parent.compressedPath(parent.keyToCompressedKey.get(parentKey))
+                    + "." + compressedKey;
+        }
+
+        Level child(String key) {
+            if (children == null) {
+                children = new HashMap<String, Level>();
+            }
+            Level child = children.get(key);
+            if (child == null) {
+                child = new Level(this, key);
+                children.put(key, child);
+            }
+            return child;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.mongodb.opendata.parser;
+
+/**
+ * Key bytes written by a {@link KeyCompressingListener}, before and after
+ * compression. Keys are counted in characters, which is their size in BSON
+ * for the ASCII names open data feeds use.
+ */
+public class KeyCompressionStatistics {
+
+    private long keyCount;
+    private long keyBytes;
+    private long compressedKeyBytes;
+
+    void keyWritten(String key, String compressedKey) {
+        keyCount++;
+        keyBytes += key.length();
+        compressedKeyBytes += compressedKey.length();
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    public long getKeyBytes() {
+        return keyBytes;
+    }
+
+    public long getCompressedKeyBytes() {
+        return compressedKeyBytes;
+    }
+
+    public long getSavedBytes() {
+        return keyBytes - compressedKeyBytes;
+    }
+
+    /**
+     * @param storedBytes The size of the loaded documents, e.g. the
+     *            <code>size</code> from collStats
+     * @return How many times larger the documents would be with uncompressed
+     *         keys
+     */
+    public double getCompressionRatio(long storedBytes) {
+        return storedBytes > 0 ? (double) (storedBytes + getSavedBytes()) / storedBytes : 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d keys, %d key bytes compressed to %d", keyCount, keyBytes, compressedKeyBytes);
+    }
+
+}
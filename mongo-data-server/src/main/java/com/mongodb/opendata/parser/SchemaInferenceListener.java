@@ -0,0 +1,49 @@
+package com.mongodb.opendata.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.mongodb.DBObject;
+
+/**
+ * Wraps another {@link ParseDataListener} and profiles the top level fields of
+ * each record on the way through, so a load learns its schema without a
+ * second pass over the data. Memory is fixed per field, whatever the number
+ * of records.
+ *
+ * Behind a {@link KeyCompressingListener} the profiles are keyed by the
+ * compressed names.
+ */
+public class SchemaInferenceListener implements ParseDataListener {
+
+    private final ParseDataListener delegate;
+    private final Map<String, ColumnProfile> profiles = new LinkedHashMap<String, ColumnProfile>();
+    private long recordCount;
+
+    public SchemaInferenceListener(ParseDataListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void recordComplete(DBObject record) {
+        recordCount++;
+        for (String key : record.keySet()) {
+            ColumnProfile profile = profiles.get(key);
+            if (profile == null) {
+                profile = new ColumnProfile();
+                profiles.put(key, profile);
+            }
+            profile.offer(record.get(key));
+        }
+        delegate.recordComplete(record);
+    }
+
+    public Map<String, ColumnProfile> getProfiles() {
+        return profiles;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+}
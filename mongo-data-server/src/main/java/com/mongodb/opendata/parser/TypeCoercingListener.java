@@ -0,0 +1,287 @@
+package com.mongodb.opendata.parser;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.google.dspl.model.DataType;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.util.ValueTypes;
+
+/**
+ * Wraps another {@link ParseDataListener} and converts the text values of top
+ * level fields to the type of their column before passing each record on, so
+ * numbers and dates are stored as BSON numbers and dates that sort and range
+ * query correctly. Values are replaced in place.
+ *
+ * The column types are either declared, or inferred from the first
+ * <code>sampleSize</code> records, which are held back until
+ * {@link #finish()} is called or the sample is full. Text that doesn't fit
+ * its column is kept as it is and counted as a failure for that column. Blank
+ * text is left alone.
+ *
+ * Runs in front of a {@link KeyCompressingListener}, so columns are matched by
+ * their original names.
+ */
+public class TypeCoercingListener implements ParseDataListener {
+
+    private final ParseDataListener delegate;
+    private final Map<String, ColumnCoercion> coercions = new LinkedHashMap<String, ColumnCoercion>();
+    private final int sampleSize;
+
+    private Map<String, ColumnProfile> profiles;
+    private List<DBObject> sample;
+
+    /**
+     * Coerces values to declared column types. Columns are matched by id,
+     * STRING and CONCEPT columns are not touched.
+     */
+    public TypeCoercingListener(ParseDataListener delegate, Collection<Column> columns) {
+        this.delegate = delegate;
+        this.sampleSize = 0;
+        for (Column column : columns) {
+            addCoercion(column.getId(), column.getType(), column.getFormat());
+        }
+    }
+
+    /**
+     * @param sampleSize The number of records to infer column types from
+     */
+    public TypeCoercingListener(ParseDataListener delegate, int sampleSize) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be positive");
+        }
+        this.delegate = delegate;
+        this.sampleSize = sampleSize;
+        profiles = new LinkedHashMap<String, ColumnProfile>();
+        sample = new ArrayList<DBObject>(sampleSize);
+    }
+
+    private void addCoercion(String name, DataType type, String format) {
+        if (type == DataType.INTEGER || type == DataType.FLOAT || type == DataType.BOOLEAN
+                || (type == DataType.DATE && format != null)) {
+            coercions.put(name, new ColumnCoercion(name, type, format));
+        }
+    }
+
+    @Override
+    public void recordComplete(DBObject record) {
+        if (sample != null) {
+            for (String key : record.keySet()) {
+                ColumnProfile profile = profiles.get(key);
+                if (profile == null) {
+                    profile = new ColumnProfile();
+                    profiles.put(key, profile);
+                }
+                profile.offer(record.get(key));
+            }
+            sample.add(record);
+            if (sample.size() >= sampleSize) {
+                finish();
+            }
+            return;
+        }
+        delegate.recordComplete(coerce(record));
+    }
+
+    /**
+     * Settles the inferred column types, if that hasn't happened yet, and
+     * passes on the sampled records.
+     */
+    public void finish() {
+        if (sample == null) {
+            return;
+        }
+        List<DBObject> records = sample;
+        sample = null;
+        for (Map.Entry<String, ColumnProfile> entry : profiles.entrySet()) {
+            addCoercion(entry.getKey(), entry.getValue().getType(), entry.getValue().getFormat());
+        }
+        profiles = null;
+        for (DBObject record : records) {
+            delegate.recordComplete(coerce(record));
+        }
+    }
+
+    private DBObject coerce(DBObject record) {
+        if (coercions.isEmpty()) {
+            return record;
+        }
+        for (String key : record.keySet()) {
+            ColumnCoercion coercion = coercions.get(key);
+            if (coercion == null) {
+                continue;
+            }
+            Object value = record.get(key);
+            if (value instanceof String) {
+                Object coerced = coercion.coerce((String) value);
+                if (coerced != value) {
+                    // replacing the value of an existing key doesn't change the key set
+                    record.put(key, coerced);
+                }
+            }
+        }
+        return record;
+    }
+
+    /**
+     * @return The columns values are converted for, with their failure counts
+     */
+    public Collection<ColumnCoercion> getCoercions() {
+        return coercions.values();
+    }
+
+    /**
+     * @return The failure count of each column with failures
+     */
+    public Map<String, Long> getFailureCounts() {
+        Map<String, Long> failureCounts = new LinkedHashMap<String, Long>();
+        for (ColumnCoercion coercion : coercions.values()) {
+            if (coercion.getFailureCount() > 0) {
+                failureCounts.put(coercion.getName(), coercion.getFailureCount());
+            }
+        }
+        return failureCounts;
+    }
+
+    /**
+     * Converts the text of one column, keeping counts of what converted.
+     */
+    public static final class ColumnCoercion {
+
+        private final String name;
+        private final DataType type;
+        private final String format;
+        private long coercedCount;
+        private long failureCount;
+        private String firstFailure;
+
+        // for formats ValueTypes doesn't know, only created if needed
+        private SimpleDateFormat dateFormat;
+        private ParsePosition position;
+
+        public ColumnCoercion(String name, DataType type, String format) {
+            this.name = name;
+            this.type = type;
+            this.format = format;
+        }
+
+        /**
+         * @return The converted value, or <code>text</code> itself if it is
+         *         blank or doesn't fit the column type
+         */
+        Object coerce(String text) {
+            if (text.length() == 0 || text.trim().length() == 0) {
+                return text;
+            }
+            Object value = convert(text);
+            if (value == null) {
+                failureCount++;
+                if (firstFailure == null) {
+                    firstFailure = text;
+                }
+                return text;
+            }
+            coercedCount++;
+            return value;
+        }
+
+        /**
+         * @return The value of <code>text</code> in the column type, null if
+         *         it doesn't fit
+         */
+        public Object convert(String text) {
+            switch (type) {
+            case INTEGER:
+                return ValueTypes.isInteger(text) ? Long.valueOf(ValueTypes.parseLong(text)) : null;
+            case FLOAT:
+                if (ValueTypes.isInteger(text)) {
+                    return Double.valueOf(ValueTypes.parseLong(text));
+                }
+                return ValueTypes.isDecimal(text) ? Double.valueOf(text) : null;
+            case BOOLEAN:
+                return toBoolean(text);
+            case DATE:
+                return toDate(text);
+            default:
+                return null;
+            }
+        }
+
+        private static Boolean toBoolean(String text) {
+            if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("yes") || text.equalsIgnoreCase("y")
+                    || text.equals("1")) {
+                return Boolean.TRUE;
+            } else if (text.equalsIgnoreCase("false") || text.equalsIgnoreCase("no") || text.equalsIgnoreCase("n")
+                    || text.equals("0")) {
+                return Boolean.FALSE;
+            }
+            return null;
+        }
+
+        private Date toDate(String text) {
+            if (dateFormat == null) {
+                Long millis = ValueTypes.parseDate(text, format);
+                if (millis != null || isKnownFormat(format)) {
+                    return millis != null ? new Date(millis) : null;
+                }
+                dateFormat = new SimpleDateFormat(format);
+                dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+                dateFormat.setLenient(false);
+                position = new ParsePosition(0);
+            }
+            position.setIndex(0);
+            position.setErrorIndex(-1);
+            Date date = dateFormat.parse(text, position);
+            return position.getIndex() == text.length() ? date : null;
+        }
+
+        private static boolean isKnownFormat(String format) {
+            return format.equals(ValueTypes.ISO_DATE) || format.equals(ValueTypes.ISO_DATE_TIME)
+                    || format.equals(ValueTypes.ISO_DATE_TIME_UTC) || format.equals(ValueTypes.US_DATE)
+                    || format.equals(ValueTypes.COMPACT_DATE);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataType getType() {
+            return type;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public long getCoercedCount() {
+            return coercedCount;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        /**
+         * @return The first value that didn't convert, as an example for the
+         *         log
+         */
+        public String getFirstFailure() {
+            return firstFailure;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s): %d converted, %d failed%s", name, type, coercedCount, failureCount,
+                    firstFailure != null ? ", e.g. \"" + firstFailure + "\"" : "");
+        }
+    }
+
+}
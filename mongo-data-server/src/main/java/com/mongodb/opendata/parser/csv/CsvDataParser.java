@@ -0,0 +1,137 @@
+package com.mongodb.opendata.parser.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.csv.CsvFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.parser.AbstractDataParser;
+import com.mongodb.opendata.parser.KeyCompressingListener;
+import com.mongodb.opendata.parser.KeyCompressionStatistics;
+import com.mongodb.opendata.parser.ParseDataListener;
+
+/**
+ * Streams the rows of a CSV file with a header line as flat records, keyed by
+ * the column names of the header.
+ *
+ * Every value is parsed as text; set <code>columns</code> or a
+ * <code>typeSampleSize</code> to convert them (see {@link AbstractDataParser}).
+ * Empty values are left out of the record, like missing fields in JSON.
+ * Column names are made valid MongoDB field names: dots become underscores,
+ * a leading '$' is dropped and blank names are replaced by
+ * <code>column_&lt;n&gt;</code>.
+ */
+public class CsvDataParser extends AbstractDataParser {
+
+    private static final CsvFactory csvFactory = new CsvFactory();
+
+    protected char columnSeparator = CsvSchema.DEFAULT_COLUMN_SEPARATOR;
+
+    protected KeyCompressingListener keyCompressingListener;
+    protected int keySampleSize;
+
+    // header names to field names, most headers need no change
+    private final Map<String, String> fieldNames = new HashMap<String, String>();
+
+    public List<DBObject> parse(InputStream input) throws IOException {
+        final List<DBObject> records = new ArrayList<DBObject>();
+        this.parse(input, new ParseDataListener() {
+
+            @Override
+            public void recordComplete(DBObject record) {
+                records.add(record);
+            } });
+        return records;
+    }
+
+    public void parse(InputStream input, ParseDataListener listener) throws IOException {
+        keyCompressingListener = new KeyCompressingListener(listener, keySampleSize);
+        this.listener = coerceTypes(keyCompressingListener);
+        fieldNames.clear();
+
+        CsvParser parser = csvFactory.createParser(input);
+        parser.setSchema(CsvSchema.emptySchema().withHeader().withColumnSeparator(columnSeparator));
+        try {
+            DBObject record = null;
+            int column = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                switch (token) {
+                case START_OBJECT:
+                    record = new BasicDBObject();
+                    column = 0;
+                    break;
+                case VALUE_STRING:
+                    column++;
+                    String text = parser.getText();
+                    if (text.length() > 0) {
+                        record.put(fieldName(parser.getCurrentName(), column), text);
+                    }
+                    break;
+                case END_OBJECT:
+                    addRecord(record);
+                    record = null;
+                    break;
+                default:
+                }
+            }
+        } finally {
+            parser.close();
+        }
+        finishTypeCoercion();
+        keyCompressingListener.finish();
+        if (logger.isDebugEnabled()) {
+            logger.debug("************ " + recordCount + " records");
+        }
+    }
+
+    private String fieldName(String header, int column) {
+        String fieldName = fieldNames.get(header);
+        if (fieldName == null) {
+            // a byte order mark ends up in the first header
+            fieldName = header.replace("\uFEFF", "").trim().replace('.', '_');
+            if (fieldName.startsWith("$")) {
+                fieldName = fieldName.substring(1);
+            }
+            fieldNames.put(header, fieldName);
+        }
+        return fieldName.length() > 0 ? fieldName : "column_" + column;
+    }
+
+    /**
+     * @param columnSeparator The character between values, ',' by default
+     */
+    public void setColumnSeparator(char columnSeparator) {
+        this.columnSeparator = columnSeparator;
+    }
+
+    /**
+     * @param keySampleSize The number of records to count keys in before
+     *            assigning the shortest codes to the most frequent keys, 0
+     *            (the default) for md5 prefix codes
+     */
+    public void setKeySampleSize(int keySampleSize) {
+        this.keySampleSize = keySampleSize;
+    }
+
+    public Map<String, String> getKeyToCompressedKeyMap() {
+        return keyCompressingListener.getKeyToCompressedKeyMap();
+    }
+
+    public Map<String, String> getCompressedKeyToKeyMap() {
+        return keyCompressingListener.getCompressedKeyToKeyMap();
+    }
+
+    public KeyCompressionStatistics getKeyCompressionStatistics() {
+        return keyCompressingListener.getStatistics();
+    }
+
+}
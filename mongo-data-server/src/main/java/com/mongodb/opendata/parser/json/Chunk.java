@@ -0,0 +1,26 @@
+package com.mongodb.opendata.parser.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * A part of the input that parses on its own, see {@link InputSplitter}.
+ */
+final class Chunk extends ByteArrayOutputStream {
+
+    // room for the record that crosses the chunk size, so most chunks never grow
+    static final int RECORD_ALLOWANCE = 64 * 1024;
+
+    Chunk(int size) {
+        super(size);
+    }
+
+    /**
+     * @return The chunk, without copying it
+     */
+    InputStream getInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+}
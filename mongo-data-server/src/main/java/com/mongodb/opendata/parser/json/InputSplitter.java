@@ -0,0 +1,16 @@
+package com.mongodb.opendata.parser.json;
+
+import java.io.IOException;
+
+/**
+ * Cuts the input of a {@link JsonDataParser} into chunks of whole records,
+ * read on the calling thread and parsed on others.
+ */
+interface InputSplitter {
+
+    /**
+     * @return The next chunk, null at the end of the records
+     */
+    Chunk next() throws IOException;
+
+}
@@ -2,20 +2,35 @@ package com.mongodb.opendata.parser.json;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.mongodb.opendata.parser.AbstractDataParser;
 import com.mongodb.opendata.parser.ParseDataListener;
 
 public abstract class JsonDataParser extends AbstractDataParser {
 
+    private static final int NO_RECORDS = -2;
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
     JsonFactory f = new JsonFactory();
     JsonParser jp;
 
@@ -23,67 +38,126 @@ public abstract class JsonDataParser extends AbstractDataParser {
     // List<DBObject> records = new ArrayList<DBObject>();
     JsonToken currentToken;
 
-    int objDepth = 0;
-    int skipDepth = 0;
+    /*
+     * Stack index of the records array, objects opened directly inside it are
+     * records. -1 means the root object is the record.
+     */
+    int recordsTop = -1;
+
+    boolean lineDelimited;
+    int parseThreads;
+    boolean ordered = true;
+    int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Parses the document, or the documents of newline delimited input, on
+     * the calling thread or, with <code>parseThreads</code> set, by splitting
+     * the lines or the records array into chunks parsed on a thread pool (see
+     * {@link LineSplitter} and {@link RecordsArraySplitter}). The listener is
+     * always called on the calling thread.
+     */
+    public void parse(InputStream input, ParseDataListener listener) throws JsonParseException, IOException {
+        this.listener = coerceTypes(listener);
+        if (parseThreads > 0 && lineDelimited) {
+            parseInParallel(input, new LineSplitter(input, chunkSize));
+        } else if (parseThreads > 0 && recordsArrayName != null) {
+            parseInParallel(input, new RecordsArraySplitter(input, recordsArrayName, chunkSize));
+        } else {
+            parseSerially(input);
+        }
+        finishTypeCoercion();
+        if (logger.isDebugEnabled()) {
+            logger.debug("************ " + recordCount + " records");
+        }
+
+    }
 
-    protected void parse(InputStream input, ParseDataListener listener) throws JsonParseException, IOException {
-        this.listener = listener;
+    private void parseSerially(InputStream input) throws JsonParseException, IOException {
         jp = f.createParser(input);
+        recordsTop = -1;
 
         currentToken = jp.nextToken();
-        if (currentToken != JsonToken.START_OBJECT) {
+        // blank newline delimited input has no records
+        if (currentToken != JsonToken.START_OBJECT && !(lineDelimited && currentToken == null)) {
             throw new JsonParseException("JSON root should be object", jp.getCurrentLocation());
         }
 
-        parseCurrent(jp);
+        try {
+            parseCurrent(jp);
+        } finally {
+            clear();
+            jp.close();
+        }
+    }
 
-        if (recordsArrayName != null) {
-            while (skipDepth-- < objDepth) {
-                logger.debug(skipDepth + " " + objDepth);
-                Object foo = stack.pop();
-                logger.debug(foo + "");
+    /*
+     * The calling thread splits the input and passes on parsed chunks; at
+     * most two chunks per thread are held in memory.
+     */
+    private void parseInParallel(InputStream input, InputSplitter splitter) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(parseThreads, new ParserThreadFactory());
+        ParsedChunks chunks = new ParsedChunks(pool, ordered);
+        int maxPending = parseThreads * 2;
+        try {
+            Chunk chunk;
+            while ((chunk = splitter.next()) != null) {
+                chunks.submit(new ChunkParser(chunk, recordsArrayName, lineDelimited));
+                List<DBObject> records;
+                while ((records = chunks.next(chunks.pending() >= maxPending)) != null) {
+                    addRecords(records);
+                }
             }
+            List<DBObject> records;
+            while ((records = chunks.next(true)) != null) {
+                addRecords(records);
+            }
+        } finally {
+            pool.shutdownNow();
+            input.close();
         }
-        logger.debug("************ " + recordCount + " records");
+    }
 
+    private void addRecords(List<DBObject> records) {
+        for (DBObject record : records) {
+            addRecord(record);
+        }
     }
 
     private void parseCurrent(JsonParser jp) throws JsonParseException, IOException {
+        final boolean debug = logger.isDebugEnabled();
         
         while (currentToken != null) {
             String key = jp.getCurrentName();
             
             switch (currentToken) {
             case START_OBJECT:
-                logger.debug("START_OBJECT: " + key);
-                objDepth++;
-                add(key, new BasicDBObject());
+                if (debug) {
+                    logger.debug("START_OBJECT: " + key);
+                }
+                // records are not attached to the records array, so it never grows
+                startObject(key, top != recordsTop);
                 break;
             case START_ARRAY:
-                if (recordsArrayName != null && jp.getCurrentName().equals(recordsArrayName)) {
-                    skipDepth = objDepth;
+                startList(key);
+                if (recordsArrayName != null && recordsArrayName.equals(key)) {
+                    recordsTop = top;
                 }
-                // logger.debug("[ Start array " + key);
-                List<Object> list = new ArrayList<Object>();
-                add(key, list);
-
                 break;
             case END_OBJECT:
-                logger.debug("END_OBJECT " + key + " skipDepth: " + skipDepth + " " + objDepth + " recordCount: "
-                        + recordCount);
-                objDepth--;
-                Object top = stack.pop();
-                if (objDepth == skipDepth) {
-                    addRecord((DBObject) top);
+                if (debug) {
+                    logger.debug("END_OBJECT " + key + " recordsTop: " + recordsTop + " " + top + " recordCount: "
+                            + recordCount);
+                }
+                DBObject object = (DBObject) end();
+                if (top == recordsTop) {
+                    addRecord(object);
                 }
                 break;
             case END_ARRAY:
-                // logger.debug("End array " + key + " ]");
-                if (!key.equals(recordsArrayName)) {
-                    stack.pop();
-                } else {
-                    // return;
+                if (top == recordsTop) {
+                    recordsTop = NO_RECORDS;
                 }
+                end();
                 break;
             case FIELD_NAME:
                 break;
@@ -91,25 +165,67 @@ public abstract class JsonDataParser extends AbstractDataParser {
                 add(key, jp.getText());
                 break;
             case VALUE_NUMBER_INT:
-                add(key, jp.getIntValue());
+                if (jp.getNumberType() == JsonParser.NumberType.INT) {
+                    add(key, jp.getIntValue());
+                } else {
+                    add(key, jp.getLongValue());
+                }
                 break;
             case VALUE_NUMBER_FLOAT:
-                add(key, jp.getFloatValue());
+                add(key, jp.getDoubleValue());
                 break;
             case VALUE_NULL:
                 add(key, null);
                 break;
             case VALUE_TRUE:
+                add(key, Boolean.TRUE);
+                break;
             case VALUE_FALSE:
-                add(key, jp.getBooleanValue());
+                add(key, Boolean.FALSE);
                 break;
             default:
-                logger.debug("Unhandled token: " + currentToken.name());
+                if (debug) {
+                    logger.debug("Unhandled token: " + currentToken.name());
+                }
             }
             currentToken = jp.nextToken();
         }
     }
 
+    /**
+     * @param lineDelimited Whether the input is newline delimited JSON (JSON
+     *            Lines, NDJSON): a sequence of documents, one per line, each
+     *            of them a record unless a records array is named
+     */
+    public void setLineDelimited(boolean lineDelimited) {
+        this.lineDelimited = lineDelimited;
+    }
+
+    /**
+     * @param parseThreads The number of threads to parse the lines or the
+     *            records array on, 0 (the default) to parse on the calling
+     *            thread
+     */
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * @param ordered Whether records parsed in parallel are passed on in
+     *            document order (the default) or as their chunks finish
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * @param chunkSize The approximate size in bytes of the chunks the
+     *            input is split into for parallel parsing
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
     public String getRecordsArrayName() {
         return recordsArrayName;
     }
@@ -118,4 +234,109 @@ public abstract class JsonDataParser extends AbstractDataParser {
         this.recordsArrayName = recordsArrayName;
     }
 
+    /*
+     * Parses one chunk of the records array on a pool thread.
+     */
+    private static class ChunkParser implements Callable<List<DBObject>> {
+
+        private final Chunk chunk;
+        private final String recordsArrayName;
+        private final boolean lineDelimited;
+
+        ChunkParser(Chunk chunk, String recordsArrayName, boolean lineDelimited) {
+            this.chunk = chunk;
+            this.recordsArrayName = recordsArrayName;
+            this.lineDelimited = lineDelimited;
+        }
+
+        @Override
+        public List<DBObject> call() throws IOException {
+            SimpleJsonParser parser = new SimpleJsonParser();
+            parser.setRecordsArrayName(recordsArrayName);
+            parser.setLineDelimited(lineDelimited);
+            return parser.parse(chunk.getInputStream());
+        }
+    }
+
+    /*
+     * The submitted chunks, handed back in submission order or as they
+     * finish.
+     */
+    private static class ParsedChunks {
+
+        private final ExecutorService pool;
+        // as they finish, null when ordered
+        private final CompletionService<List<DBObject>> completion;
+        // in submission order, only used when ordered
+        private final LinkedList<Future<List<DBObject>>> submitted = new LinkedList<Future<List<DBObject>>>();
+        private int pending;
+
+        ParsedChunks(ExecutorService pool, boolean ordered) {
+            this.pool = pool;
+            this.completion = ordered ? null : new ExecutorCompletionService<List<DBObject>>(pool);
+        }
+
+        void submit(Callable<List<DBObject>> parser) {
+            if (completion != null) {
+                completion.submit(parser);
+            } else {
+                submitted.add(pool.submit(parser));
+            }
+            pending++;
+        }
+
+        int pending() {
+            return pending;
+        }
+
+        /**
+         * @return The records of the next chunk, null if none is left or, when
+         *         not waiting, none is ready
+         */
+        List<DBObject> next(boolean wait) throws IOException {
+            if (pending == 0) {
+                return null;
+            }
+            Future<List<DBObject>> future;
+            try {
+                if (completion != null) {
+                    future = wait ? completion.take() : completion.poll();
+                } else {
+                    future = wait || submitted.getFirst().isDone() ? submitted.removeFirst() : null;
+                }
+                if (future == null) {
+                    return null;
+                }
+                pending--;
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while parsing");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException("Parsing failed", cause);
+            }
+        }
+    }
+
+    private static class ParserThreadFactory implements ThreadFactory {
+
+        private final String prefix = "json-parser-" + poolNumber.incrementAndGet() + "-";
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
 }
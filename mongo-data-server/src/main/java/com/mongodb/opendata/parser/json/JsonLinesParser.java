@@ -0,0 +1,15 @@
+package com.mongodb.opendata.parser.json;
+
+/**
+ * Parses newline delimited JSON (JSON Lines, NDJSON), one record per line,
+ * compressing keys like {@link KeyCompressingJsonParser}. With
+ * <code>parseThreads</code> set, chunks of lines are parsed on a thread pool
+ * (see {@link LineSplitter}).
+ */
+public class JsonLinesParser extends KeyCompressingJsonParser {
+
+    public JsonLinesParser() {
+        setLineDelimited(true);
+    }
+
+}
@@ -5,13 +5,12 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonParseException;
-import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
+import com.mongodb.opendata.parser.KeyCompressingListener;
+import com.mongodb.opendata.parser.KeyCompressionStatistics;
 import com.mongodb.opendata.parser.ParseDataListener;
-import com.mongodb.opendata.util.KeyCompressionUtils;
 
 /**
  * 
@@ -21,8 +20,9 @@ import com.mongodb.opendata.util.KeyCompressionUtils;
 public class KeyCompressingJsonParser extends JsonDataParser {
     
     
-    Map<String, String> keyToCompressedKeyMap;
-    Map<String, String> compressedKeyToKeyMap;
+    KeyCompressingListener keyCompressingListener;
+    
+    int keySampleSize;
     
     public List<DBObject> parse(InputStream input) throws JsonParseException, IOException {
         final List<DBObject> records = new ArrayList<DBObject>();
@@ -30,36 +30,37 @@ public class KeyCompressingJsonParser extends JsonDataParser {
 
             @Override
             public void recordComplete(DBObject record) {
-                BasicDBObject compressedKeyDbo = new BasicDBObject();
-                
-                if (keyToCompressedKeyMap == null) {
-                    Set<String> keys = record.keySet();
-                    keyToCompressedKeyMap = KeyCompressionUtils.getKeyToCompressedKeyMap(keys);
-                    compressedKeyToKeyMap = KeyCompressionUtils.getCompressedKeyToKeyMap(keys);
-                }
-                
-                
-                for (String key : record.keySet()) {
-                    String compressedKey = keyToCompressedKeyMap.get(key);
-                    if (compressedKey == null) {
-                        compressedKey = KeyCompressionUtils.addKeyToCompressedKeyToKeyMap(key, compressedKeyToKeyMap);
-                        compressedKeyToKeyMap.put(compressedKey, key);
-                    }
-                    compressedKeyDbo.put(compressedKey, record.get(key));
-                }
-                
-
-                records.add(compressedKeyDbo);
+                records.add(record);
             } });
         return records;
     }
+    
+    @Override
+    public void parse(InputStream input, ParseDataListener listener) throws JsonParseException, IOException {
+        keyCompressingListener = new KeyCompressingListener(listener, keySampleSize);
+        super.parse(input, keyCompressingListener);
+        keyCompressingListener.finish();
+    }
+
+    /**
+     * @param keySampleSize The number of records to count keys in before
+     *            assigning the shortest codes to the most frequent keys, 0
+     *            (the default) for md5 prefix codes
+     */
+    public void setKeySampleSize(int keySampleSize) {
+        this.keySampleSize = keySampleSize;
+    }
 
     public Map<String, String> getKeyToCompressedKeyMap() {
-        return keyToCompressedKeyMap;
+        return keyCompressingListener.getKeyToCompressedKeyMap();
     }
 
     public Map<String, String> getCompressedKeyToKeyMap() {
-        return compressedKeyToKeyMap;
+        return keyCompressingListener.getCompressedKeyToKeyMap();
+    }
+
+    public KeyCompressionStatistics getKeyCompressionStatistics() {
+        return keyCompressingListener.getStatistics();
     }
 
 }
@@ -0,0 +1,74 @@
+package com.mongodb.opendata.parser.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Cuts newline delimited JSON (JSON Lines, NDJSON) into chunks of whole
+ * lines, at the first newline after <code>chunkSize</code> bytes. A chunk
+ * is a sequence of root documents, which Jackson reads one after the other.
+ *
+ * Newlines in JSON strings are always escaped, so a raw newline byte can only
+ * be a line break.
+ */
+final class LineSplitter implements InputSplitter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final int chunkSize;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean done;
+
+    LineSplitter(InputStream input, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.input = input;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public Chunk next() throws IOException {
+        if (done) {
+            return null;
+        }
+        Chunk chunk = new Chunk(chunkSize + Chunk.RECORD_ALLOWANCE);
+        while (true) {
+            if (position == limit && !fill()) {
+                done = true;
+                return chunk.size() > 0 ? chunk : null;
+            }
+            int start = position;
+            // newlines before the chunk is full don't end it
+            long from = start + (long) Math.max(0, chunkSize - chunk.size() - 1);
+            for (int i = (int) Math.min(from, limit); i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    position = i + 1;
+                    chunk.write(buffer, start, position - start);
+                    return chunk;
+                }
+            }
+            position = limit;
+            chunk.write(buffer, start, limit - start);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+        int n;
+        while ((n = input.read(buffer)) == 0) {
+            // keep trying, a stream only returns -1 at the end
+        }
+        if (n < 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.mongodb.opendata.parser.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+
+/**
+ * Cuts the records array of a JSON document into chunks of whole records
+ * that can be parsed independently, without tokenizing the document: a byte
+ * scanner only keeps track of strings (and their escapes) and of the nesting
+ * depth, and cuts at a comma between two elements of the array once a chunk
+ * has <code>chunkSize</code> bytes.
+ *
+ * Each chunk is a complete document of its own,
+ * <code>{"&lt;name&gt;": [&lt;records&gt;]}</code>, so it parses the same
+ * way as the whole document. The first array with the name, at any depth, is
+ * the records array; what comes after it is not read.
+ *
+ * UTF-8 (and ASCII) input only, multi-byte characters never contain the
+ * bytes the scanner looks for.
+ */
+final class RecordsArraySplitter implements InputSplitter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] SUFFIX = { ']', '}' };
+
+    private final InputStream input;
+    private final String recordsArrayName;
+    private final byte[] name;
+    private final byte[] prefix;
+    private final int chunkSize;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    // bytes read before the buffer, for error messages
+    private long offset;
+
+    private boolean inString;
+    private boolean escape;
+    private int depth;
+    // depth between the elements of the records array, -1 until it is found
+    private int arrayDepth = -1;
+    private boolean done;
+
+    // matching the name while looking for the array: 1 after the name, 2 after its colon
+    private int nameIndex;
+    private boolean nameMismatch;
+    private int keyState;
+
+    RecordsArraySplitter(InputStream input, String recordsArrayName, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.input = input;
+        this.recordsArrayName = recordsArrayName;
+        this.chunkSize = chunkSize;
+        try {
+            this.name = recordsArrayName.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        prefix = new byte[name.length + 5];
+        prefix[0] = '{';
+        prefix[1] = '"';
+        System.arraycopy(name, 0, prefix, 2, name.length);
+        prefix[name.length + 2] = '"';
+        prefix[name.length + 3] = ':';
+        prefix[name.length + 4] = '[';
+    }
+
+    /**
+     * @return The next chunk, null after the end of the records array
+     */
+    @Override
+    public Chunk next() throws IOException {
+        if (done) {
+            return null;
+        }
+        if (arrayDepth < 0 && !findArray()) {
+            throw new JsonParseException("No " + recordsArrayName + " array in the document", null);
+        }
+        Chunk chunk = new Chunk(prefix.length + chunkSize + Chunk.RECORD_ALLOWANCE + SUFFIX.length);
+        chunk.write(prefix, 0, prefix.length);
+        while (true) {
+            if (position == limit && !fill()) {
+                throw new JsonParseException("Unexpected end of input in the " + recordsArrayName + " array at byte "
+                        + offset, null);
+            }
+            int start = position;
+            while (position < limit) {
+                byte b = buffer[position];
+                if (inString) {
+                    if (escape) {
+                        escape = false;
+                    } else if (b == '\\') {
+                        escape = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (depth-- == arrayDepth) {
+                        chunk.write(buffer, start, position - start);
+                        position++;
+                        done = true;
+                        return finish(chunk);
+                    }
+                } else if (b == ',' && depth == arrayDepth && chunk.size() + position - start >= chunkSize) {
+                    // the comma is dropped, the next chunk starts with the next element
+                    chunk.write(buffer, start, position - start);
+                    position++;
+                    return finish(chunk);
+                }
+                position++;
+            }
+            chunk.write(buffer, start, position - start);
+        }
+    }
+
+    /*
+     * Reads up to and including the '[' of the records array.
+     */
+    private boolean findArray() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            byte b = buffer[position++];
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (b == '\\') {
+                    escape = true;
+                    nameMismatch = true;
+                } else if (b == '"') {
+                    inString = false;
+                    keyState = !nameMismatch && nameIndex == name.length ? 1 : 0;
+                } else if (nameIndex < name.length && name[nameIndex] == b) {
+                    nameIndex++;
+                } else {
+                    nameMismatch = true;
+                }
+            } else if (b == '"') {
+                inString = true;
+                nameIndex = 0;
+                nameMismatch = false;
+                keyState = 0;
+            } else if (b == ':' && keyState == 1) {
+                keyState = 2;
+            } else if (b == '{' || b == '[') {
+                depth++;
+                if (b == '[' && keyState == 2) {
+                    arrayDepth = depth;
+                    return true;
+                }
+                keyState = 0;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                keyState = 0;
+            } else if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                keyState = 0;
+            }
+        }
+    }
+
+    private static Chunk finish(Chunk chunk) {
+        chunk.write(SUFFIX, 0, SUFFIX.length);
+        return chunk;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = 0;
+        int n;
+        while ((n = input.read(buffer)) == 0) {
+            // keep trying, a stream only returns -1 at the end
+        }
+        if (n < 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+}
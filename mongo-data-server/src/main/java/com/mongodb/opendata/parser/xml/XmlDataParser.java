@@ -1,100 +1,182 @@
 package com.mongodb.opendata.parser.xml;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.mongodb.opendata.parser.AbstractDataParser;
-import com.mongodb.opendata.parser.json.KeyCompressingJsonParser;
-
-import de.odysseus.staxon.json.JsonXMLConfig;
-import de.odysseus.staxon.json.JsonXMLConfigBuilder;
-import de.odysseus.staxon.json.JsonXMLOutputFactory;
+import com.mongodb.opendata.parser.KeyCompressingListener;
+import com.mongodb.opendata.parser.KeyCompressionStatistics;
+import com.mongodb.opendata.parser.ParseDataListener;
 
 /**
- * @TODO - keys are always compressed
- * @TODO - this parser doesn't actually stream, it reads the entire XML file into a buffer
- * 
+ * Streams records out of an XML document with a StAX reader. Each element
+ * named <code>recordName</code> is handed to the listener as soon as it closes,
+ * so memory use depends on the size of a single record, not the document.
+ *
+ * Elements are mapped the same way the Staxon JSON conversion used to do it:
+ * repeated sibling elements become arrays, attributes become "@name" keys and
+ * numeric / boolean text is converted to primitives. A record element that
+ * contains other record elements is treated as a container and not emitted.
+ *
  * @author mh
  */
 public class XmlDataParser extends AbstractDataParser {
 
+    public static final String ATTRIBUTE_PREFIX = "@";
+
+    /**
+     * Key for the text of an element that also has attributes or child
+     * elements. Staxon used "$", which MongoDB rejects as a field name.
+     */
+    public static final String TEXT_KEY = "#text";
+
+    private static final Pattern NUMBER = Pattern.compile("^-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?$");
+
+    // longer integers may not fit in a long and stay text
+    private static final int MAX_INTEGER_DIGITS = 18;
+
     protected String recordName;
     protected String recordNamespace;
-    
-    protected KeyCompressingJsonParser jsonParser;
-    
-    JsonXMLConfig config;
+
+    protected KeyCompressingListener keyCompressingListener;
+    protected int keySampleSize;
+
+    XMLInputFactory inputFactory;
+
+    private List<Element> elements = new ArrayList<Element>();
+    private int depth;
+    private int recordDepth;
 
     public XmlDataParser() {
         init();
     }
 
     private void init() {
-        config = new JsonXMLConfigBuilder()
-        .autoArray(true)
-        .autoPrimitive(true)
-        .prettyPrint(true).build();
-        
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
     }
 
     public List<DBObject> parse(InputStream input) throws IOException, XMLStreamException, FactoryConfigurationError {
-        
-        
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final List<DBObject> records = new ArrayList<DBObject>();
+        this.parse(input, new ParseDataListener() {
+
+            @Override
+            public void recordComplete(DBObject record) {
+                records.add(record);
+            } });
+        return records;
+    }
+
+    public void parse(InputStream input, ParseDataListener listener) throws IOException, XMLStreamException {
+        keyCompressingListener = new KeyCompressingListener(listener, keySampleSize);
+        this.listener = coerceTypes(keyCompressingListener);
+        depth = -1;
+        recordDepth = -1;
+
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(input);
         try {
-            /*
-             * Create reader (XML).
-             */
-            XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(input);
-    
-            /*
-             * Create writer (JSON).
-             */
-            XMLEventWriter writer = new JsonXMLOutputFactory(config).createXMLEventWriter(output);
-            
-            /*
-             * Copy events from reader to writer.
-             */
-            writer.add(reader);
-            
-            /*
-             * Close reader/writer.
-             */
-            reader.close();
-            writer.close();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement(reader);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (recordDepth >= 0) {
+                        elements.get(depth).text.append(reader.getTextCharacters(), reader.getTextStart(),
+                                reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    break;
+                default:
+                }
+            }
         } finally {
             /*
-             * As per StAX specification, XMLEventReader/Writer.close() doesn't close
+             * As per StAX specification, XMLStreamReader.close() doesn't close
              * the underlying stream.
              */
-            output.close();
+            reader.close();
             input.close();
         }
-        
-        //logger.debug(output.toString());
-        
-        InputStream is = new ByteArrayInputStream(output.toByteArray());
-        jsonParser = new KeyCompressingJsonParser();
-        jsonParser.setRecordsArrayName(recordName);
-        List<DBObject> records = jsonParser.parse(is);
-        return records;
+        finishTypeCoercion();
+        keyCompressingListener.finish();
+        if (logger.isDebugEnabled()) {
+            logger.debug("************ " + recordCount + " records");
+        }
+    }
 
+    private void startElement(XMLStreamReader reader) {
+        depth++;
+        if (depth == elements.size()) {
+            elements.add(new Element());
+        }
+        Element element = elements.get(depth);
+        element.reset(reader.getLocalName());
+
+        if (isRecord(reader)) {
+            if (recordDepth >= 0) {
+                elements.get(recordDepth).container = true;
+            }
+            element.record = true;
+            recordDepth = depth;
+        } else if (recordDepth < 0) {
+            return;
+        }
+
+        int attributeCount = reader.getAttributeCount();
+        if (attributeCount > 0) {
+            element.object = new BasicDBObject();
+            for (int i = 0; i < attributeCount; i++) {
+                element.object.put(ATTRIBUTE_PREFIX + reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
     }
 
-    protected void add(String key, Object value) {
-        logger.debug("add(): " + key + " : " + value);
+    private boolean isRecord(XMLStreamReader reader) {
+        if (recordName == null) {
+            return depth == 0;
+        }
+        if (!recordName.equals(reader.getLocalName())) {
+            return false;
+        }
+        return recordNamespace == null || recordNamespace.equals(reader.getNamespaceURI());
+    }
+
+    private void endElement() {
+        Element element = elements.get(depth--);
+        if (recordDepth < 0 || element.container) {
+            return;
+        }
 
+        Object value = element.value();
+        if (element.record) {
+            recordDepth = -1;
+            if (recordName == null) {
+                addRecord(new BasicDBObject(element.name, value));
+            } else if (value instanceof DBObject) {
+                addRecord((DBObject) value);
+            } else {
+                addRecord(new BasicDBObject());
+            }
+        } else {
+            elements.get(depth).addChild(element.name, value);
+        }
     }
 
     public void setRecordName(String recordName) {
@@ -105,12 +187,110 @@ public class XmlDataParser extends AbstractDataParser {
         this.recordNamespace = recordNamespace;
     }
 
+    /**
+     * @param keySampleSize The number of records to count keys in before
+     *            assigning the shortest codes to the most frequent keys, 0
+     *            (the default) for md5 prefix codes
+     */
+    public void setKeySampleSize(int keySampleSize) {
+        this.keySampleSize = keySampleSize;
+    }
+
     public Map<String, String> getKeyToCompressedKeyMap() {
-        return jsonParser.getKeyToCompressedKeyMap();
+        return keyCompressingListener.getKeyToCompressedKeyMap();
     }
 
     public Map<String, String> getCompressedKeyToKeyMap() {
-        return jsonParser.getCompressedKeyToKeyMap();
+        return keyCompressingListener.getCompressedKeyToKeyMap();
+    }
+
+    public KeyCompressionStatistics getKeyCompressionStatistics() {
+        return keyCompressingListener.getStatistics();
+    }
+
+    static Object toPrimitive(String text) {
+        if ("true".equals(text)) {
+            return Boolean.TRUE;
+        } else if ("false".equals(text)) {
+            return Boolean.FALSE;
+        } else if ("null".equals(text)) {
+            return null;
+        } else if (!NUMBER.matcher(text).matches()) {
+            return text;
+        }
+
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+            int digits = text.startsWith("-") ? text.length() - 1 : text.length();
+            if (digits > MAX_INTEGER_DIGITS) {
+                return text;
+            }
+            long l = Long.parseLong(text);
+            if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                return (int) l;
+            }
+            return l;
+        }
+        return Double.parseDouble(text);
+    }
+
+    /**
+     * An open element. Instances are reused per nesting depth so parsing a
+     * record doesn't allocate anything beyond the values it produces.
+     */
+    private static class Element {
+
+        String name;
+        DBObject object;
+        StringBuilder text = new StringBuilder();
+        boolean record;
+        boolean container;
+
+        void reset(String name) {
+            this.name = name;
+            this.object = null;
+            this.text.setLength(0);
+            this.record = false;
+            this.container = false;
+        }
+
+        @SuppressWarnings("unchecked")
+        void addChild(String childName, Object value) {
+            if (object == null) {
+                object = new BasicDBObject();
+            }
+            if (!object.containsField(childName)) {
+                object.put(childName, value);
+                return;
+            }
+            Object existing = object.get(childName);
+            if (existing instanceof List) {
+                ((List<Object>) existing).add(value);
+            } else {
+                List<Object> list = new ArrayList<Object>();
+                list.add(existing);
+                list.add(value);
+                object.put(childName, list);
+            }
+        }
+
+        Object value() {
+            if (object == null) {
+                return text.length() == 0 ? null : toPrimitive(text.toString());
+            }
+            if (!isWhitespace(text)) {
+                object.put(TEXT_KEY, toPrimitive(text.toString()));
+            }
+            return object;
+        }
+
+        private static boolean isWhitespace(CharSequence chars) {
+            for (int i = 0; i < chars.length(); i++) {
+                if (!Character.isWhitespace(chars.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
 }
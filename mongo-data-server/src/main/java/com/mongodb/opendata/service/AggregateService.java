@@ -0,0 +1,374 @@
+package com.mongodb.opendata.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.mongodb.AggregationOutput;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.opendata.domain.Aggregate;
+import com.mongodb.opendata.domain.AggregateQuery;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.loader.RollupBuilder;
+import com.mongodb.opendata.repository.DatasetRepository;
+import com.mongodb.opendata.util.KeyDictionary;
+import com.mongodb.opendata.writer.ResultWriter;
+
+/**
+ * Answers {@link AggregateQuery}s with the aggregation framework, so only the
+ * groups cross the wire. Of the rollups built by {@link RollupBuilder} whose
+ * dimensions include every grouped and filtered field and whose metrics
+ * include every aggregated one, the one with the fewest groups is regrouped,
+ * so a query reads a few documents instead of every record. Without such a
+ * rollup the records themselves are matched and grouped.
+ *
+ * Grouped fields must be dimensions and aggregated fields metrics of the
+ * collection's slice, when its metadata is known. Each result row has the
+ * grouped dimensions under their original names, followed by the aggregates
+ * named as in {@link Aggregate#getName()}.
+ */
+@Service
+public class AggregateService {
+
+	private static final Logger logger = LoggerFactory.getLogger(AggregateService.class);
+
+	@Autowired
+	private Mongo mongo;
+
+	@Autowired
+	private MetadataCache metadataCache;
+
+	@Autowired
+	private DatasetRepository datasetRepository;
+
+	@Autowired
+	private RollupBuilder rollupBuilder;
+
+	private long maxGroups = RollupBuilder.DEFAULT_MAX_GROUPS;
+
+	/**
+	 * Streams the groups for <code>query</code> to <code>writer</code>.
+	 */
+	public Response aggregate(AggregateQuery query, ResultWriter writer) throws IOException {
+		Dataset dataset = metadataCache.getDataset(query.getDataSet());
+		Slice slice = slice(dataset, query.getCollection());
+		validate(query, slice);
+		DB db = mongo.getDB(query.getDataSet());
+
+		Slice rollup = findRollup(dataset, query);
+		String source;
+		KeyDictionary keys;
+		List<DBObject> pipeline;
+		if (rollup != null) {
+			source = rollup.getName();
+			keys = metadataCache.getKeyDictionary(query.getDataSet(), rollup.getName());
+			pipeline = rollupPipeline(query, keys);
+		} else {
+			// the result comes back inline, so refuse groupings that would not fit
+			long groups = slice != null ? RollupBuilder.estimateGroups(dataset, slice, query.getGroupBy()) : 0;
+			if (groups > maxGroups) {
+				throw new IllegalArgumentException("Grouping " + query.getDataSet() + "/" + query.getCollection()
+						+ " by " + query.getGroupBy() + " would return about " + groups + " groups, more than "
+						+ maxGroups);
+			}
+			source = query.getCollection();
+			keys = metadataCache.getKeyDictionary(query.getDataSet(), query.getCollection());
+			pipeline = recordPipeline(query, keys);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Aggregating " + query.getDataSet() + "/" + query.getCollection() + " from " + source + ": "
+					+ pipeline);
+		}
+		return write(query, aggregate(db.getCollection(source), pipeline), keys, writer);
+	}
+
+	/*
+	 * Rejects grouped fields that are not dimensions, aggregated fields that
+	 * are not metrics and filtered fields that are neither, when the slice is
+	 * known.
+	 */
+	static void validate(AggregateQuery query, Slice slice) {
+		if (slice == null) {
+			return;
+		}
+		String collection = query.getDataSet() + "/" + query.getCollection();
+		for (String dimension : query.getGroupBy()) {
+			if (!slice.getDimensions().contains(dimension)) {
+				throw new IllegalArgumentException(dimension + " is not a dimension of " + collection);
+			}
+		}
+		for (Aggregate aggregate : query.getAggregates()) {
+			if (aggregate.getField() != null && !slice.getMetrics().contains(aggregate.getField())) {
+				throw new IllegalArgumentException(aggregate.getField() + " is not a metric of " + collection);
+			}
+		}
+		Set<String> known = new HashSet<String>(slice.getDimensions());
+		known.addAll(slice.getMetrics());
+		for (String field : QueryParameters.fieldNames(query.getFilter())) {
+			int dot = field.indexOf('.');
+			if (!known.contains(field) && !(dot > 0 && known.contains(field.substring(0, dot)))) {
+				throw new IllegalArgumentException("Unknown field " + field + " in " + collection);
+			}
+		}
+	}
+
+	private static List<DBObject> aggregate(DBCollection collection, List<DBObject> pipeline) {
+		DBObject[] additionalOps = pipeline.subList(1, pipeline.size()).toArray(new DBObject[pipeline.size() - 1]);
+		AggregationOutput output = collection.aggregate(pipeline.get(0), additionalOps);
+		output.getCommandResult().throwOnError();
+		List<DBObject> groups = new ArrayList<DBObject>();
+		for (DBObject group : output.results()) {
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	private Response write(AggregateQuery query, List<DBObject> groups, KeyDictionary keys, ResultWriter writer)
+			throws IOException {
+		Response response = new Response();
+		response.setDataset(query.getDataSet());
+		response.setSlice(query.getCollection());
+		List<String> columns = new ArrayList<String>(query.getGroupBy());
+		for (Aggregate aggregate : query.getAggregates()) {
+			columns.add(aggregate.getName());
+		}
+		response.setColumns(columns);
+		response.setTotal((long) groups.size());
+		writer.start(response);
+		for (DBObject group : groups) {
+			writer.write(row(query, group, keys));
+		}
+		response.setCount(groups.size());
+		writer.end(response);
+		return response;
+	}
+
+	/*
+	 * The group with original dimension names and finished aggregates.
+	 */
+	private static DBObject row(AggregateQuery query, DBObject group, KeyDictionary keys) {
+		BasicDBObject row = new BasicDBObject();
+		DBObject id = (DBObject) group.get("_id");
+		for (String dimension : query.getGroupBy()) {
+			row.put(dimension, id != null ? id.get(keys.compress(dimension)) : null);
+		}
+		List<Aggregate> aggregates = query.getAggregates();
+		for (int i = 0; i < aggregates.size(); i++) {
+			Aggregate aggregate = aggregates.get(i);
+			// a rollup average comes as a sum and a count
+			if (aggregate.getFunction() == Aggregate.Function.AVG
+					&& group.containsField(accumulator(i) + RollupBuilder.SUM_SUFFIX)) {
+				Number sum = (Number) group.get(accumulator(i) + RollupBuilder.SUM_SUFFIX);
+				Number count = (Number) group.get(accumulator(i) + RollupBuilder.COUNT_SUFFIX);
+				row.put(aggregate.getName(), count == null || count.longValue() == 0 ? null : sum.doubleValue()
+						/ count.longValue());
+			} else {
+				row.put(aggregate.getName(), group.get(accumulator(i)));
+			}
+		}
+		return row;
+	}
+
+	/*
+	 * Accumulators are numbered, aggregate names may not be valid field names.
+	 */
+	private static String accumulator(int i) {
+		return "a" + i;
+	}
+
+	/**
+	 * @return $match, $group and $sort stages grouping the records of a
+	 *         collection by the query's dimensions
+	 */
+	static List<DBObject> recordPipeline(AggregateQuery query, KeyDictionary keys) {
+		List<DBObject> pipeline = new ArrayList<DBObject>();
+		// first, so the loader's dimension indexes can serve it
+		if (query.getFilter() != null && !query.getFilter().keySet().isEmpty()) {
+			BasicDBObject match = new BasicDBObject();
+			for (String field : query.getFilter().keySet()) {
+				match.put(keys.compressPath(field), query.getFilter().get(field));
+			}
+			pipeline.add(new BasicDBObject("$match", match));
+		}
+		BasicDBObject id = new BasicDBObject();
+		BasicDBObject sort = new BasicDBObject();
+		for (String dimension : query.getGroupBy()) {
+			String storedDimension = keys.compress(dimension);
+			id.put(storedDimension, "$" + storedDimension);
+			sort.put("_id." + storedDimension, 1);
+		}
+		BasicDBObject group = new BasicDBObject("_id", id);
+		List<Aggregate> aggregates = query.getAggregates();
+		for (int i = 0; i < aggregates.size(); i++) {
+			Aggregate aggregate = aggregates.get(i);
+			String metric = aggregate.getField() != null ? keys.compress(aggregate.getField()) : null;
+			switch (aggregate.getFunction()) {
+			case COUNT:
+				group.put(accumulator(i), metric == null ? new BasicDBObject("$sum", 1) : RollupBuilder
+						.countValues(metric));
+				break;
+			case SUM:
+				group.put(accumulator(i), new BasicDBObject("$sum", "$" + metric));
+				break;
+			case MIN:
+				group.put(accumulator(i), new BasicDBObject("$min", "$" + metric));
+				break;
+			case MAX:
+				group.put(accumulator(i), new BasicDBObject("$max", "$" + metric));
+				break;
+			case AVG:
+				group.put(accumulator(i), new BasicDBObject("$avg", "$" + metric));
+				break;
+			}
+		}
+		pipeline.add(new BasicDBObject("$group", group));
+		if (!sort.isEmpty()) {
+			pipeline.add(new BasicDBObject("$sort", sort));
+		}
+		return pipeline;
+	}
+
+	/**
+	 * @return $match (on the rollup's group keys), $group and $sort stages
+	 *         regrouping a rollup by the query's dimensions
+	 */
+	static List<DBObject> rollupPipeline(AggregateQuery query, KeyDictionary keys) {
+		List<DBObject> pipeline = new ArrayList<DBObject>();
+		if (query.getFilter() != null && !query.getFilter().keySet().isEmpty()) {
+			BasicDBObject match = new BasicDBObject();
+			for (String field : query.getFilter().keySet()) {
+				match.put("_id." + keys.compress(field), query.getFilter().get(field));
+			}
+			pipeline.add(new BasicDBObject("$match", match));
+		}
+		BasicDBObject id = new BasicDBObject();
+		BasicDBObject sort = new BasicDBObject();
+		for (String dimension : query.getGroupBy()) {
+			String storedDimension = keys.compress(dimension);
+			id.put(storedDimension, "$_id." + storedDimension);
+			sort.put("_id." + storedDimension, 1);
+		}
+		BasicDBObject group = new BasicDBObject("_id", id);
+		List<Aggregate> aggregates = query.getAggregates();
+		for (int i = 0; i < aggregates.size(); i++) {
+			Aggregate aggregate = aggregates.get(i);
+			String metric = aggregate.getField() != null ? "$" + keys.compress(aggregate.getField()) : null;
+			switch (aggregate.getFunction()) {
+			case COUNT:
+				group.put(accumulator(i), new BasicDBObject("$sum", metric == null ? "$" + RollupBuilder.COUNT
+						: metric + RollupBuilder.COUNT_SUFFIX));
+				break;
+			case SUM:
+				group.put(accumulator(i), new BasicDBObject("$sum", metric + RollupBuilder.SUM_SUFFIX));
+				break;
+			case MIN:
+				group.put(accumulator(i), new BasicDBObject("$min", metric + RollupBuilder.MIN_SUFFIX));
+				break;
+			case MAX:
+				group.put(accumulator(i), new BasicDBObject("$max", metric + RollupBuilder.MAX_SUFFIX));
+				break;
+			case AVG:
+				group.put(accumulator(i) + RollupBuilder.SUM_SUFFIX, new BasicDBObject("$sum", metric
+						+ RollupBuilder.SUM_SUFFIX));
+				group.put(accumulator(i) + RollupBuilder.COUNT_SUFFIX, new BasicDBObject("$sum", metric
+						+ RollupBuilder.COUNT_SUFFIX));
+				break;
+			}
+		}
+		pipeline.add(new BasicDBObject("$group", group));
+		if (!sort.isEmpty()) {
+			pipeline.add(new BasicDBObject("$sort", sort));
+		}
+		return pipeline;
+	}
+
+	/**
+	 * @return The smallest rollup of the query's collection that has every
+	 *         dimension and metric the query uses, null if there is none
+	 */
+	static Slice findRollup(Dataset dataset, AggregateQuery query) {
+		if (dataset == null) {
+			return null;
+		}
+		Slice base = slice(dataset, query.getCollection());
+		Set<String> dimensions = new HashSet<String>(query.getGroupBy());
+		if (query.getFilter() != null) {
+			dimensions.addAll(query.getFilter().keySet());
+		}
+		Set<String> metrics = new HashSet<String>();
+		for (Aggregate aggregate : query.getAggregates()) {
+			if (aggregate.getField() != null) {
+				metrics.add(aggregate.getField());
+			}
+		}
+
+		Slice smallest = null;
+		long smallestGroups = 0;
+		for (Slice slice : dataset.getSlices()) {
+			if (!RollupBuilder.ROLLUP_TYPE.equals(slice.getType())
+					|| !query.getCollection().equals(slice.getRollupOf())
+					|| !slice.getDimensions().containsAll(dimensions) || !slice.getMetrics().containsAll(metrics)) {
+				continue;
+			}
+			long groups = base != null ? RollupBuilder.estimateGroups(dataset, base, slice.getDimensions()) : 0;
+			if (groups == 0) {
+				groups = Long.MAX_VALUE;
+			}
+			if (smallest == null || groups < smallestGroups || (groups == smallestGroups
+					&& slice.getDimensions().size() < smallest.getDimensions().size())) {
+				smallest = slice;
+				smallestGroups = groups;
+			}
+		}
+		return smallest;
+	}
+
+	private static Slice slice(Dataset dataset, String name) {
+		if (dataset != null) {
+			for (Slice slice : dataset.getSlices()) {
+				if (name.equals(slice.getName())) {
+					return slice;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Builds or rebuilds the rollup of a collection by <code>dimensions</code>.
+	 *
+	 * @return The name of the rollup collection
+	 */
+	public String buildRollup(String dataSet, String collectionName, List<String> dimensions) {
+		Dataset dataset = datasetRepository.findOne(dataSet);
+		if (dataset == null) {
+			throw new IllegalArgumentException("No metadata for " + dataSet);
+		}
+		DB db = mongo.getDB(dataSet);
+		Slice rollup = rollupBuilder.buildRollup(db.getCollection(collectionName), dataset, dimensions);
+		metadataCache.invalidate(dataSet);
+		return rollup.getName();
+	}
+
+	/**
+	 * Caps the number of groups a query without a rollup may return, as
+	 * predicted by the column cardinalities.
+	 */
+	public void setMaxGroups(long maxGroups) {
+		this.maxGroups = maxGroups;
+	}
+
+}
@@ -15,6 +15,9 @@ public class DataService {
 	
 	public Collection findCollection(String dataSet, String collectionName) {
 		DatasetMapping dataset = datasetMappingRepository.findOne(dataSet);
+		if (dataset == null) {
+			return null;
+		}
 		for (Collection collection : dataset.getCollections()) {
 			if (collection.getName().equals(collectionName)) {
 				return collection;
@@ -0,0 +1,196 @@
+package com.mongodb.opendata.service;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Base64;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+
+/**
+ * Keyset pagination: instead of skipping over earlier pages, the next page is
+ * selected with a range condition on the sort keys starting after the last
+ * record of the previous page, so it can be answered from an index no matter
+ * how deep the page is.
+ *
+ * The sort must end in a unique key (normally <code>_id</code>) for pages not
+ * to overlap. The position is handed to clients as an opaque continuation
+ * token holding the sort key values of the last record.
+ *
+ * Range operators only match values of the type they are given, while a sort
+ * orders values of different types by type (null and missing fields first,
+ * then numbers, strings, ...), so the condition for a key also matches the
+ * values of the types sorting after (or before) the last one. Sorting on
+ * array values is not supported.
+ */
+public class Keyset {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	// the $type numbers of the BSON types in sort order, null and missing
+	// fields sort before all of them
+	private static final int[][] TYPE_ORDER = {
+		{ 1, 16, 18 }, // numbers
+		{ 14, 2 }, // symbol, string
+		{ 3 }, // object
+		{ 5 }, // binary data
+		{ 7 }, // ObjectId
+		{ 8 }, // boolean
+		{ 9 }, // date
+		{ 17 }, // timestamp
+		{ 11 } // regular expression
+	};
+	
+	private Keyset() {
+	}
+	
+	/**
+	 * @return A condition matching the records that sort after
+	 *         <code>position</code>, e.g. for sort {a: 1, _id: 1}
+	 *         <code>{$or: [{a: {$gt: a0}}, {a: {$type: t}}, ..., {a: a0, _id: {$gt: id0}}]}</code>
+	 *         with a <code>$type</code> clause for each type sorting after
+	 *         the one of a0
+	 */
+	public static DBObject after(DBObject sort, DBObject position) {
+		List<String> keys = new ArrayList<String>(sort.keySet());
+		BasicDBList or = new BasicDBList();
+		for (int i = 0; i < keys.size(); i++) {
+			String key = keys.get(i);
+			for (Object condition : following(key, value(position, key), ((Number) sort.get(key)).intValue() < 0)) {
+				BasicDBObject clause = new BasicDBObject();
+				for (int j = 0; j < i; j++) {
+					// {k: null} matches missing fields too, which sort as null
+					clause.put(keys.get(j), value(position, keys.get(j)));
+				}
+				clause.put(key, condition);
+				or.add(clause);
+			}
+		}
+		return or.size() == 1 ? (DBObject) or.get(0) : new BasicDBObject("$or", or);
+	}
+	
+	/*
+	 * The conditions on key matching the values that sort after value.
+	 */
+	private static List<Object> following(String key, Object value, boolean descending) {
+		List<Object> conditions = new ArrayList<Object>();
+		if (value == null) {
+			if (!descending) {
+				conditions.add(new BasicDBObject("$ne", null));
+			}
+			return conditions;
+		}
+		conditions.add(new BasicDBObject(descending ? "$lt" : "$gt", value));
+		// the _id of every record is set, and a collection's ids have one type
+		if (key.equals("_id")) {
+			return conditions;
+		}
+		int rank = rank(value);
+		for (int i = descending ? 0 : rank + 1; i < (descending ? rank : TYPE_ORDER.length); i++) {
+			for (int type : TYPE_ORDER[i]) {
+				conditions.add(new BasicDBObject("$type", type));
+			}
+		}
+		if (descending) {
+			conditions.add(null);
+		}
+		return conditions;
+	}
+	
+	/*
+	 * The position of the value's type in TYPE_ORDER.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static int rank(Object value) {
+		if (value instanceof Number) {
+			return 0;
+		} else if (value instanceof String || value instanceof Symbol) {
+			return 1;
+		} else if (value instanceof List) {
+			throw new IllegalArgumentException("Cannot page on array values");
+		} else if (value instanceof DBObject || value instanceof Map) {
+			return 2;
+		} else if (value instanceof byte[] || value instanceof Binary) {
+			return 3;
+		} else if (value instanceof ObjectId) {
+			return 4;
+		} else if (value instanceof Boolean) {
+			return 5;
+		} else if (value instanceof Date) {
+			return 6;
+		} else if (value instanceof BSONTimestamp) {
+			return 7;
+		} else if (value instanceof Pattern) {
+			return 8;
+		}
+		throw new IllegalArgumentException("Cannot page on " + value.getClass().getSimpleName() + " values");
+	}
+	
+	/**
+	 * @return The sort key values of <code>record</code>, i.e. the position
+	 *         the next page starts after
+	 */
+	public static DBObject position(DBObject sort, DBObject record) {
+		BasicDBObject position = new BasicDBObject();
+		for (String key : sort.keySet()) {
+			position.put(key, path(record, key));
+		}
+		return position;
+	}
+	
+	public static String encode(DBObject position) {
+		return Base64.encodeBase64URLSafeString(JSON.serialize(position).getBytes(UTF8));
+	}
+	
+	public static DBObject decode(String token, DBObject sort) {
+		Object position;
+		try {
+			position = JSON.parse(new String(Base64.decodeBase64(token), UTF8));
+		} catch (JSONParseException e) {
+			throw new IllegalArgumentException("Invalid continuation token: " + token);
+		}
+		if (!(position instanceof DBObject) || !((DBObject) position).keySet().equals(sort.keySet())) {
+			throw new IllegalArgumentException("Continuation token does not match the sort order: " + token);
+		}
+		return (DBObject) position;
+	}
+	
+	private static Object value(DBObject position, String key) {
+		if (!position.containsField(key)) {
+			throw new IllegalArgumentException("Continuation token is missing " + key);
+		}
+		return position.get(key);
+	}
+	
+	/*
+	 * Resolves a dotted key like "address.zip" against nested documents.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Object path(DBObject record, String key) {
+		Object value = record;
+		int start = 0;
+		while (value instanceof Map || value instanceof DBObject) {
+			int dot = key.indexOf('.', start);
+			String part = dot < 0 ? key.substring(start) : key.substring(start, dot);
+			value = value instanceof DBObject ? ((DBObject) value).get(part) : ((Map) value).get(part);
+			if (dot < 0) {
+				return value;
+			}
+			start = dot + 1;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.mongodb.opendata.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.mongodb.opendata.repository.DatasetRepository;
+import com.mongodb.opendata.util.KeyDictionary;
+
+/**
+ * Dataset metadata and key compression dictionaries for the query API, so a
+ * request doesn't read the metadata database and rebuild the dictionary
+ * every time.
+ *
+ * Entries, including datasets that have no metadata, are reloaded after
+ * <code>ttlMillis</code> so data loaded by another process is picked up;
+ * {@link #invalidate(String)} drops one immediately.
+ */
+@Service
+public class MetadataCache {
+
+	public static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+
+	@Autowired
+	private DatasetRepository datasetRepository;
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private long ttlMillis = DEFAULT_TTL_MILLIS;
+
+	/**
+	 * @return The dataset's metadata, null if it has none
+	 */
+	public Dataset getDataset(String dataSet) {
+		return entry(dataSet).dataset;
+	}
+
+	/**
+	 * @return The dictionary the collection's records were stored with,
+	 *         {@link KeyDictionary#IDENTITY} if its keys are not compressed
+	 */
+	public KeyDictionary getKeyDictionary(String dataSet, String collection) {
+		KeyDictionary dictionary = entry(dataSet).dictionaries.get(collection);
+		return dictionary != null ? dictionary : KeyDictionary.IDENTITY;
+	}
+
+	public void invalidate(String dataSet) {
+		entries.remove(dataSet);
+	}
+
+	private Entry entry(String dataSet) {
+		Entry entry = entries.get(dataSet);
+		if (entry == null || System.currentTimeMillis() - entry.loaded > ttlMillis) {
+			// concurrent misses may both load, the last one wins
+			entry = new Entry(datasetRepository.findOne(dataSet));
+			entries.put(dataSet, entry);
+		}
+		return entry;
+	}
+
+	public void setTtlMillis(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	private static class Entry {
+
+		final Dataset dataset;
+		final Map<String, KeyDictionary> dictionaries = new HashMap<String, KeyDictionary>();
+		final long loaded = System.currentTimeMillis();
+
+		Entry(Dataset dataset) {
+			this.dataset = dataset;
+			if (dataset != null) {
+				for (Slice slice : dataset.getSlices()) {
+					if (!slice.getKeyToCompressedKeyMap().isEmpty()) {
+						dictionaries.put(slice.getName(), new KeyDictionary(slice.getKeyToCompressedKeyMap()));
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,320 @@
+package com.mongodb.opendata.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.dspl.model.DataType;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Aggregate;
+import com.mongodb.opendata.parser.TypeCoercingListener.ColumnCoercion;
+
+/**
+ * Translates API query string parameters into MongoDB query documents.
+ *
+ * <pre>
+ * state=NY                     {state: "NY"}
+ * state=NY&amp;state=CA           {state: {$in: ["NY", "CA"]}}
+ * state[in]=NY,CA              {state: {$in: ["NY", "CA"]}}
+ * year[gte]=2000&amp;year[lt]=2010 {year: {$gte: 2000, $lt: 2010}}
+ * fields=state,population      {state: 1, population: 1}
+ * sort=state,-population       {state: 1, population: -1, _id: 1}
+ * groupBy=state,year           group by state and year
+ * metrics=sum(units),count     sum of units and record count per group
+ * </pre>
+ *
+ * Field names are checked: an empty name or path segment, or one starting
+ * with '$' (an operator such as $where, or $natural), is rejected.
+ *
+ * Query string values are untyped, so a value that looks like a number
+ * matches both the number and the string in equality and <code>in</code>
+ * conditions; range conditions compare numbers if the value is numeric.
+ * Values of the date and boolean columns of a collection's metadata are
+ * converted the way the loaders stored them (see {@link ColumnCoercion}), and
+ * range conditions on its text columns compare text.
+ */
+public class QueryParameters {
+	
+	public static final String AFTER = "after";
+	public static final String LIMIT = "limit";
+	public static final String FIELDS = "fields";
+	public static final String SORT = "sort";
+	public static final String GROUP_BY = "groupBy";
+	public static final String METRICS = "metrics";
+	
+	private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList(AFTER, LIMIT, FIELDS, SORT,
+			GROUP_BY, METRICS));
+	
+	private static final Set<String> RANGE_OPERATORS = new HashSet<String>(Arrays.asList("gt", "gte", "lt", "lte", "ne"));
+	
+	private static final Pattern PARAMETER = Pattern.compile("([^\\[\\]]+)(?:\\[([a-z]+)\\])?");
+	
+	private static final Pattern AGGREGATE = Pattern.compile("([a-z]+)(?:\\(([^()]+)\\))?");
+	
+	private static final Pattern INTEGER = Pattern.compile("-?\\d{1,18}");
+	private static final Pattern DECIMAL = Pattern.compile("-?\\d*\\.?\\d+(?:[eE][-+]?\\d+)?");
+	
+	private QueryParameters() {
+	}
+	
+	/**
+	 * @return The filter for all non-reserved parameters, an empty document
+	 *         if there are none
+	 */
+	public static DBObject filter(Map<String, String[]> parameters) {
+		return filter(parameters, null);
+	}
+	
+	/**
+	 * @param columns The columns of the collection's metadata, null if it has
+	 *            none
+	 * @return The filter for all non-reserved parameters, an empty document
+	 *         if there are none
+	 */
+	public static DBObject filter(Map<String, String[]> parameters, Collection<Column> columns) {
+		Map<String, ColumnCoercion> coercions = new HashMap<String, ColumnCoercion>();
+		Set<String> textFields = new HashSet<String>();
+		if (columns != null) {
+			for (Column column : columns) {
+				if (column.getType() == DataType.BOOLEAN
+						|| (column.getType() == DataType.DATE && column.getFormat() != null)) {
+					coercions.put(column.getId(), new ColumnCoercion(column.getId(), column.getType(),
+							column.getFormat()));
+				} else if (column.getType() == DataType.STRING) {
+					textFields.add(column.getId());
+				}
+			}
+		}
+		BasicDBObject filter = new BasicDBObject();
+		for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+			if (RESERVED.contains(parameter.getKey())) {
+				continue;
+			}
+			Matcher matcher = PARAMETER.matcher(parameter.getKey());
+			if (!matcher.matches()) {
+				throw new IllegalArgumentException("Invalid filter parameter: " + parameter.getKey());
+			}
+			String field = checkField(matcher.group(1));
+			String operator = matcher.group(2);
+			String[] values = parameter.getValue();
+			
+			if (operator == null || operator.equals("in")) {
+				BasicDBList in = new BasicDBList();
+				for (String value : values) {
+					for (String element : operator == null ? new String[] { value } : value.split(",")) {
+						addEqualityValues(in, element, coercions.get(field));
+					}
+				}
+				condition(filter, field).put("$in", in);
+			} else if (RANGE_OPERATORS.contains(operator)) {
+				if (values.length != 1) {
+					throw new IllegalArgumentException("Only one value allowed for " + parameter.getKey());
+				}
+				Object value = textFields.contains(field) ? values[0] : typed(values[0], coercions.get(field));
+				condition(filter, field).put("$" + operator, value);
+			} else {
+				throw new IllegalArgumentException("Unknown operator " + operator + " in " + parameter.getKey());
+			}
+		}
+		simplify(filter);
+		return filter;
+	}
+	
+	/**
+	 * @return The projection for a comma separated field list, null (all
+	 *         fields) if <code>fields</code> is empty
+	 */
+	public static DBObject projection(String fields) {
+		if (fields == null || fields.trim().length() == 0) {
+			return null;
+		}
+		BasicDBObject projection = new BasicDBObject();
+		for (String field : fields.split(",")) {
+			field = field.trim();
+			if (field.length() > 0) {
+				projection.put(checkField(field), 1);
+			}
+		}
+		return projection;
+	}
+	
+	/**
+	 * @return The sort for a comma separated field list, descending if
+	 *         prefixed with '-'. _id is always appended as the last key so the
+	 *         order is total and can be paged with {@link Keyset}.
+	 */
+	public static DBObject sort(String sort) {
+		BasicDBObject sortDbo = new BasicDBObject();
+		if (sort != null) {
+			for (String field : sort.split(",")) {
+				field = field.trim();
+				int direction = 1;
+				if (field.startsWith("-")) {
+					direction = -1;
+					field = field.substring(1);
+				} else if (field.startsWith("+")) {
+					field = field.substring(1);
+				}
+				if (field.length() == 0) {
+					continue;
+				}
+				checkField(field);
+				if (sortDbo.containsField(field)) {
+					throw new IllegalArgumentException("Duplicate sort field: " + field);
+				}
+				sortDbo.put(field, direction);
+			}
+		}
+		if (!sortDbo.containsField("_id")) {
+			sortDbo.put("_id", 1);
+		}
+		return sortDbo;
+	}
+	
+	/**
+	 * @return The fields of a comma separated list, in order
+	 */
+	public static List<String> groupBy(String groupBy) {
+		List<String> fields = new ArrayList<String>();
+		if (groupBy != null) {
+			for (String field : groupBy.split(",")) {
+				field = field.trim();
+				if (field.length() > 0 && !fields.contains(field)) {
+					fields.add(checkField(field));
+				}
+			}
+		}
+		return fields;
+	}
+	
+	/**
+	 * @return The aggregates of a comma separated list such as
+	 *         "sum(units),avg(units),count", a record count if the list is
+	 *         empty
+	 */
+	public static List<Aggregate> aggregates(String metrics) {
+		List<Aggregate> aggregates = new ArrayList<Aggregate>();
+		if (metrics != null) {
+			for (String metric : metrics.split(",")) {
+				metric = metric.trim();
+				if (metric.length() == 0) {
+					continue;
+				}
+				Matcher matcher = AGGREGATE.matcher(metric);
+				if (!matcher.matches()) {
+					throw new IllegalArgumentException("Invalid metric: " + metric);
+				}
+				Aggregate.Function function;
+				try {
+					function = Aggregate.Function.valueOf(matcher.group(1).toUpperCase());
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Unknown function " + matcher.group(1) + " in " + metric);
+				}
+				String field = matcher.group(2) != null ? checkField(matcher.group(2).trim()) : null;
+				aggregates.add(new Aggregate(function, field));
+			}
+		}
+		if (aggregates.isEmpty()) {
+			aggregates.add(new Aggregate(Aggregate.Function.COUNT, null));
+		}
+		return aggregates;
+	}
+	
+	/**
+	 * @return All field names used by the filter, including nested paths
+	 *         as given (e.g. "address.zip")
+	 */
+	public static Collection<String> fieldNames(DBObject... documents) {
+		Set<String> fields = new HashSet<String>();
+		for (DBObject document : documents) {
+			if (document != null) {
+				fields.addAll(document.keySet());
+			}
+		}
+		return fields;
+	}
+	
+	/**
+	 * @return The field name
+	 * @throws IllegalArgumentException If the name or a segment of its path is
+	 *             empty or starts with '$'
+	 */
+	static String checkField(String field) {
+		for (String segment : field.split("\\.", -1)) {
+			if (segment.length() == 0 || segment.startsWith("$")) {
+				throw new IllegalArgumentException("Invalid field name: " + field);
+			}
+		}
+		return field;
+	}
+	
+	private static BasicDBObject condition(BasicDBObject filter, String field) {
+		BasicDBObject condition = (BasicDBObject) filter.get(field);
+		if (condition == null) {
+			condition = new BasicDBObject();
+			filter.put(field, condition);
+		}
+		return condition;
+	}
+	
+	/*
+	 * {field: {$in: [v]}} becomes {field: v}, which reads better in explain
+	 * output and logs.
+	 */
+	private static void simplify(BasicDBObject filter) {
+		for (String field : filter.keySet()) {
+			BasicDBObject condition = (BasicDBObject) filter.get(field);
+			BasicDBList in = (BasicDBList) condition.get("$in");
+			if (in != null && in.size() == 1 && condition.size() == 1) {
+				filter.put(field, in.get(0));
+			}
+		}
+	}
+	
+	private static void addEqualityValues(BasicDBList in, String value, ColumnCoercion coercion) {
+		Object typed = typed(value, coercion);
+		in.add(typed);
+		if (typed != value) {
+			in.add(value);
+		}
+	}
+	
+	/*
+	 * Values that don't fit a date or boolean column stay as they are, like
+	 * those the loaders couldn't convert.
+	 */
+	private static Object typed(String value, ColumnCoercion coercion) {
+		if (coercion != null) {
+			Object converted = coercion.convert(value);
+			if (converted != null) {
+				return converted;
+			}
+		}
+		return typed(value);
+	}
+	
+	static Object typed(String value) {
+		if (INTEGER.matcher(value).matches()) {
+			long l = Long.parseLong(value);
+			if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+				return (int) l;
+			}
+			return l;
+		}
+		if (DECIMAL.matcher(value).matches()) {
+			return Double.parseDouble(value);
+		}
+		return value;
+	}
+
+}
@@ -1,96 +1,296 @@
 package com.mongodb.opendata.service;
 
-import java.io.PrintWriter;
-import java.net.UnknownHostException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.xml.JacksonXmlModule;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
+import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
-import com.mongodb.MongoClient;
+import com.mongodb.DBPortPool;
+import com.mongodb.Mongo;
+import com.mongodb.opendata.domain.Collection;
+import com.mongodb.opendata.domain.Query;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.util.KeyDictionary;
+import com.mongodb.opendata.writer.ResultWriter;
 
+/**
+ * Queries go through the application's shared {@link Mongo} instance, whose
+ * connection pool is sized in root-context.xml (see mongo.properties).
+ *
+ * Results are filtered, projected and sorted as described by the
+ * {@link Query} (see {@link QueryParameters}) and returned in pages of at most
+ * <code>limit</code> records; each page carries a continuation token for the
+ * next one (see {@link Keyset}). Without a sort, records are ordered by _id.
+ * The total number of matching records is only counted for the first page.
+ */
 @Service
 public class QueryService {
 	
+	private static final Logger logger = LoggerFactory.getLogger(QueryService.class);
 	
-	public void queryJson(String dataSet, String collection, PrintWriter writer) throws UnknownHostException {
-		MongoClient client = new MongoClient();
-		DB db = client.getDB(dataSet);
+	@Autowired
+	private Mongo mongo;
+	
+	@Autowired
+	private MetadataCache metadataCache;
+	
+	@Autowired
+	private DataService dataService;
+	
+	public static final int DEFAULT_LIMIT = 1000;
+	
+	public static final int DEFAULT_MAX_LIMIT = 10000;
+	
+	private static final DBObject ID_SORT = new BasicDBObject("_id", 1);
+	
+	private final QueryStatistics statistics = new QueryStatistics();
+	
+	private int maxLimit = DEFAULT_MAX_LIMIT;
+	
+	/**
+	 * Streams one page of results for <code>query</code> to
+	 * <code>writer</code>.
+	 * 
+	 * @return The page's total, count and continuation token
+	 */
+	public Response query(Query query, ResultWriter writer) throws IOException {
+		DB db = mongo.getDB(query.getDataSet());
+		DBCollection collection = db.getCollection(query.getCollection());
+		Dataset dataset = metadataCache.getDataset(query.getDataSet());
+		validate(query, query.getSort() != null ? query.getSort() : ID_SORT, dataset);
+		
+		// the query names the original fields, the records are stored under compressed ones
+		KeyDictionary keyDictionary = metadataCache.getKeyDictionary(query.getDataSet(), query.getCollection());
+		DBObject filter = storedNames(query.getFilter(), keyDictionary);
+		DBObject sort = query.getSort() != null ? storedNames(query.getSort(), keyDictionary) : ID_SORT;
+		DBObject criteria = criteria(query, filter, sort);
+		int limit = limit(query);
 		
+		Response response = new Response();
+		response.setDataset(query.getDataSet());
+		response.setSlice(query.getCollection());
+		response.setColumns(columns(query, dataset));
+		response.setKeyDictionary(keyDictionary);
+		Slice slice = slice(dataset, query.getCollection());
+		if (slice != null) {
+			response.setRecordName(slice.getRecordName());
+		}
 		
-		writer.println("{\"results\": [");
-		DBCursor cursor = db.getCollection(collection).find(null).limit(1000);
+		// one record more than the page to tell whether this is the last page
+		DBCursor cursor = find(db, collection, criteria,
+				projection(storedNames(query.getProjection(), keyDictionary), sort), sort, limit + 1);
 		try {
-			while (cursor.hasNext()) {
-				DBObject obj = cursor.next();
-				
-				//writer.print(JSON.serialize(obj));
-				writer.print(obj.toString());
-			
-				if (cursor.hasNext()) {
-					writer.println(",");
-				}
-				
+			// counting all matches costs as much as a query, once is enough
+			if (query.getAfter() == null) {
+				response.setTotal(collection.count(filter));
+			}
+			writer.start(response);
+			DBObject obj = null;
+			int count = 0;
+			while (count < limit && cursor.hasNext()) {
+				obj = cursor.next();
+				writer.write(obj);
+				count++;
+			}
+			response.setCount(count);
+			if (cursor.hasNext()) {
+				response.setNext(Keyset.encode(Keyset.position(sort, obj)));
+				response.setNextLink(nextLink(query, response.getNext()));
 			}
 		} finally {
 			cursor.close();
+			db.requestDone();
 		}
-		
-		writer.println("]}");
+		writer.end(response);
+		return response;
 	}
 	
-	public void queryXml(String dataSet, String collection, PrintWriter writer) throws UnknownHostException {
-		ObjectMapper mapper = new ObjectMapper();
-		
-		JacksonXmlModule module = new JacksonXmlModule();
-		// and then configure, for example:
-		module.setDefaultUseWrapper(false);
-		module.setXMLTextElementName("results");
-		XmlMapper xmlMapper = new XmlMapper(module);
-		XmlMapper xml = new XmlMapper();
-		//xml.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, false);
-		ObjectNode rootNode = mapper.createObjectNode();
-	
-		MongoClient client = new MongoClient();
-		DB db = client.getDB(dataSet);
-		
-		
-		writer.println("{\"results\": [");
-		DBCursor cursor = db.getCollection(collection).find(null).limit(1000);
+	/**
+	 * @return The filter for query string parameters, typed by the columns
+	 *         of the collection's metadata (see {@link QueryParameters})
+	 */
+	public DBObject filter(String dataSet, String collection, Map<String, String[]> parameters) {
+		Table table = table(metadataCache.getDataset(dataSet), collection);
+		return QueryParameters.filter(parameters, table != null ? table.getColumns() : null);
+	}
+	
+	/**
+	 * Pins a pooled connection to the calling thread for the whole request so
+	 * the time spent waiting for it can be measured; callers must call
+	 * requestDone() once the cursor is closed.
+	 */
+	private DBCursor find(DB db, DBCollection collection, DBObject criteria, DBObject projection, DBObject sort,
+			int limit) {
+		db.requestStart();
+		long start = System.nanoTime();
 		try {
-			while (cursor.hasNext()) {
-				DBObject obj = cursor.next();
-				
-				//writer.print(JSON.serialize(obj));
-				writer.print(obj.toString());
-			
-				if (cursor.hasNext()) {
-					writer.println(",");
+			db.requestEnsureConnection();
+		} catch (DBPortPool.NoMoreConnection e) {
+			statistics.checkoutFailed();
+			db.requestDone();
+			logger.warn("No pooled connection available: " + statistics);
+			throw e;
+		}
+		statistics.connectionCheckedOut(System.nanoTime() - start);
+		if (logger.isDebugEnabled()) {
+			logger.debug(statistics.toString());
+		}
+		return collection.find(criteria, projection).sort(sort).limit(limit);
+	}
+	
+	/*
+	 * The filter, restricted to the records after the previous page.
+	 */
+	private DBObject criteria(Query query, DBObject filter, DBObject sort) {
+		if (query.getAfter() == null) {
+			return filter;
+		}
+		DBObject after = Keyset.after(sort, Keyset.decode(query.getAfter(), sort));
+		if (filter == null || filter.keySet().isEmpty()) {
+			return after;
+		}
+		BasicDBList and = new BasicDBList();
+		and.add(filter);
+		and.add(after);
+		return new BasicDBObject("$and", and);
+	}
+	
+	/*
+	 * The requested fields plus the sort keys, which the continuation token
+	 * is built from.
+	 */
+	private DBObject projection(DBObject projection, DBObject sort) {
+		if (projection == null) {
+			return null;
+		}
+		BasicDBObject withSortKeys = new BasicDBObject(projection.toMap());
+		for (String key : sort.keySet()) {
+			withSortKeys.put(key, 1);
+		}
+		return withSortKeys;
+	}
+	
+	/*
+	 * Renames the fields of a filter, projection or sort to the names they are
+	 * stored under, keeping their order.
+	 */
+	private DBObject storedNames(DBObject names, KeyDictionary keyDictionary) {
+		if (names == null || keyDictionary.isIdentity()) {
+			return names;
+		}
+		BasicDBObject stored = new BasicDBObject();
+		for (String name : names.keySet()) {
+			stored.put(keyDictionary.compressPath(name), names.get(name));
+		}
+		return stored;
+	}
+	
+	/*
+	 * Rejects fields that are not dimensions or metrics of the collection's
+	 * slice, when its metadata is known.
+	 */
+	private void validate(Query query, DBObject sort, Dataset dataset) {
+		Slice slice = slice(dataset, query.getCollection());
+		if (slice == null) {
+			return;
+		}
+		Set<String> known = new HashSet<String>(slice.getDimensions());
+		known.addAll(slice.getMetrics());
+		known.add("_id");
+		for (String field : QueryParameters.fieldNames(query.getFilter(), query.getProjection(), sort)) {
+			int dot = field.indexOf('.');
+			if (!known.contains(field) && !(dot > 0 && known.contains(field.substring(0, dot)))) {
+				throw new IllegalArgumentException("Unknown field " + field + " in " + query.getDataSet() + "/"
+						+ query.getCollection());
+			}
+		}
+	}
+	
+	/*
+	 * Column order for tabular output: the requested fields, else the table
+	 * columns or the collection fields recorded when the data was loaded.
+	 */
+	private List<String> columns(Query query, Dataset dataset) {
+		if (query.getProjection() != null) {
+			return new ArrayList<String>(query.getProjection().keySet());
+		}
+		Table table = table(dataset, query.getCollection());
+		if (table != null && !table.getColumns().isEmpty()) {
+			List<String> columns = new ArrayList<String>();
+			for (Column column : table.getColumns()) {
+				columns.add(column.getId());
+			}
+			return columns;
+		}
+		Collection collection = dataService.findCollection(query.getDataSet(), query.getCollection());
+		if (collection != null && !collection.getFields().isEmpty()) {
+			return collection.getFields();
+		}
+		return null;
+	}
+	
+	private Slice slice(Dataset dataset, String name) {
+		if (dataset != null) {
+			for (Slice slice : dataset.getSlices()) {
+				if (name.equals(slice.getName())) {
+					return slice;
 				}
-				
 			}
-		} finally {
-			cursor.close();
 		}
-		
-		writer.println("]}");
-		
-
-		
-		rootNode.put("firstName", "Mark");
-		rootNode.put("lastName", "Helmstetter");
-		rootNode.with("address").put("street", "42882 Deleon Dr");
-		
-		
-		
-		//System.out.println(mapper.writeValueAsString(rootNode));
-		
-		//System.out.println(xml.writeValueAsString(rootNode));
+		return null;
+	}
+	
+	private Table table(Dataset dataset, String name) {
+		if (dataset != null) {
+			for (Table table : dataset.getTables()) {
+				if (name.equals(table.getId())) {
+					return table;
+				}
+			}
+		}
+		return null;
+	}
+	
+	private int limit(Query query) {
+		if (query.getLimit() <= 0) {
+			return Math.min(DEFAULT_LIMIT, maxLimit);
+		}
+		return Math.min(query.getLimit(), maxLimit);
+	}
+	
+	private String nextLink(Query query, String next) {
+		if (query.getUrl() == null) {
+			return null;
+		}
+		return query.getUrl() + (query.getUrl().indexOf('?') < 0 ? '?' : '&') + "after=" + next;
+	}
+	
+	/**
+	 * Caps the page size clients can ask for.
+	 */
+	public void setMaxLimit(int maxLimit) {
+		this.maxLimit = maxLimit;
+	}
+	
+	public QueryStatistics getStatistics() {
+		return statistics;
 	}
 
 }
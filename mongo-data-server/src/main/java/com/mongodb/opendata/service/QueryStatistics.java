@@ -0,0 +1,57 @@
+package com.mongodb.opendata.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection pool counters for the query API, shared by all request threads.
+ * A rising average or max checkout time means requests are queueing for a
+ * pooled connection, i.e. <code>mongo.connectionsPerHost</code> is too small
+ * for the traffic; checkout failures are requests rejected because the wait
+ * queue was full or <code>mongo.maxWaitTime</code> expired.
+ */
+public class QueryStatistics {
+
+	private final AtomicLong queryCount = new AtomicLong();
+	private final AtomicLong checkoutNanos = new AtomicLong();
+	private final AtomicLong maxCheckoutNanos = new AtomicLong();
+	private final AtomicLong checkoutFailures = new AtomicLong();
+
+	void connectionCheckedOut(long nanos) {
+		queryCount.incrementAndGet();
+		checkoutNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxCheckoutNanos.get())) {
+			if (maxCheckoutNanos.compareAndSet(max, nanos)) {
+				break;
+			}
+		}
+	}
+
+	void checkoutFailed() {
+		checkoutFailures.incrementAndGet();
+	}
+
+	public long getQueryCount() {
+		return queryCount.get();
+	}
+
+	public long getCheckoutFailures() {
+		return checkoutFailures.get();
+	}
+
+	public double getAverageCheckoutMillis() {
+		long count = queryCount.get();
+		return count > 0 ? checkoutNanos.get() / 1000000.0 / count : 0;
+	}
+
+	public double getMaxCheckoutMillis() {
+		return maxCheckoutNanos.get() / 1000000.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("queries %d, pool checkout avg %.3f ms (max %.3f ms), checkout failures %d",
+				getQueryCount(), getAverageCheckoutMillis(), getMaxCheckoutMillis(), getCheckoutFailures());
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.mongodb.opendata.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Input that may be compressed, recognized by its first bytes (see
+ * {@link Compression}) and decompressed while it is read, on other threads
+ * than the reader's:
+ * <ul>
+ * <li>gzip on a pool of threads, see {@link ParallelGzipInputStream}</li>
+ * <li>bzip2 (all streams of a concatenated file) on a thread of its own</li>
+ * <li>zip one file at a time, each on a thread of its own</li>
+ * </ul>
+ *
+ * The input is read as one or more units: the whole input, or each file of a
+ * zip archive.
+ *
+ * <pre>
+ * CompressedInput input = new CompressedInput(in, threads);
+ * try {
+ *     while (input.next()) {
+ *         parse(input.getInputStream());
+ *     }
+ * } finally {
+ *     input.close();
+ * }
+ * </pre>
+ */
+public class CompressedInput implements Closeable {
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final InputStream input;
+    private final Compression compression;
+    private final int threads;
+
+    private ZipInputStream zip;
+    private InputStream current;
+    private String name;
+    private boolean started;
+
+    /**
+     * @param threads The number of threads to decompress gzip input on
+     */
+    public CompressedInput(InputStream input, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.input = input.markSupported() ? input : new BufferedInputStream(input, BUFFER_SIZE);
+        this.compression = Compression.detect(this.input);
+        this.threads = threads;
+    }
+
+    /**
+     * Moves on to the next unit, closing the current one.
+     *
+     * @return Whether there is one
+     */
+    public boolean next() throws IOException {
+        closeCurrent();
+        if (compression == Compression.ZIP) {
+            if (zip == null) {
+                zip = new ZipInputStream(input);
+            }
+            ZipEntry entry;
+            do {
+                entry = zip.getNextEntry();
+            } while (entry != null && entry.isDirectory());
+            if (entry == null) {
+                return false;
+            }
+            name = entry.getName();
+            current = new ReadAheadInputStream(new EntryInputStream(zip));
+            return true;
+        }
+        if (started) {
+            return false;
+        }
+        started = true;
+        switch (compression) {
+        case GZIP:
+            current = new ParallelGzipInputStream(input, threads);
+            break;
+        case BZIP2:
+            current = new ReadAheadInputStream(new BZip2CompressorInputStream(input, true));
+            break;
+        default:
+            current = input;
+        }
+        return true;
+    }
+
+    /**
+     * @return The decompressed unit
+     */
+    public InputStream getInputStream() {
+        if (current == null) {
+            throw new IllegalStateException("next() has not moved to a unit");
+        }
+        return current;
+    }
+
+    /**
+     * @return The path of the current file in a zip archive, null for other
+     *         input
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeCurrent();
+        } finally {
+            input.close();
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current != null) {
+            InputStream closing = current;
+            current = null;
+            name = null;
+            closing.close();
+        }
+    }
+
+    /*
+     * A zip entry, closing it leaves the archive open for the next one.
+     */
+    private static class EntryInputStream extends FilterInputStream {
+
+        EntryInputStream(ZipInputStream zip) {
+            super(zip);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.mongodb.opendata.util;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Immutable two-way map between keys and their md5 prefix codes, stored as
+ * parallel arrays with open addressing indexes in both directions.
+ *
+ * {@link #build(Collection)} assigns the same codes as
+ * {@link KeyCompressionUtils#addKeyToCompressedKeyToKeyMap(String, Map)}
+ * applied to the keys in order: each key takes the first free prefix of its
+ * hash, and a key that finds its prefix taken moves the holder one digit
+ * further down. Each key is hashed once, and the prefixes taken are kept in a
+ * trie of hex digits, so following a displaced key down is a step to a child
+ * node rather than a new substring and map lookup.
+ */
+public final class CompressedKeyMap {
+
+    private static final int HEX_DIGITS = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String[] keys;
+    private final String[] compressedKeys;
+    private final int[] keyIndex;
+    private final int[] compressedKeyIndex;
+
+    private CompressedKeyMap(String[] keys, int[] keyIndex, String[] compressedKeys) {
+        this.keys = keys;
+        this.keyIndex = keyIndex;
+        this.compressedKeys = compressedKeys;
+        compressedKeyIndex = index(compressedKeys);
+    }
+
+    public static CompressedKeyMap build(Collection<String> keys) {
+        String[] keyArray = keys.toArray(new String[keys.size()]);
+        // rejects duplicates before they look like a hash collision
+        int[] keyIndex = index(keyArray);
+        byte[][] hashes = new byte[keyArray.length][];
+        for (int i = 0; i < keyArray.length; i++) {
+            hashes[i] = DigestUtils.md5(keyArray[i]);
+        }
+
+        int[] lengths = new int[keyArray.length];
+        Node root = new Node();
+        // keys waiting to be placed and the trie node of the prefix they try next
+        int[] pending = new int[HEX_DIGITS + 1];
+        Node[] pendingNodes = new Node[HEX_DIGITS + 1];
+        for (int i = 0; i < keyArray.length; i++) {
+            int top = 0;
+            pending[0] = i;
+            pendingNodes[0] = root.child(digit(hashes[i], 0));
+            while (top >= 0) {
+                int key = pending[top];
+                Node node = pendingNodes[top];
+                int depth = node.depth;
+                if (node.key < 0) {
+                    node.key = key;
+                    lengths[key] = depth;
+                    top--;
+                    continue;
+                }
+                if (depth == HEX_DIGITS) {
+                    throw new IllegalStateException("Keys " + keyArray[key] + " and " + keyArray[node.key]
+                            + " have the same hash");
+                }
+                // the holder moves down first, then this key tries the next digit
+                int displaced = node.key;
+                node.key = -1;
+                pendingNodes[top] = node.child(digit(hashes[key], depth));
+                pending[++top] = displaced;
+                pendingNodes[top] = node.child(digit(hashes[displaced], depth));
+            }
+        }
+
+        String[] compressedKeys = new String[keyArray.length];
+        for (int i = 0; i < keyArray.length; i++) {
+            char[] hex = new char[lengths[i]];
+            for (int d = 0; d < hex.length; d++) {
+                hex[d] = HEX[digit(hashes[i], d)];
+            }
+            compressedKeys[i] = new String(hex);
+        }
+        return new CompressedKeyMap(keyArray, keyIndex, compressedKeys);
+    }
+
+    private static int digit(byte[] hash, int position) {
+        int b = hash[position >> 1];
+        return (position & 1) == 0 ? (b >> 4) & 0xf : b & 0xf;
+    }
+
+    public String compress(String key) {
+        int i = find(keyIndex, keys, key);
+        return i < 0 ? null : compressedKeys[i];
+    }
+
+    public String decompress(String compressedKey) {
+        int i = find(compressedKeyIndex, compressedKeys, compressedKey);
+        return i < 0 ? null : keys[i];
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return The keys and their codes, in the order the keys were given
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<String, String>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], compressedKeys[i]);
+        }
+        return map;
+    }
+
+    /**
+     * @return The codes and their keys, in the order the keys were given
+     */
+    public Map<String, String> toInverseMap() {
+        Map<String, String> map = new LinkedHashMap<String, String>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            map.put(compressedKeys[i], keys[i]);
+        }
+        return map;
+    }
+
+    /*
+     * Linear probing table of array positions + 1, 0 marks a free slot.
+     */
+    private static int[] index(String[] values) {
+        int capacity = Integer.highestOneBit(Math.max(4, values.length * 2 - 1)) << 1;
+        int[] index = new int[capacity];
+        for (int i = 0; i < values.length; i++) {
+            int slot = values[i].hashCode() & (capacity - 1);
+            while (index[slot] != 0) {
+                if (values[index[slot] - 1].equals(values[i])) {
+                    throw new IllegalArgumentException("Duplicate key " + values[i]);
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            index[slot] = i + 1;
+        }
+        return index;
+    }
+
+    private static int find(int[] index, String[] values, String value) {
+        int slot = value.hashCode() & (index.length - 1);
+        while (index[slot] != 0) {
+            if (values[index[slot] - 1].equals(value)) {
+                return index[slot] - 1;
+            }
+            slot = (slot + 1) & (index.length - 1);
+        }
+        return -1;
+    }
+
+    private static final class Node {
+
+        final int depth;
+        Node[] children;
+        int key = -1;
+
+        Node() {
+            this(0);
+        }
+
+        private Node(int depth) {
+            this.depth = depth;
+        }
+
+        Node child(int digit) {
+            if (children == null) {
+                children = new Node[16];
+            }
+            Node child = children[digit];
+            if (child == null) {
+                child = new Node(depth + 1);
+                children[digit] = child;
+            }
+            return child;
+        }
+    }
+
+}
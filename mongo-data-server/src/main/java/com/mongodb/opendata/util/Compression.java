@@ -0,0 +1,51 @@
+package com.mongodb.opendata.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The compression formats input is recognized in, by its first bytes.
+ */
+public enum Compression {
+
+    NONE, GZIP, ZIP, BZIP2;
+
+    private static final int MAGIC_LENGTH = 4;
+
+    /**
+     * Looks at the first bytes of the input and resets it.
+     *
+     * @param input An input that supports mark and reset
+     */
+    public static Compression detect(InputStream input) throws IOException {
+        if (!input.markSupported()) {
+            throw new IllegalArgumentException("The input must support mark and reset");
+        }
+        byte[] magic = new byte[MAGIC_LENGTH];
+        input.mark(MAGIC_LENGTH);
+        int length = 0;
+        int n;
+        while (length < MAGIC_LENGTH && (n = input.read(magic, length, MAGIC_LENGTH - length)) != -1) {
+            length += n;
+        }
+        input.reset();
+        return detect(magic, length);
+    }
+
+    static Compression detect(byte[] magic, int length) {
+        if (length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return GZIP;
+        }
+        // a local file header, or the end of an empty archive
+        if (length == MAGIC_LENGTH && magic[0] == 'P' && magic[1] == 'K'
+                && (magic[2] == 3 && magic[3] == 4 || magic[2] == 5 && magic[3] == 6)) {
+            return ZIP;
+        }
+        if (length == MAGIC_LENGTH && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h' && magic[3] >= '1'
+                && magic[3] <= '9') {
+            return BZIP2;
+        }
+        return NONE;
+    }
+
+}
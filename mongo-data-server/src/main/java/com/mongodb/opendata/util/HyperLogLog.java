@@ -0,0 +1,101 @@
+package com.mongodb.opendata.util;
+
+/**
+ * Fixed-size distinct count estimate (Flajolet et al., with the small range
+ * correction). With the default precision of 11 it takes 2 KB and is within
+ * about 2.3% of the true count.
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 11;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision log2 of the number of registers, 4 to 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16: " + precision);
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    public void offer(long value) {
+        add(mix(value));
+    }
+
+    /**
+     * Hashes the characters directly (FNV-1a), so no bytes are encoded.
+     */
+    public void offer(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        add(mix(hash));
+    }
+
+    private void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the marker bit caps the rank for hashes whose remaining bits are all 0
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds the values counted by <code>other</code>, which must have the same
+     * precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Precision " + other.precision + " does not match " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /*
+     * MurmurHash3's 64 bit finalizer, spreads similar values over all bits.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
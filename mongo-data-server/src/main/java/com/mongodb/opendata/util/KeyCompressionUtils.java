@@ -1,73 +1,158 @@
 package com.mongodb.opendata.util;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
 public class KeyCompressionUtils {
     
-    public static Map<String, String> getKeyToCompressedKeyMap(Collection<String> keys) {
-        BiMap<String, String> tempMap = HashBiMap.create();
-        for (String key : keys) {
-           addCompressedKeyToCompressedKeyToKeyMap(key, tempMap, 1);
+    private static final int MD5_HEX_LENGTH = 32;
+    
+    /**
+     * Characters of the codes assigned by frequency, all valid in field names.
+     * Codes start with one of the letters, so that in a dotted path they can't
+     * be mistaken for a list position.
+     */
+    public static final String CODE_ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    
+    private static final int CODE_LETTERS = 52;
+    
+    /**
+     * Assigns the shortest codes to the most frequent keys. Keys with the same
+     * count are ordered by name, so the same counts always give the same
+     * dictionary.
+     * 
+     * @param keyCounts Occurrences of each key, e.g. in a sample of the records
+     * @return Keys to codes, most frequent first
+     */
+    public static Map<String, String> getKeyToCompressedKeyMapByFrequency(final Map<String, Integer> keyCounts) {
+        List<String> keys = new ArrayList<String>(keyCounts.keySet());
+        Collections.sort(keys, new Comparator<String>() {
+            
+            @Override
+            public int compare(String key1, String key2) {
+                int count1 = keyCounts.get(key1);
+                int count2 = keyCounts.get(key2);
+                if (count1 != count2) {
+                    return count1 > count2 ? -1 : 1;
+                }
+                return key1.compareTo(key2);
+            }
+        });
+        Map<String, String> keyToCompressedKeyMap = new LinkedHashMap<String, String>();
+        for (int i = 0; i < keys.size(); i++) {
+            keyToCompressedKeyMap.put(keys.get(i), code(i));
+        }
+        return keyToCompressedKeyMap;
+    }
+    
+    /**
+     * @return The <code>index</code>th code over {@link #CODE_ALPHABET} in
+     *         order of length: "a" to "Z", then "aa" to "Z9" and so on
+     */
+    public static String code(int index) {
+        int base = CODE_ALPHABET.length();
+        long remaining = index;
+        long count = CODE_LETTERS;
+        int length = 1;
+        while (remaining >= count) {
+            remaining -= count;
+            count *= base;
+            length++;
         }
-        tempMap = tempMap.inverse();
-        
-        LinkedHashMap<String, String> compressedKeyToKeyMap = new LinkedHashMap<String, String>();
-        for (String key : keys) {
-            compressedKeyToKeyMap.put(key, tempMap.get(key));
+        char[] code = new char[length];
+        for (int i = length - 1; i > 0; i--) {
+            code[i] = CODE_ALPHABET.charAt((int) (remaining % base));
+            remaining /= base;
         }
-        return compressedKeyToKeyMap;
+        code[0] = CODE_ALPHABET.charAt((int) remaining);
+        return new String(code);
+    }
+    
+    public static Map<String, String> getKeyToCompressedKeyMap(Collection<String> keys) {
+        return CompressedKeyMap.build(keys).toMap();
     }
     
     public static Map<String, String> getCompressedKeyToKeyMap(Collection<String> keys) {
-        LinkedHashMap<String, String> compressedKeyToKeyMap = new LinkedHashMap<String, String>();
-        for (String key : keys) {
-            addKeyToCompressedKeyToKeyMap(key, compressedKeyToKeyMap);
-        }
-        return compressedKeyToKeyMap;
+        return CompressedKeyMap.build(keys).toInverseMap();
     }
     
+    /**
+     * @param compressedKeyToKeyMap Compressed paths to original paths, as built
+     *            by the key compressing parsers
+     */
     public static DBObject decompressKeys(DBObject compressedKeyDbo, Map<String, String> compressedKeyToKeyMap) {
-        BasicDBObject decompressedKeyDbo = new BasicDBObject();
-        
-        for (String key : compressedKeyToKeyMap.keySet()) {
-            String decompressedKey = compressedKeyToKeyMap.get(key);
-            decompressedKeyDbo.put(decompressedKey, compressedKeyDbo.get(key));
+        Map<String, String> keyToCompressedKeyMap = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : compressedKeyToKeyMap.entrySet()) {
+            keyToCompressedKeyMap.put(entry.getValue(), entry.getKey());
         }
-        
-        return decompressedKeyDbo;
+        return (DBObject) new KeyDictionary(keyToCompressedKeyMap).decompressValue(compressedKeyDbo);
     }
     
+    /**
+     * Adds <code>key</code> under the first free prefix of its hash. A key
+     * holding a prefix that is needed is moved one digit further down, see
+     * {@link CompressedKeyMap} which does the same for a whole set of keys.
+     * 
+     * @return The compressed key of <code>key</code>
+     */
     public static String addKeyToCompressedKeyToKeyMap(String key, Map<String, String> compressedKeyToKeyMap) {
-        return addCompressedKeyToCompressedKeyToKeyMap(key, compressedKeyToKeyMap, 1);
+        // keys still to be placed, the last one first, and the prefix length each tries next
+        String[] keys = new String[MD5_HEX_LENGTH + 1];
+        String[] hashes = new String[MD5_HEX_LENGTH + 1];
+        int[] lengths = new int[MD5_HEX_LENGTH + 1];
+        int top = 0;
+        keys[0] = key;
+        hashes[0] = DigestUtils.md5Hex(key);
+        lengths[0] = 1;
+        String compressedKey = null;
+        while (top >= 0) {
+            if (lengths[top] > MD5_HEX_LENGTH) {
+                throw new IllegalStateException("No compressed key left for " + keys[top]);
+            }
+            String prefix = hashes[top].substring(0, lengths[top]);
+            String holder = compressedKeyToKeyMap.put(prefix, keys[top]);
+            if (holder == null) {
+                if (top == 0) {
+                    compressedKey = prefix;
+                }
+                top--;
+            } else {
+                compressedKeyToKeyMap.remove(prefix);
+                lengths[top]++;
+                top++;
+                keys[top] = holder;
+                hashes[top] = DigestUtils.md5Hex(holder);
+                lengths[top] = lengths[top - 1];
+            }
+        }
+        return compressedKey;
     }
     
-    private static String addCompressedKeyToCompressedKeyToKeyMap(String key, Map<String, String> compressedKeyToKeyMap, int keyLength) {
+    /**
+     * Adds <code>key</code> under the shortest prefix of its hash that is not
+     * taken yet, without moving any key already in the map. Use this once
+     * records have been written with the existing compressed keys.
+     */
+    public static String addKeyWithoutDisplacing(String key, Map<String, String> compressedKeyToKeyMap) {
         String fullKey = DigestUtils.md5Hex(key);
-        String compressedKey = null;
-        String existingValueWithSameCompressedKey = null;
-        
-        while (keyLength < fullKey.length()) {
-        
-            compressedKey = fullKey.substring(0, keyLength++);
-            existingValueWithSameCompressedKey = compressedKeyToKeyMap.get(compressedKey);
-            if (existingValueWithSameCompressedKey != null) {
-                compressedKeyToKeyMap.remove(compressedKey);
-                addCompressedKeyToCompressedKeyToKeyMap(existingValueWithSameCompressedKey, compressedKeyToKeyMap, keyLength);
-            } else {
+        for (int keyLength = 1; keyLength <= fullKey.length(); keyLength++) {
+            String compressedKey = fullKey.substring(0, keyLength);
+            if (!compressedKeyToKeyMap.containsKey(compressedKey)) {
                 compressedKeyToKeyMap.put(compressedKey, key);
-                break;
+                return compressedKey;
             }
         }
-        return compressedKey;
+        throw new IllegalStateException("No compressed key left for " + key);
     }
-
+    
 }
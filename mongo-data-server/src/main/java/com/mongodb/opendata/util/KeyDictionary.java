@@ -0,0 +1,164 @@
+package com.mongodb.opendata.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Immutable two-way mapping between original field names and the compressed
+ * names they are stored under. Names that are not in the dictionary map to
+ * themselves, so the same code handles collections loaded without key
+ * compression and fields like _id that were added by MongoDB.
+ *
+ * The dictionary is built from dotted paths, e.g.
+ * <code>REASON.REASON_CODE</code> to <code>4.e</code>, and holds one level per
+ * sub-document: {@link #nested(String)} gives the dictionary for the fields
+ * of a sub-document, or of the documents in a list.
+ */
+public final class KeyDictionary {
+
+    public static final KeyDictionary IDENTITY = new KeyDictionary();
+
+    private final Map<String, String> keyToCompressedKeyMap = new HashMap<String, String>();
+    private final Map<String, String> compressedKeyToKeyMap = new HashMap<String, String>();
+    private final Map<String, KeyDictionary> children = new HashMap<String, KeyDictionary>();
+    private int size;
+
+    private KeyDictionary() {
+    }
+
+    /**
+     * @param keyToCompressedKeyMap Original paths to compressed paths
+     */
+    public KeyDictionary(Map<String, String> keyToCompressedKeyMap) {
+        for (Map.Entry<String, String> entry : keyToCompressedKeyMap.entrySet()) {
+            String[] keys = entry.getKey().split("\\.");
+            String[] compressedKeys = entry.getValue().split("\\.");
+            if (keys.length != compressedKeys.length) {
+                throw new IllegalArgumentException("Compressed path " + entry.getValue() + " does not match "
+                        + entry.getKey());
+            }
+            KeyDictionary level = this;
+            for (int i = 0; i < keys.length; i++) {
+                level.add(keys[i], compressedKeys[i]);
+                if (i < keys.length - 1) {
+                    level = level.child(keys[i]);
+                }
+            }
+        }
+        size = keyToCompressedKeyMap.size();
+    }
+
+    private void add(String key, String compressedKey) {
+        String existingCompressedKey = keyToCompressedKeyMap.put(key, compressedKey);
+        String existingKey = compressedKeyToKeyMap.put(compressedKey, key);
+        if ((existingCompressedKey != null && !existingCompressedKey.equals(compressedKey))
+                || (existingKey != null && !existingKey.equals(key))) {
+            throw new IllegalArgumentException("Compressed key " + compressedKey + " is not unique");
+        }
+    }
+
+    private KeyDictionary child(String key) {
+        KeyDictionary child = children.get(key);
+        if (child == null) {
+            child = new KeyDictionary();
+            children.put(key, child);
+        }
+        return child;
+    }
+
+    public String compress(String key) {
+        String compressedKey = keyToCompressedKeyMap.get(key);
+        return compressedKey != null ? compressedKey : key;
+    }
+
+    public String decompress(String compressedKey) {
+        String key = compressedKeyToKeyMap.get(compressedKey);
+        return key != null ? key : compressedKey;
+    }
+
+    /**
+     * @return The dictionary for the value stored under
+     *         <code>compressedKey</code>
+     */
+    public KeyDictionary nested(String compressedKey) {
+        KeyDictionary child = children.get(decompress(compressedKey));
+        return child != null ? child : IDENTITY;
+    }
+
+    /**
+     * Compresses a dotted path such as "address.zip". Numeric segments that
+     * are not field names are taken as list positions and kept as they are.
+     */
+    public String compressPath(String path) {
+        if (path.indexOf('.') < 0) {
+            return compress(path);
+        }
+        StringBuilder compressedPath = new StringBuilder(path.length());
+        KeyDictionary level = this;
+        for (String key : path.split("\\.")) {
+            if (compressedPath.length() > 0) {
+                compressedPath.append('.');
+            }
+            if (!level.keyToCompressedKeyMap.containsKey(key) && isPosition(key)) {
+                compressedPath.append(key);
+            } else {
+                compressedPath.append(level.compress(key));
+                KeyDictionary child = level.children.get(key);
+                level = child != null ? child : IDENTITY;
+            }
+        }
+        return compressedPath.toString();
+    }
+
+    private static boolean isPosition(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (!Character.isDigit(key.charAt(i))) {
+                return false;
+            }
+        }
+        return key.length() > 0;
+    }
+
+    /**
+     * Copy of a stored value with its original field names, for output that
+     * can't rename fields while writing.
+     */
+    @SuppressWarnings("rawtypes")
+    public Object decompressValue(Object value) {
+        if (isIdentity()) {
+            return value;
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<Object>(((List) value).size());
+            for (Object element : (List) value) {
+                list.add(decompressValue(element));
+            }
+            return list;
+        } else if (value instanceof DBObject) {
+            DBObject object = (DBObject) value;
+            BasicDBObject decompressed = new BasicDBObject();
+            for (String compressedKey : object.keySet()) {
+                decompressed.put(decompress(compressedKey), nested(compressedKey).decompressValue(
+                        object.get(compressedKey)));
+            }
+            return decompressed;
+        }
+        return value;
+    }
+
+    public boolean isIdentity() {
+        return keyToCompressedKeyMap.isEmpty();
+    }
+
+    /**
+     * @return The number of paths in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.mongodb.opendata.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file through a sliding memory-mapped window, for parsers that take
+ * an {@link InputStream}. Reads are copied straight from the page cache into
+ * the caller's buffer, without a read system call or an intermediate heap
+ * buffer per read, and the operating system reads ahead within the window.
+ *
+ * Only one window is mapped at a time, so files larger than memory or the
+ * address space can be read. Java has no way to unmap a buffer, a window is
+ * released when it is garbage collected; with the default window size that
+ * is a few hundred megabytes of address space at most between collections.
+ */
+public class MappedFileInputStream extends InputStream {
+
+    public static final int DEFAULT_WINDOW_SIZE = 128 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long length;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    // file position of the start of the window
+    private long windowStart;
+    private long mark;
+
+    public MappedFileInputStream(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileInputStream(File file, int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.length = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /*
+     * Maps the next window once the current one is used up.
+     *
+     * @return false at the end of the file
+     */
+    private boolean ensureWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        long position = window != null ? windowStart + window.capacity() : windowStart;
+        return map(position);
+    }
+
+    private boolean map(long position) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Stream closed");
+        }
+        if (position >= length) {
+            window = null;
+            windowStart = length;
+            return false;
+        }
+        long size = Math.min(windowSize, length - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        windowStart = position;
+        return true;
+    }
+
+    private long position() {
+        return window != null ? windowStart + window.position() : windowStart;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        // never more than the rest of the window, callers read again
+        int count = Math.min(len, window.remaining());
+        window.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long position = position();
+        long skipped = Math.min(n, length - position);
+        if (window != null && skipped <= window.remaining()) {
+            window.position(window.position() + (int) skipped);
+        } else {
+            map(position + skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, length - position());
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = position();
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (window != null && mark >= windowStart && mark <= windowStart + window.capacity()) {
+            window.position((int) (mark - windowStart));
+        } else {
+            map(mark);
+        }
+    }
+
+    /**
+     * @return The length of the file
+     */
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+}
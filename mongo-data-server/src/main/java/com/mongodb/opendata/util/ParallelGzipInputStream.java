@@ -0,0 +1,614 @@
+package com.mongodb.opendata.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses gzip input on a pool of threads, ahead of the reader.
+ *
+ * Files written by parallel compressors (bgzip, pigz --independent, or gzip
+ * files simply concatenated) are a sequence of gzip members that decompress
+ * independently. The compressed input is cut into chunks of about
+ * <code>chunkSize</code> bytes, preferably just before something that looks
+ * like a member header, and each chunk is decoded on a pool thread from its
+ * start. A chunk's output is only used when the chunk before it ended exactly
+ * at the end of a member; otherwise the member is continued across the chunk
+ * from where the previous chunk left off, so any gzip input decodes
+ * correctly, single members in sequence.
+ *
+ * Unlike {@link java.util.zip.GZIPInputStream} on Java 6, every member of a
+ * multi-member file is read. Like it, bytes after the last member that don't
+ * start another one (padding, say) are ignored. At most two chunks per thread
+ * are held in memory, and of each at most <code>blocks</code> blocks of
+ * decoded output, however well the input compresses: a chunk with more output
+ * is decoded as the reader takes it. Closing the stream closes the input.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    public static final int DEFAULT_BLOCKS = 16;
+
+    // put after the last block of a chunk
+    private static final byte[] END = new byte[0];
+
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final InputStream input;
+    private final int chunkSize;
+    private final int blockSize;
+    private final int blocks;
+    private final int maxPending;
+    private final ExecutorService pool;
+    private final LinkedList<Chunk> pending = new LinkedList<Chunk>();
+    // the chunk submitted last, which the next one may have to continue
+    private Chunk previous;
+
+    // compressed bytes read past the last cut
+    private byte[] rest = new byte[0];
+    private int restLength;
+    private boolean inputDone;
+
+    private Chunk current;
+    private byte[] block = END;
+    private int position;
+
+    public ParallelGzipInputStream(InputStream input, int threads) {
+        this(input, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param threads The number of threads to decode chunks on
+     * @param chunkSize The approximate size in bytes of the compressed chunks
+     */
+    public ParallelGzipInputStream(InputStream input, int threads, int chunkSize) {
+        this(input, threads, chunkSize, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+    }
+
+    /**
+     * @param threads The number of threads to decode chunks on
+     * @param chunkSize The approximate size in bytes of the compressed chunks
+     * @param blockSize The size in bytes of the blocks of decoded output
+     * @param blocks The number of decoded blocks held per chunk at most
+     */
+    public ParallelGzipInputStream(InputStream input, int threads, int chunkSize, int blockSize, int blocks) {
+        if (threads < 1 || chunkSize < 1 || blockSize < 1 || blocks < 1) {
+            throw new IllegalArgumentException("threads, chunkSize, blockSize and blocks must be positive");
+        }
+        this.input = input;
+        this.chunkSize = chunkSize;
+        this.blockSize = blockSize;
+        this.blocks = blocks;
+        this.maxPending = threads * 2;
+        pool = Executors.newFixedThreadPool(threads, new DecoderThreadFactory());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        input.close();
+    }
+
+    private boolean fill() throws IOException {
+        while (position == block.length) {
+            if (current == null) {
+                while (!inputDone && pending.size() < maxPending) {
+                    submit();
+                }
+                if (pending.isEmpty()) {
+                    return false;
+                }
+                current = pending.removeFirst();
+            }
+            block = take(current.blocks);
+            position = 0;
+            if (block == END) {
+                MemberDecoder decoder = take(current.result);
+                current = null;
+                if (inputDone && pending.isEmpty() && !decoder.mayEnd()) {
+                    throw new EOFException("Unexpected end of gzip input");
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Reads up to twice the chunk size and cuts at the first member header
+     * candidate after the chunk size, or at the end of what was read.
+     */
+    private void submit() throws IOException {
+        byte[] chunk = new byte[2 * chunkSize];
+        System.arraycopy(rest, 0, chunk, 0, restLength);
+        int length = restLength;
+        int n;
+        while (length < chunk.length && (n = input.read(chunk, length, chunk.length - length)) != -1) {
+            length += n;
+        }
+        inputDone = length < chunk.length;
+        int cut = length;
+        if (!inputDone) {
+            for (int i = chunkSize; i < length - MemberDecoder.HEADER_PROBE; i++) {
+                if (MemberDecoder.isHeader(chunk, i)) {
+                    cut = i;
+                    break;
+                }
+            }
+        }
+        restLength = length - cut;
+        if (restLength > 0) {
+            if (rest.length < restLength) {
+                rest = new byte[chunk.length];
+            }
+            System.arraycopy(chunk, cut, rest, 0, restLength);
+        }
+        if (length == 0 && previous != null) {
+            inputDone = true;
+            return;
+        }
+        BlockingQueue<byte[]> decoded = new ArrayBlockingQueue<byte[]>(blocks);
+        Future<MemberDecoder> result = pool.submit(new ChunkDecoder(chunk, cut, decoded,
+                previous != null ? previous.result : null));
+        previous = new Chunk(decoded, result);
+        pending.add(previous);
+    }
+
+    private static <T> T take(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Decompressing failed", cause);
+        }
+    }
+
+    private static byte[] take(BlockingQueue<byte[]> blocks) throws IOException {
+        try {
+            return blocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        }
+    }
+
+    private static void put(BlockingQueue<byte[]> blocks, byte[] block) throws IOException {
+        try {
+            blocks.put(block);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        }
+    }
+
+    /*
+     * The decoded blocks of a chunk, END after the last, and the decoder of
+     * the member the chunk ends in.
+     */
+    private static final class Chunk {
+
+        final BlockingQueue<byte[]> blocks;
+        final Future<MemberDecoder> result;
+
+        Chunk(BlockingQueue<byte[]> blocks, Future<MemberDecoder> result) {
+            this.blocks = blocks;
+            this.result = result;
+        }
+    }
+
+    private class ChunkDecoder implements Callable<MemberDecoder> {
+
+        private final byte[] chunk;
+        private final int length;
+        private final BlockingQueue<byte[]> output;
+        private final Future<MemberDecoder> previous;
+
+        ChunkDecoder(byte[] chunk, int length, BlockingQueue<byte[]> output, Future<MemberDecoder> previous) {
+            this.chunk = chunk;
+            this.length = length;
+            this.output = output;
+            this.previous = previous;
+        }
+
+        @Override
+        public MemberDecoder call() throws IOException {
+            try {
+                return decode();
+            } finally {
+                // after a failure too, the reader gets it from the result
+                put(output, END);
+            }
+        }
+
+        private MemberDecoder decode() throws IOException {
+            if (previous == null) {
+                return decode(new MemberDecoder(), new BlockOutput());
+            }
+            // speculatively, before the previous chunk is known to end between members
+            if (length > MemberDecoder.HEADER_PROBE && MemberDecoder.isHeader(chunk, 0)) {
+                SpeculativeOutput speculative = new SpeculativeOutput();
+                try {
+                    MemberDecoder decoder = decode(new MemberDecoder(), speculative);
+                    speculative.confirm();
+                    return decoder;
+                } catch (IOException e) {
+                    if (speculative.confirmed) {
+                        throw e;
+                    }
+                    // not a member header after all, or the previous member goes on
+                }
+            }
+            // the previous chunk was submitted first, so it is running or done
+            return decode(take(previous), new BlockOutput());
+        }
+
+        private MemberDecoder decode(MemberDecoder decoder, BlockOutput out) throws IOException {
+            decoder.decode(chunk, length, out);
+            out.flush();
+            return decoder;
+        }
+
+        /*
+         * Hands the output on to the reader in blocks, waiting for it when
+         * the chunk has as many blocks ready as it may hold.
+         */
+        private class BlockOutput extends OutputStream {
+
+            // grown up to the block size, small chunks have little output
+            private byte[] block = new byte[Math.min(blockSize, 4 * length + 64)];
+            private int size;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int n = Math.min(len, block.length - size);
+                    System.arraycopy(b, off, block, size, n);
+                    size += n;
+                    off += n;
+                    len -= n;
+                    if (size == blockSize) {
+                        emit(block);
+                        block = new byte[blockSize];
+                        size = 0;
+                    } else if (size == block.length) {
+                        block = Arrays.copyOf(block, Math.min(blockSize, 2 * block.length));
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (size > 0) {
+                    emit(Arrays.copyOf(block, size));
+                    size = 0;
+                }
+            }
+
+            void emit(byte[] b) throws IOException {
+                put(output, b);
+            }
+        }
+
+        /*
+         * Holds the output until the previous chunk turns out to end between
+         * members, waiting for that once it holds as many blocks as the chunk
+         * may.
+         */
+        private class SpeculativeOutput extends BlockOutput {
+
+            private final List<byte[]> held = new ArrayList<byte[]>();
+            boolean confirmed;
+
+            @Override
+            void emit(byte[] b) throws IOException {
+                if (!confirmed && held.size() == blocks) {
+                    confirm();
+                }
+                if (confirmed) {
+                    super.emit(b);
+                } else {
+                    held.add(b);
+                }
+            }
+
+            void confirm() throws IOException {
+                if (confirmed) {
+                    return;
+                }
+                if (!take(previous).betweenMembers()) {
+                    throw new ZipException("The previous chunk ends inside a member");
+                }
+                confirmed = true;
+                for (byte[] b : held) {
+                    put(output, b);
+                }
+                held.clear();
+            }
+        }
+    }
+
+    /*
+     * Decodes a sequence of gzip members (RFC 1952) fed in arbitrary pieces.
+     */
+    static final class MemberDecoder {
+
+        // bytes needed to tell a header candidate
+        static final int HEADER_PROBE = 10;
+
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+        private static final int TRAILER_LENGTH = 8;
+        private static final int MAX_HEADER_LENGTH = 64 * 1024;
+
+        private static final int HEADER = 0;
+        private static final int DATA = 1;
+        private static final int TRAILER = 2;
+        // after the last member
+        private static final int TRAILING = 3;
+
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] window = new byte[64 * 1024];
+        private int state = HEADER;
+        // an incomplete header or trailer from the end of the last piece
+        private byte[] partial = new byte[0];
+        private boolean memberRead;
+
+        void decode(byte[] input, int length, OutputStream output) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                if (state == DATA) {
+                    offset = inflate(input, offset, length, output);
+                } else if (state == TRAILING) {
+                    offset = length;
+                } else {
+                    offset = headerOrTrailer(input, offset, length);
+                }
+            }
+        }
+
+        /**
+         * @return Whether the input so far ends between two members
+         */
+        boolean betweenMembers() {
+            return state == HEADER && partial.length == 0;
+        }
+
+        /**
+         * @return Whether the input may end here
+         */
+        boolean mayEnd() {
+            return state == TRAILING || state == HEADER && (partial.length == 0 || memberRead);
+        }
+
+        private int inflate(byte[] input, int offset, int length, OutputStream output) throws IOException {
+            inflater.setInput(input, offset, length - offset);
+            try {
+                // output can still be pending when all the input is taken
+                int n;
+                while ((n = inflater.inflate(window)) > 0 || !inflater.finished() && !inflater.needsInput()) {
+                    if (n == 0) {
+                        throw new ZipException("Invalid gzip data, a dictionary is needed");
+                    }
+                    crc.update(window, 0, n);
+                    output.write(window, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid gzip data: " + e.getMessage());
+            }
+            if (inflater.finished()) {
+                state = TRAILER;
+                return length - inflater.getRemaining();
+            }
+            return length;
+        }
+
+        /*
+         * Consumes a whole header or trailer, or keeps what there is of it.
+         */
+        private int headerOrTrailer(byte[] input, int offset, int length) throws IOException {
+            byte[] b = input;
+            int start = offset;
+            int end = length;
+            if (partial.length > 0) {
+                int more = Math.min(length - offset, MAX_HEADER_LENGTH);
+                b = new byte[partial.length + more];
+                System.arraycopy(partial, 0, b, 0, partial.length);
+                System.arraycopy(input, offset, b, partial.length, more);
+                start = 0;
+                end = b.length;
+            }
+            int consumed = state == HEADER ? header(b, start, end) : trailer(b, start, end);
+            if (consumed < 0) {
+                if (end - start >= MAX_HEADER_LENGTH) {
+                    throw new ZipException("gzip header too long");
+                }
+                byte[] kept = new byte[end - start];
+                System.arraycopy(b, start, kept, 0, kept.length);
+                partial = kept;
+                return length;
+            }
+            int fromInput = consumed - (b == input ? 0 : partial.length);
+            partial = new byte[0];
+            return offset + fromInput;
+        }
+
+        /*
+         * @return The header length, -1 if it doesn't end before end
+         */
+        private int header(byte[] b, int start, int end) throws IOException {
+            if (memberRead && !startsHeader(b, start, end)) {
+                // padding after the last member, which GZIPInputStream ignores too
+                state = TRAILING;
+                return end - start;
+            }
+            if (end - start < HEADER_PROBE) {
+                return -1;
+            }
+            if ((b[start] & 0xff) != 0x1f || (b[start + 1] & 0xff) != 0x8b) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (b[start + 2] != 8) {
+                throw new ZipException("Unsupported gzip compression method");
+            }
+            int flags = b[start + 3] & 0xff;
+            int i = start + HEADER_PROBE;
+            if ((flags & FEXTRA) != 0) {
+                if (end - i < 2) {
+                    return -1;
+                }
+                i += 2 + ((b[i] & 0xff) | (b[i + 1] & 0xff) << 8);
+            }
+            if ((flags & FNAME) != 0) {
+                i = skipZeroTerminated(b, i, end);
+            }
+            if ((flags & FCOMMENT) != 0) {
+                i = skipZeroTerminated(b, i, end);
+            }
+            if (i < 0) {
+                return -1;
+            }
+            if ((flags & FHCRC) != 0) {
+                i += 2;
+            }
+            if (i > end) {
+                return -1;
+            }
+            state = DATA;
+            crc.reset();
+            inflater.reset();
+            return i - start;
+        }
+
+        /*
+         * Whether the magic and compression method, as far as they are there,
+         * match.
+         */
+        private static boolean startsHeader(byte[] b, int start, int end) {
+            int n = end - start;
+            return (n < 1 || (b[start] & 0xff) == 0x1f) && (n < 2 || (b[start + 1] & 0xff) == 0x8b)
+                    && (n < 3 || b[start + 2] == 8);
+        }
+
+        private static int skipZeroTerminated(byte[] b, int i, int end) {
+            if (i < 0) {
+                return i;
+            }
+            while (i < end) {
+                if (b[i++] == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int trailer(byte[] b, int start, int end) throws IOException {
+            if (end - start < TRAILER_LENGTH) {
+                return -1;
+            }
+            if (readInt(b, start) != (int) crc.getValue()) {
+                throw new ZipException("Corrupt gzip member, CRC mismatch");
+            }
+            // the size modulo 2^32
+            if (readInt(b, start + 4) != (int) inflater.getBytesWritten()) {
+                throw new ZipException("Corrupt gzip member, size mismatch");
+            }
+            state = HEADER;
+            memberRead = true;
+            return TRAILER_LENGTH;
+        }
+
+        private static int readInt(byte[] b, int i) {
+            return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+        }
+
+        /**
+         * @return Whether the bytes at i look like a member header: magic,
+         *         deflate, no reserved flags and a known extra flags value
+         */
+        static boolean isHeader(byte[] b, int i) {
+            int xfl = b[i + 8] & 0xff;
+            return (b[i] & 0xff) == 0x1f && (b[i + 1] & 0xff) == 0x8b && b[i + 2] == 8 && (b[i + 3] & 0xe0) == 0
+                    && (xfl == 0 || xfl == 2 || xfl == 4);
+        }
+    }
+
+    private static class DecoderThreadFactory implements ThreadFactory {
+
+        private final String prefix = "gzip-decoder-" + poolNumber.incrementAndGet() + "-";
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
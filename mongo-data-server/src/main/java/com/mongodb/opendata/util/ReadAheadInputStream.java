@@ -0,0 +1,151 @@
+package com.mongodb.opendata.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads an input on a thread of its own, a few blocks ahead of the reader, so
+ * that producing the input (decompressing it, say) overlaps with consuming
+ * it. Closing the stream closes the input.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    public static final int DEFAULT_BLOCKS = 4;
+
+    // put after the last block
+    private static final byte[] END = new byte[0];
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final InputStream input;
+    private final int blockSize;
+    private final BlockingQueue<byte[]> blocks;
+    private final Thread reader;
+
+    // set by the reader before it puts END
+    private IOException failure;
+
+    private byte[] block = new byte[0];
+    private int position;
+
+    public ReadAheadInputStream(InputStream input) {
+        this(input, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+    }
+
+    /**
+     * @param blockSize The number of bytes read at a time
+     * @param blocks The number of blocks read ahead at most
+     */
+    public ReadAheadInputStream(InputStream input, int blockSize, int blocks) {
+        if (blockSize < 1 || blocks < 1) {
+            throw new IllegalArgumentException("blockSize and blocks must be positive");
+        }
+        this.input = input;
+        this.blockSize = blockSize;
+        this.blocks = new ArrayBlockingQueue<byte[]>(blocks);
+        reader = new Thread(new Reader(), "read-ahead-" + threadNumber.incrementAndGet());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    /**
+     * Stops reading ahead, once this returns the input is no longer read.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing");
+        } finally {
+            input.close();
+        }
+    }
+
+    private boolean fill() throws IOException {
+        while (position == block.length) {
+            if (block == END) {
+                return false;
+            }
+            try {
+                block = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading ahead");
+            }
+            position = 0;
+            if (block == END && failure != null) {
+                throw failure;
+            }
+        }
+        return true;
+    }
+
+    private class Reader implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    int n;
+                    do {
+                        byte[] b = new byte[blockSize];
+                        n = 0;
+                        int r;
+                        while (n < blockSize && (r = input.read(b, n, blockSize - n)) != -1) {
+                            n += r;
+                        }
+                        if (n > 0) {
+                            blocks.put(n == blockSize ? b : Arrays.copyOf(b, n));
+                        }
+                    } while (n == blockSize);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (Throwable e) {
+                    // errors too, the reader waits for END
+                    failure = new IOException("Reading ahead failed", e);
+                }
+                blocks.put(END);
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+package com.mongodb.opendata.util;
+
+import java.util.Date;
+
+import com.google.dspl.model.DataType;
+
+/**
+ * Recognizes the DSPL type of parsed values and converts text to it. Text is
+ * checked and converted character by character, without substrings,
+ * exceptions or date formats, since this runs for every value of a load.
+ */
+public final class ValueTypes {
+
+    public static final String ISO_DATE = "yyyy-MM-dd";
+    public static final String ISO_DATE_TIME = "yyyy-MM-dd'T'HH:mm:ss";
+    public static final String ISO_DATE_TIME_UTC = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+    public static final String US_DATE = "MM/dd/yyyy";
+    public static final String COMPACT_DATE = "yyyyMMdd";
+
+    // longer numbers may not fit in a long
+    private static final int MAX_INTEGER_DIGITS = 18;
+
+    private ValueTypes() {
+    }
+
+    /**
+     * @return The type of a scalar value, <code>null</code> for null and for
+     *         documents and lists
+     */
+    public static DataType typeOf(Object value) {
+        if (value instanceof String) {
+            return typeOfText((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            return DataType.INTEGER;
+        } else if (value instanceof Number) {
+            return DataType.FLOAT;
+        } else if (value instanceof Boolean) {
+            return DataType.BOOLEAN;
+        } else if (value instanceof Date) {
+            return DataType.DATE;
+        }
+        return null;
+    }
+
+    /**
+     * Numbers with leading zeros, like zip codes, stay text. So do 8 digit
+     * numbers that could be {@link #COMPACT_DATE}s, they are reported as
+     * dates.
+     */
+    public static DataType typeOfText(String text) {
+        if (dateFormat(text) != null) {
+            return DataType.DATE;
+        } else if (isInteger(text)) {
+            return DataType.INTEGER;
+        } else if (isDecimal(text)) {
+            return DataType.FLOAT;
+        } else if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+            return DataType.BOOLEAN;
+        }
+        return DataType.STRING;
+    }
+
+    public static boolean isInteger(String text) {
+        int start = signLength(text);
+        int digits = text.length() - start;
+        if (digits == 0 || digits > MAX_INTEGER_DIGITS || (text.charAt(start) == '0' && digits > 1)) {
+            return false;
+        }
+        return digits(text, start, text.length()) == digits;
+    }
+
+    /**
+     * Plain or scientific notation with a decimal point or exponent, e.g.
+     * <code>-0.5</code> or <code>1e6</code>.
+     */
+    public static boolean isDecimal(String text) {
+        int i = signLength(text);
+        int integerDigits = digits(text, i, text.length());
+        if (integerDigits > 1 && text.charAt(i) == '0') {
+            return false;
+        }
+        i += integerDigits;
+        boolean fraction = false;
+        if (i < text.length() && text.charAt(i) == '.') {
+            int fractionDigits = digits(text, i + 1, text.length());
+            fraction = fractionDigits > 0;
+            i += 1 + fractionDigits;
+        }
+        if (integerDigits == 0 && !fraction) {
+            return false;
+        }
+        boolean exponent = false;
+        if (i < text.length() && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < text.length() && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                i++;
+            }
+            int exponentDigits = digits(text, i, text.length());
+            if (exponentDigits == 0) {
+                return false;
+            }
+            exponent = true;
+            i += exponentDigits;
+        }
+        return i == text.length() && (fraction || exponent);
+    }
+
+    /**
+     * @return One of the date format constants, or <code>null</code> if the
+     *         text is not a date in a format this class knows
+     */
+    public static String dateFormat(String text) {
+        switch (text.length()) {
+        case 8:
+            return isDate(text, 0, 4, 6) ? COMPACT_DATE : null;
+        case 10:
+            if (text.charAt(4) == '-' && text.charAt(7) == '-' && isDate(text, 0, 5, 8)) {
+                return ISO_DATE;
+            } else if (text.charAt(2) == '/' && text.charAt(5) == '/' && isDate(text, 6, 0, 3)) {
+                return US_DATE;
+            }
+            return null;
+        case 19:
+            return isIsoDateTime(text) ? ISO_DATE_TIME : null;
+        case 20:
+            return text.charAt(19) == 'Z' && isIsoDateTime(text) ? ISO_DATE_TIME_UTC : null;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return The value of text for which {@link #isInteger(String)} is true
+     */
+    public static long parseLong(String text) {
+        int start = signLength(text);
+        long value = 0;
+        for (int i = start; i < text.length(); i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return text.charAt(0) == '-' ? -value : value;
+    }
+
+    /**
+     * Parses a date in one of the format constants of this class as UTC.
+     *
+     * @return Milliseconds since the epoch, or <code>null</code> if the text
+     *         is not a valid date in that format
+     */
+    public static Long parseDate(String text, String format) {
+        String textFormat = dateFormat(text);
+        if (!format.equals(textFormat)) {
+            return null;
+        }
+        int year;
+        int month;
+        int day;
+        if (textFormat == COMPACT_DATE) {
+            year = number(text, 0, 4);
+            month = number(text, 4, 2);
+            day = number(text, 6, 2);
+        } else if (textFormat == US_DATE) {
+            year = number(text, 6, 4);
+            month = number(text, 0, 2);
+            day = number(text, 3, 2);
+        } else {
+            year = number(text, 0, 4);
+            month = number(text, 5, 2);
+            day = number(text, 8, 2);
+        }
+        if (day > daysInMonth(year, month)) {
+            return null;
+        }
+        long millis = daysSinceEpoch(year, month, day) * 86400000L;
+        if (textFormat == ISO_DATE_TIME || textFormat == ISO_DATE_TIME_UTC) {
+            millis += ((number(text, 11, 2) * 60L + number(text, 14, 2)) * 60L + number(text, 17, 2)) * 1000L;
+        }
+        return millis;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /*
+     * Days from 1970-01-01 in the proleptic Gregorian calendar, counting
+     * years from March so the leap day comes last.
+     */
+    private static long daysSinceEpoch(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static boolean isIsoDateTime(String text) {
+        return text.charAt(4) == '-' && text.charAt(7) == '-' && text.charAt(10) == 'T' && text.charAt(13) == ':'
+                && text.charAt(16) == ':' && isDate(text, 0, 5, 8) && isBelow(text, 11, 24) && isBelow(text, 14, 60)
+                && isBelow(text, 17, 60);
+    }
+
+    /*
+     * A 2 digit number from 0 to below max at start.
+     */
+    private static boolean isBelow(String text, int start, int max) {
+        int n = number(text, start, 2);
+        return n >= 0 && n < max;
+    }
+
+    /*
+     * A 4 digit year from 1800 to 2199 and a 2 digit month and day of that
+     * month at the given positions.
+     */
+    private static boolean isDate(String text, int year, int month, int day) {
+        int y = number(text, year, 4);
+        int m = number(text, month, 2);
+        int d = number(text, day, 2);
+        return y >= 1800 && y < 2200 && m >= 1 && m <= 12 && d >= 1 && d <= daysInMonth(y, m);
+    }
+
+    /*
+     * The value of the digits at start, -1 if they are not all digits.
+     */
+    private static int number(String text, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int signLength(String text) {
+        return text.length() > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+') ? 1 : 0;
+    }
+
+    /*
+     * The number of consecutive digits from start.
+     */
+    private static int digits(String text, int start, int end) {
+        int i = start;
+        while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        return i - start;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.mongodb.opendata.writer;
+
+import java.io.IOException;
+
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Response;
+
+/**
+ * Streams one page of query results to the client in a particular format.
+ * Records are written as they are read from the cursor, so implementations
+ * must not hold on to them.
+ */
+public interface ResultWriter {
+
+    /**
+     * Called before the first record. <code>response</code> has the dataset
+     * and total (on the first page), but not yet the count and continuation
+     * token.
+     */
+    public void start(Response response) throws IOException;
+
+    public void write(DBObject record) throws IOException;
+
+    /**
+     * Called after the last record with the complete response; flushes the
+     * output but does not close it.
+     */
+    public void end(Response response) throws IOException;
+
+}
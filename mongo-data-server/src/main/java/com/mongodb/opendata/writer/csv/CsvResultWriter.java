@@ -0,0 +1,160 @@
+package com.mongodb.opendata.writer.csv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.util.KeyDictionary;
+import com.mongodb.opendata.writer.ResultWriter;
+import com.mongodb.util.JSON;
+
+/**
+ * Writes records as CSV rows straight from the cursor, with a header line.
+ *
+ * Columns come from {@link Response#getColumns()}; when the collection has no
+ * metadata they are taken from the first record (without _id) and fields
+ * first seen in later records are dropped. Dotted columns such as
+ * "address.zip" are read from nested documents. Missing values are left empty
+ * and nested documents and lists are written as JSON. Columns are named by the
+ * original field names and read from the stored (compressed) ones.
+ */
+public class CsvResultWriter implements ResultWriter {
+
+    private static final CsvFactory csvFactory = new CsvFactory();
+
+    private final CsvGenerator generator;
+    private KeyDictionary keyDictionary;
+    private List<String> columns;
+    // the stored path of each column and the dictionary of its values
+    private List<String[]> paths;
+    private List<KeyDictionary> nestedKeys;
+    private boolean first = true;
+
+    public CsvResultWriter(OutputStream output) throws IOException {
+        generator = csvFactory.createGenerator(output, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void start(Response response) throws IOException {
+        keyDictionary = response.getKeyDictionary();
+        columns = response.getColumns();
+        if (columns != null) {
+            // an empty result still gets its header
+            writeHeader();
+        }
+    }
+
+    @Override
+    public void write(DBObject record) throws IOException {
+        if (columns == null) {
+            columns = new ArrayList<String>();
+            for (String key : record.keySet()) {
+                if (!key.equals("_id")) {
+                    columns.add(keyDictionary.decompress(key));
+                }
+            }
+            writeHeader();
+        }
+        generator.writeStartObject();
+        for (int i = 0; i < columns.size(); i++) {
+            generator.writeFieldName(columns.get(i));
+            writeValue(resolve(record, paths.get(i)), nestedKeys.get(i));
+        }
+        generator.writeEndObject();
+        if (first) {
+            generator.flush();
+            first = false;
+        }
+    }
+
+    @Override
+    public void end(Response response) throws IOException {
+        generator.close();
+    }
+
+    private void writeHeader() throws IOException {
+        paths = new ArrayList<String[]>(columns.size());
+        nestedKeys = new ArrayList<KeyDictionary>(columns.size());
+        CsvSchema.Builder schema = CsvSchema.builder();
+        for (String column : columns) {
+            String[] path = keyDictionary.compressPath(column).split("\\.");
+            KeyDictionary nested = keyDictionary;
+            for (String key : path) {
+                KeyDictionary child = nested.nested(key);
+                // list positions keep the dictionary of the list, md5 codes
+                // may be digits too but then have a dictionary of their own
+                if (child != KeyDictionary.IDENTITY || !key.matches("\\d+")) {
+                    nested = child;
+                }
+            }
+            paths.add(path);
+            nestedKeys.add(nested);
+            schema.addColumn(column);
+        }
+        generator.setSchema(schema.build());
+        generator.writeStartArray();
+        for (String column : columns) {
+            generator.writeString(column);
+        }
+        generator.writeEndArray();
+    }
+
+    /*
+     * The value at a stored path, through nested documents and list
+     * positions, null if there is none.
+     */
+    @SuppressWarnings("rawtypes")
+    private static Object resolve(DBObject record, String[] path) {
+        Object value = record;
+        for (String key : path) {
+            if (value instanceof List) {
+                int position;
+                try {
+                    position = Integer.parseInt(key);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                List list = (List) value;
+                value = position >= 0 && position < list.size() ? list.get(position) : null;
+            } else if (value instanceof DBObject) {
+                value = ((DBObject) value).get(key);
+            } else if (value instanceof Map) {
+                value = ((Map) value).get(key);
+            } else {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    private void writeValue(Object value, KeyDictionary nestedKeys) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof DBObject || value instanceof Map || value instanceof List) {
+            generator.writeString(JSON.serialize(nestedKeys.decompressValue(value)));
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+}
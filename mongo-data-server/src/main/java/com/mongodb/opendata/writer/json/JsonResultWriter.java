@@ -0,0 +1,133 @@
+package com.mongodb.opendata.writer.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.util.KeyDictionary;
+import com.mongodb.opendata.writer.ResultWriter;
+import com.mongodb.util.JSON;
+
+/**
+ * Writes records straight from the cursor to the response stream through a
+ * Jackson JsonGenerator, without building a String per record:
+ *
+ * <pre>
+ * {"results": [ {...}, {...} ], "total": 2000, "count": 1000, "next": "...", "links": {"next": "..."}}
+ * </pre>
+ *
+ * Values are written in the same extended JSON as the driver's
+ * JSON.serialize, e.g. <code>{"$oid": "..."}</code> for ObjectIds. Stored
+ * field names are written under their original names, see
+ * {@link Response#getKeyDictionary()}.
+ */
+public class JsonResultWriter implements ResultWriter {
+
+    /*
+     * Thread-safe once configured; generators created from it share
+     * Jackson's per-thread buffer recycling.
+     */
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final JsonGenerator generator;
+    private KeyDictionary keyDictionary = KeyDictionary.IDENTITY;
+    private boolean first = true;
+
+    public JsonResultWriter(OutputStream output) throws IOException {
+        generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void start(Response response) throws IOException {
+        keyDictionary = response.getKeyDictionary();
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("results");
+    }
+
+    @Override
+    public void write(DBObject record) throws IOException {
+        writeObject(record, keyDictionary);
+        if (first) {
+            // get the headers and first record out without waiting for the buffer to fill
+            generator.flush();
+            first = false;
+        }
+    }
+
+    @Override
+    public void end(Response response) throws IOException {
+        generator.writeEndArray();
+        if (response.getTotal() != null) {
+            generator.writeNumberField("total", response.getTotal());
+        }
+        generator.writeNumberField("count", response.getCount());
+        if (response.getNext() != null) {
+            generator.writeStringField("next", response.getNext());
+            if (response.getNextLink() != null) {
+                generator.writeObjectFieldStart("links");
+                generator.writeStringField("next", response.getNextLink());
+                generator.writeEndObject();
+            }
+        }
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private void writeObject(DBObject object, KeyDictionary keys) throws IOException {
+        generator.writeStartObject();
+        for (String key : object.keySet()) {
+            generator.writeFieldName(keys.decompress(key));
+            writeValue(object.get(key), keys.nested(key));
+        }
+        generator.writeEndObject();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void writeValue(Object value, KeyDictionary keys) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof List) {
+            generator.writeStartArray();
+            for (Object element : (List) value) {
+                writeValue(element, keys);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof DBObject) {
+            writeObject((DBObject) value, keys);
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Object entry : ((Map) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(((Map.Entry) entry).getKey()));
+                writeValue(((Map.Entry) entry).getValue(), KeyDictionary.IDENTITY);
+            }
+            generator.writeEndObject();
+        } else if (value instanceof ObjectId) {
+            generator.writeStartObject();
+            generator.writeStringField("$oid", value.toString());
+            generator.writeEndObject();
+        } else {
+            // dates, binary, patterns etc. are rare enough to leave to the driver
+            generator.writeRawValue(JSON.serialize(value));
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.mongodb.opendata.writer.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.parser.xml.XmlDataParser;
+import com.mongodb.opendata.util.KeyDictionary;
+import com.mongodb.opendata.writer.ResultWriter;
+
+/**
+ * Writes records as XML elements straight from the cursor through a StAX
+ * XMLStreamWriter:
+ *
+ * <pre>
+ * &lt;results dataset="..." collection="..." total="2000"&gt;
+ *   &lt;PRODUCT id="1"&gt;&lt;NAME&gt;...&lt;/NAME&gt;&lt;/PRODUCT&gt;
+ *   ...
+ *   &lt;page count="1000" next="..." href="..."/&gt;
+ * &lt;/results&gt;
+ * </pre>
+ *
+ * Records are named after the element they were loaded from, or
+ * <code>record</code> for non-XML sources. This is the inverse of
+ * {@link XmlDataParser}: "@" keys become attributes, "#text" becomes the
+ * element text and lists become repeated elements. Keys that are not valid
+ * XML names (e.g. from JSON sources) have the offending characters replaced
+ * by '_'. Stored field names are written under their original names, see
+ * {@link Response#getKeyDictionary()}.
+ */
+public class XmlResultWriter implements ResultWriter {
+
+    public static final String DEFAULT_RECORD_NAME = "record";
+
+    /*
+     * Creating a factory means a service lookup; a configured factory is
+     * thread-safe.
+     */
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
+    private final XMLStreamWriter writer;
+    private final OutputStream output;
+    private String recordName;
+    private KeyDictionary keyDictionary = KeyDictionary.IDENTITY;
+    private boolean first = true;
+
+    private final Map<String, String> names = new HashMap<String, String>();
+
+    public XmlResultWriter(OutputStream output) throws IOException {
+        this.output = output;
+        try {
+            writer = xmlOutputFactory.createXMLStreamWriter(output, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void start(Response response) throws IOException {
+        recordName = name(response.getRecordName() != null ? response.getRecordName() : DEFAULT_RECORD_NAME);
+        keyDictionary = response.getKeyDictionary();
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("results");
+            if (response.getDataset() != null) {
+                writer.writeAttribute("dataset", response.getDataset());
+            }
+            if (response.getSlice() != null) {
+                writer.writeAttribute("collection", response.getSlice());
+            }
+            if (response.getTotal() != null) {
+                writer.writeAttribute("total", response.getTotal().toString());
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(DBObject record) throws IOException {
+        try {
+            writeElement(recordName, record, keyDictionary);
+            if (first) {
+                writer.flush();
+                output.flush();
+                first = false;
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void end(Response response) throws IOException {
+        try {
+            writer.writeEmptyElement("page");
+            writer.writeAttribute("count", Integer.toString(response.getCount()));
+            if (response.getNext() != null) {
+                writer.writeAttribute("next", response.getNext());
+                if (response.getNextLink() != null) {
+                    writer.writeAttribute("href", response.getNextLink());
+                }
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+            output.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void writeElement(String name, Object value, KeyDictionary keys) throws XMLStreamException {
+        if (value instanceof List) {
+            for (Object element : (List) value) {
+                writeElement(name, element, keys);
+            }
+            return;
+        }
+        writer.writeStartElement(name);
+        if (value instanceof DBObject) {
+            DBObject object = (DBObject) value;
+            boolean content = false;
+            for (String storedKey : object.keySet()) {
+                Object child = object.get(storedKey);
+                String key = keys.decompress(storedKey);
+                if (key.startsWith(XmlDataParser.ATTRIBUTE_PREFIX) && !content && !(child instanceof DBObject)) {
+                    if (child != null) {
+                        writer.writeAttribute(name(key.substring(1)), text(child));
+                    }
+                } else if (key.equals(XmlDataParser.TEXT_KEY)) {
+                    content = true;
+                    if (child != null) {
+                        writer.writeCharacters(text(child));
+                    }
+                } else {
+                    content = true;
+                    writeElement(name(key), child, keys.nested(storedKey));
+                }
+            }
+        } else if (value != null) {
+            writer.writeCharacters(text(value));
+        }
+        writer.writeEndElement();
+    }
+
+    private String text(Object value) {
+        return value.toString();
+    }
+
+    /*
+     * Field names repeat in every record, so each is checked once.
+     */
+    private String name(String key) {
+        String name = names.get(key);
+        if (name == null) {
+            name = xmlName(key);
+            names.put(key, name);
+        }
+        return name;
+    }
+
+    static String xmlName(String key) {
+        if (key.startsWith(XmlDataParser.ATTRIBUTE_PREFIX)) {
+            key = key.substring(1);
+        }
+        if (key.length() == 0) {
+            return "_";
+        }
+        StringBuilder name = null;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            boolean valid = Character.isLetter(c) || c == '_'
+                    || (i > 0 && (Character.isDigit(c) || c == '-' || c == '.'));
+            if (!valid) {
+                if (name == null) {
+                    name = new StringBuilder(key.length() + 1).append(key, 0, i);
+                }
+                if (i == 0 && (Character.isDigit(c) || c == '-' || c == '.')) {
+                    name.append('_').append(c);
+                } else {
+                    name.append('_');
+                }
+            } else if (name != null) {
+                name.append(c);
+            }
+        }
+        return name != null ? name.toString() : key;
+    }
+
+}
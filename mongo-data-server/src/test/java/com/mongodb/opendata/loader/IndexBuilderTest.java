@@ -0,0 +1,69 @@
+package com.mongodb.opendata.loader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Info;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+public class IndexBuilderTest {
+
+    private final IndexBuilder indexBuilder = new IndexBuilder();
+
+    @Test
+    public void testIndexesByCardinality() {
+        Dataset dataset = dataset(new String[] { "state", "year", "recalled", "company", "country" }, new String[] {
+                "a", "y", "r", "c", "n" }, new Long[] { 50L, 12L, 2L, 3000L, 1L });
+        Map<String, DBObject> indexes = indexBuilder.planIndexes(dataset, "recalls");
+
+        assertEquals(Arrays.asList("auto_c", "auto_a", "auto_y", "auto_r_y_a"), new ArrayList<String>(indexes.keySet()));
+        assertEquals(new BasicDBObject("c", 1), indexes.get("auto_c"));
+        assertEquals(new BasicDBObject("a", 1), indexes.get("auto_a"));
+        // least distinct values first, the constant column is left out
+        assertEquals(Arrays.asList("r", "y", "a"), new ArrayList<String>(indexes.get("auto_r_y_a").keySet()));
+    }
+
+    @Test
+    public void testIndexesWithoutStatistics() {
+        Dataset dataset = dataset(new String[] { "state", "year" }, new String[] { "a", "y" }, new Long[] { null,
+                null });
+        indexBuilder.setMaxSingleIndexes(1);
+        Map<String, DBObject> indexes = indexBuilder.planIndexes(dataset, "recalls");
+
+        assertEquals(1, indexes.size());
+        assertEquals(new BasicDBObject("a", 1), indexes.get("auto_a"));
+        assertEquals(0, indexBuilder.planIndexes(dataset, "other").size());
+    }
+
+    private static Dataset dataset(String[] dimensions, String[] compressedKeys, Long[] cardinalities) {
+        Dataset dataset = new Dataset();
+        Slice slice = new Slice();
+        slice.setName("recalls");
+        dataset.addSlice(slice);
+        Table table = new Table();
+        Info info = new Info();
+        info.setName("recalls");
+        table.setInfo(info);
+        dataset.addTable(table);
+        for (int i = 0; i < dimensions.length; i++) {
+            slice.addDimension(dimensions[i]);
+            slice.getKeyToCompressedKeyMap().put(dimensions[i], compressedKeys[i]);
+            Column column = new Column();
+            column.setId(dimensions[i]);
+            column.setCardinality(cardinalities[i]);
+            table.addColumn(column);
+        }
+        return dataset;
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.mongodb.opendata.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Info;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table;
+
+public class MetadataLoaderTest {
+
+    @Test
+    public void testMergeKeepsOtherCollections() {
+        Dataset existing = dataset("recalls", "products");
+        Slice rollup = slice("products_rollup_a", RollupBuilder.ROLLUP_TYPE);
+        rollup.setRollupOf("products");
+        existing.addSlice(rollup);
+        existing.getSlices().get(0).getKeyToCompressedKeyMap().put("state", "a");
+        existing.getSlices().get(1).getKeyToCompressedKeyMap().put("name", "n");
+        Dataset loaded = dataset("recalls");
+        loaded.getSlices().get(0).getKeyToCompressedKeyMap().put("state", "b");
+
+        Dataset merged = MetadataLoader.merge(existing, loaded, "recalls");
+        assertEquals(Arrays.asList("products", "products_rollup_a", "recalls"), sliceNames(merged));
+        assertEquals("n", merged.getSlices().get(0).getKeyToCompressedKeyMap().get("name"));
+        assertEquals("b", merged.getSlices().get(2).getKeyToCompressedKeyMap().get("state"));
+        assertEquals(2, merged.getTables().size());
+        assertEquals("products", merged.getTables().get(0).getInfo().getName());
+        assertSame(loaded.getTables().get(0), merged.getTables().get(1));
+    }
+
+    @Test
+    public void testMergeWithoutExisting() {
+        Dataset loaded = dataset("recalls");
+        assertSame(loaded, MetadataLoader.merge(null, loaded, "recalls"));
+    }
+
+    private static List<String> sliceNames(Dataset dataset) {
+        List<String> names = new ArrayList<String>();
+        for (Slice slice : dataset.getSlices()) {
+            names.add(slice.getName());
+        }
+        return names;
+    }
+
+    private static Dataset dataset(String... sliceNames) {
+        Dataset dataset = new Dataset();
+        dataset.setDatasetId("product_recalls");
+        for (String name : sliceNames) {
+            dataset.addSlice(slice(name, "table"));
+            Table table = new Table();
+            Info info = new Info();
+            info.setName(name);
+            table.setInfo(info);
+            dataset.addTable(table);
+        }
+        return dataset;
+    }
+
+    private static Slice slice(String name, String type) {
+        Slice slice = new Slice();
+        slice.setName(name);
+        slice.setType(type);
+        return slice;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.mongodb.opendata.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+
+public class RollupBuilderTest {
+
+    @Test
+    public void testWithRollupsKeepsOtherSlices() {
+        // as saved by a load of "products" while "recalls" was rolled up
+        Dataset current = new Dataset();
+        current.addSlice(slice("recalls"));
+        current.addSlice(slice("recalls_rollup_a"));
+        current.addSlice(slice("products"));
+        Slice rollup = slice("recalls_rollup_a");
+
+        Dataset saved = RollupBuilder.withRollups(current, Arrays.asList(rollup));
+        List<String> names = new ArrayList<String>();
+        for (Slice slice : saved.getSlices()) {
+            names.add(slice.getName());
+        }
+        assertEquals(Arrays.asList("recalls", "products", "recalls_rollup_a"), names);
+        assertSame(rollup, saved.getSlices().get(2));
+    }
+
+    private static Slice slice(String name) {
+        Slice slice = new Slice();
+        slice.setName(name);
+        return slice;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.mongodb.opendata.loader.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.mongodb.Mongo;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:infrastructure.xml")
+public class CsvLoaderTest {
+
+    @Autowired
+    CsvLoader loader;
+
+    @Autowired
+    Mongo mongo;
+
+    @Test
+    public void testLoadPopulation() throws IOException {
+        String dbName = "census";
+        String collectionName = "population_raw";
+        MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
+        mongoTemplate.dropCollection(collectionName);
+
+        InputStream input = new ClassPathResource("population.csv").getInputStream();
+        loader.load(input, dbName, collectionName);
+
+        assertEquals(6, mongoTemplate.count(null, collectionName));
+    }
+
+}
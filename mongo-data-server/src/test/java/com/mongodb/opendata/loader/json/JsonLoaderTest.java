@@ -1,7 +1,16 @@
 package com.mongodb.opendata.loader.json;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,7 +20,13 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.google.common.io.ByteStreams;
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Slice;
+import com.mongodb.DBObject;
 import com.mongodb.Mongo;
+import com.mongodb.opendata.loader.LoadOptions;
+import com.mongodb.opendata.loader.RollupBuilder;
 import com.mongodb.opendata.repository.DatasetRepository;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -38,5 +53,120 @@ public class JsonLoaderTest {
         InputStream input = new ClassPathResource("recalls.json").getInputStream();
         loader.load(input, dbName, collectionName, recordsArrayName);
     }
+    
+    @Test
+    public void testLoadInBatches() throws IOException {
+        String dbName = "product_recalls";
+        String collectionName = "recalls_batched";
+        MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
+        mongoTemplate.dropCollection(collectionName);
+        
+        InputStream input = new ClassPathResource("recalls.json").getInputStream();
+        LoadOptions options = loader.getOptions();
+        options.setBatchSize(3);
+        loader.load(input, dbName, collectionName, "results", options);
+        
+        assertEquals(10, mongoTemplate.count(null, collectionName));
+    }
+    
+    @Test
+    public void testLoadWithWriterPool() throws IOException {
+        String dbName = "product_recalls";
+        String collectionName = "recalls_pipelined";
+        MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
+        mongoTemplate.dropCollection(collectionName);
+        
+        InputStream input = new ClassPathResource("recalls.json").getInputStream();
+        LoadOptions options = loader.getOptions();
+        options.setBatchSize(2);
+        options.setWriterThreads(4);
+        options.setQueueCapacity(1);
+        loader.load(input, dbName, collectionName, "results", options);
+        
+        assertEquals(10, mongoTemplate.count(null, collectionName));
+    }
+    
+    @Test
+    public void testLoadTwoCollectionsIntoOneDataset() throws IOException {
+        String dbName = "metadata_merge";
+        MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
+        mongoTemplate.dropCollection("recalls");
+        mongoTemplate.dropCollection("recalls_copy");
+        datasetRepository.delete(dbName);
+        
+        loader.load(new ClassPathResource("recalls.json").getInputStream(), dbName, "recalls", "results");
+        loader.load(new ClassPathResource("recalls.json").getInputStream(), dbName, "recalls_copy", "results");
+        
+        // the second load keeps the first collection's dictionary
+        Dataset dataset = datasetRepository.findOne(dbName);
+        assertEquals(2, dataset.getSlices().size());
+        assertEquals(2, dataset.getTables().size());
+        for (Slice slice : dataset.getSlices()) {
+            assertFalse(slice.getName(), slice.getKeyToCompressedKeyMap().isEmpty());
+        }
+    }
+    
+    @Test
+    public void testLoadZipEntries() throws IOException {
+        String dbName = "zip_entries";
+        MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
+        mongoTemplate.dropCollection("recalls_first");
+        mongoTemplate.dropCollection("recalls_second");
+        datasetRepository.delete(dbName);
+        
+        byte[] recalls = ByteStreams.toByteArray(new ClassPathResource("recalls.json").getInputStream());
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(zipped);
+        for (String entry : new String[] { "data/first.json", "second.json" }) {
+            zip.putNextEntry(new ZipEntry(entry));
+            zip.write(recalls);
+            zip.closeEntry();
+        }
+        zip.close();
+        loader.load(new ByteArrayInputStream(zipped.toByteArray()), dbName, "recalls", "results");
+        
+        // each entry is a collection and a slice of the dataset
+        assertEquals(10, mongoTemplate.count(null, "recalls_first"));
+        assertEquals(10, mongoTemplate.count(null, "recalls_second"));
+        Dataset dataset = datasetRepository.findOne(dbName);
+        assertEquals(2, dataset.getSlices().size());
+        for (String sliceName : new String[] { "recalls_first", "recalls_second" }) {
+            Slice slice = null;
+            for (Slice candidate : dataset.getSlices()) {
+                if (sliceName.equals(candidate.getName())) {
+                    slice = candidate;
+                }
+            }
+            assertNotNull(sliceName, slice);
+            assertFalse(sliceName, slice.getKeyToCompressedKeyMap().isEmpty());
+        }
+    }
+    
+    @Test
+    public void testReloadRebuildsRollups() throws IOException {
+        String dbName = "rollup_reload";
+        String collectionName = "recalls";
+        MongoTemplate mongoTemplate = new MongoTemplate(mongo, dbName);
+        mongoTemplate.dropCollection(collectionName);
+        datasetRepository.delete(dbName);
+        
+        LoadOptions options = loader.getOptions();
+        options.getRollupDimensions().add(Arrays.asList("organization"));
+        loader.load(new ClassPathResource("recalls.json").getInputStream(), dbName, collectionName, "results",
+                options);
+        // a load without rollups configured rebuilds the existing one over all the records
+        loader.load(new ClassPathResource("recalls.json").getInputStream(), dbName, collectionName, "results");
+        
+        Dataset dataset = datasetRepository.findOne(dbName);
+        Slice rollup = null;
+        for (Slice slice : dataset.getSlices()) {
+            if (collectionName.equals(slice.getRollupOf())) {
+                rollup = slice;
+            }
+        }
+        assertEquals(Arrays.asList("organization"), rollup.getDimensions());
+        DBObject group = mongoTemplate.getCollection(rollup.getName()).findOne();
+        assertEquals(20, ((Number) group.get(RollupBuilder.COUNT)).intValue());
+    }
 
 }
@@ -0,0 +1,133 @@
+package com.mongodb.opendata.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.dspl.model.DataType;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.util.ValueTypes;
+
+public class SchemaInferenceListenerTest {
+
+    private final List<DBObject> records = new ArrayList<DBObject>();
+
+    private final SchemaInferenceListener schema = new SchemaInferenceListener(new ParseDataListener() {
+        @Override
+        public void recordComplete(DBObject record) {
+            records.add(record);
+        }
+    });
+
+    @Test
+    public void testTypes() {
+        for (int i = 0; i < 100; i++) {
+            BasicDBObject record = new BasicDBObject("count", String.valueOf(i * 7));
+            record.put("price", i % 2 == 0 ? String.valueOf(i) : i + ".5");
+            record.put("recalled", i % 3 == 0 ? "true" : "FALSE");
+            record.put("date", String.format("2002-04-%02d", i % 30 + 1));
+            record.put("zip", String.format("%05d", i));
+            record.put("year", 2000 + i % 10);
+            record.put("address", new BasicDBObject("city", "Springfield"));
+            schema.recordComplete(record);
+        }
+        assertEquals(100, records.size());
+        assertEquals(100, schema.getRecordCount());
+
+        assertEquals(DataType.INTEGER, profile("count").getType());
+        assertTrue(profile("count").isMetric("count"));
+        assertEquals(DataType.FLOAT, profile("price").getType());
+        assertTrue(profile("price").isMetric("price"));
+        assertEquals(DataType.BOOLEAN, profile("recalled").getType());
+        assertEquals(DataType.DATE, profile("date").getType());
+        assertEquals(ValueTypes.ISO_DATE, profile("date").getFormat());
+        assertFalse(profile("date").isMetric("date"));
+        assertEquals(DataType.STRING, profile("zip").getType());
+        assertNull(profile("zip").getFormat());
+        // few distinct values make a dimension
+        assertEquals(DataType.INTEGER, profile("year").getType());
+        assertFalse(profile("year").isMetric("year"));
+        assertEquals(DataType.STRING, profile("address").getType());
+    }
+
+    @Test
+    public void testNullRatioAndCardinality() {
+        for (int i = 0; i < 100; i++) {
+            BasicDBObject record = new BasicDBObject("id", String.valueOf(i));
+            if (i % 4 == 0) {
+                record.put("state", null);
+            } else if (i % 4 == 1) {
+                record.put("state", " ");
+            } else if (i % 4 == 2) {
+                record.put("state", i % 3 == 0 ? "NY" : "CA");
+            }
+            schema.recordComplete(record);
+        }
+        assertEquals(0.75, profile("state").getNullRatio(schema.getRecordCount()), 0.0001);
+        assertEquals(2, profile("state").getCardinality());
+        assertEquals(0.0, profile("id").getNullRatio(schema.getRecordCount()), 0.0001);
+        assertEquals(100, profile("id").getCardinality(), 5);
+        assertFalse(profile("id").isMetric("id"));
+    }
+
+    @Test
+    public void testMixedTypes() {
+        schema.recordComplete(new BasicDBObject("a", "20020426").append("b", "2002-04-26").append("c", "1"));
+        schema.recordComplete(new BasicDBObject("a", "12345").append("b", "04/26/2002").append("c", "one"));
+        // an 8 digit number among others is not a date
+        assertEquals(DataType.INTEGER, profile("a").getType());
+        assertEquals(DataType.STRING, profile("b").getType());
+        assertEquals(DataType.STRING, profile("c").getType());
+    }
+
+    @Test
+    public void testEightDigitIdentifiers() {
+        // valid compact dates, but too few to tell
+        for (String id : new String[] { "20020426", "19991231", "21000101" }) {
+            schema.recordComplete(new BasicDBObject("id", id).append("ref", id));
+        }
+        // no 30th of February, and a column mostly without the field
+        schema.recordComplete(new BasicDBObject("id", "20020230"));
+        for (int i = 0; i < 12; i++) {
+            schema.recordComplete(new BasicDBObject("ref", null));
+        }
+        assertEquals(DataType.INTEGER, profile("id").getType());
+        assertEquals(DataType.INTEGER, profile("ref").getType());
+        assertNull(profile("ref").getFormat());
+    }
+
+    @Test
+    public void testCompactDates() {
+        for (int i = 0; i < 12; i++) {
+            schema.recordComplete(new BasicDBObject("date", String.format("200204%02d", i + 19)));
+        }
+        assertEquals(DataType.DATE, profile("date").getType());
+        assertEquals(ValueTypes.COMPACT_DATE, profile("date").getFormat());
+    }
+
+    @Test
+    public void testDateTimes() {
+        for (int i = 0; i < 12; i++) {
+            String date = String.format("2013-01-%02dT%02d:30:00", i + 1, i * 2);
+            schema.recordComplete(new BasicDBObject("time", date).append("placeholder", "2013-01-01Txx:yy:zz"));
+        }
+        assertEquals(DataType.DATE, profile("time").getType());
+        assertEquals(ValueTypes.ISO_DATE_TIME, profile("time").getFormat());
+        // letters where the time should be are not a time
+        assertEquals(DataType.STRING, profile("placeholder").getType());
+        assertNull(ValueTypes.dateFormat("2013-01-01Txx:yy:zz"));
+        assertNull(ValueTypes.dateFormat("2013-01-01T24:00:00Z"));
+    }
+
+    private ColumnProfile profile(String key) {
+        return schema.getProfiles().get(key);
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.mongodb.opendata.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.dspl.model.DataType;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.util.ValueTypes;
+
+public class TypeCoercingListenerTest {
+
+    private final List<DBObject> records = new ArrayList<DBObject>();
+
+    private final ParseDataListener collector = new ParseDataListener() {
+        @Override
+        public void recordComplete(DBObject record) {
+            records.add(record);
+        }
+    };
+
+    @Test
+    public void testDeclaredColumns() {
+        TypeCoercingListener coercion = new TypeCoercingListener(collector, Arrays.asList(
+                column("units", DataType.INTEGER, null), column("price", DataType.FLOAT, null),
+                column("recalled", DataType.BOOLEAN, null), column("date", DataType.DATE, ValueTypes.ISO_DATE),
+                column("time", DataType.DATE, "dd.MM.yyyy HH:mm"), column("zip", DataType.STRING, null)));
+        coercion.recordComplete(new BasicDBObject("units", "-15000").append("price", "12").append("recalled", "Y")
+                .append("date", "2002-04-26").append("time", "26.04.2002 13:30").append("zip", "00501"));
+        coercion.recordComplete(new BasicDBObject("units", "N/A").append("price", "1.5e3").append("recalled", "no")
+                .append("date", "2002-02-30").append("time", "").append("zip", "10001"));
+
+        assertEquals(2, records.size());
+        DBObject first = records.get(0);
+        assertEquals(-15000L, first.get("units"));
+        assertEquals(12.0, first.get("price"));
+        assertEquals(Boolean.TRUE, first.get("recalled"));
+        assertEquals(new Date(1019779200000L), first.get("date"));
+        assertEquals(new Date(1019779200000L + (13 * 60 + 30) * 60000L), first.get("time"));
+        assertEquals("00501", first.get("zip"));
+
+        DBObject second = records.get(1);
+        assertEquals("N/A", second.get("units"));
+        assertEquals(1500.0, second.get("price"));
+        assertEquals(Boolean.FALSE, second.get("recalled"));
+        assertEquals("2002-02-30", second.get("date"));
+        assertEquals("", second.get("time"));
+
+        assertEquals(2, coercion.getFailureCounts().size());
+        assertEquals(Long.valueOf(1), coercion.getFailureCounts().get("units"));
+        assertEquals(Long.valueOf(1), coercion.getFailureCounts().get("date"));
+    }
+
+    @Test
+    public void testInferredColumns() {
+        TypeCoercingListener coercion = new TypeCoercingListener(collector, 10);
+        for (int i = 0; i < 25; i++) {
+            coercion.recordComplete(new BasicDBObject("id", String.valueOf(i)).append("date",
+                    String.format("20020%d%02d", i % 9 + 1, i + 1)).append("name", "Recall " + i));
+            // the sample is held back until it is full
+            assertEquals(i < 9 ? 0 : i + 1, records.size());
+        }
+        coercion.finish();
+
+        for (int i = 0; i < 25; i++) {
+            DBObject record = records.get(i);
+            assertEquals(Long.valueOf(i), record.get("id"));
+            assertTrue(record.get("date") instanceof Date);
+            assertEquals("Recall " + i, record.get("name"));
+        }
+        assertTrue(coercion.getFailureCounts().isEmpty());
+    }
+
+    private static Column column(String id, DataType type, String format) {
+        Column column = new Column();
+        column.setId(id);
+        column.setType(type);
+        column.setFormat(format);
+        return column;
+    }
+
+}
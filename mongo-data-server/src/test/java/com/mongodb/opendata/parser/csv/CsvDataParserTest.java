@@ -0,0 +1,56 @@
+package com.mongodb.opendata.parser.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import com.mongodb.DBObject;
+import com.mongodb.opendata.util.KeyCompressionUtils;
+
+public class CsvDataParserTest {
+
+    @Test
+    public void testPopulation() throws IOException {
+        CsvDataParser parser = new CsvDataParser();
+        parser.setTypeSampleSize(10);
+        List<DBObject> records = parser.parse(new ClassPathResource("population.csv").getInputStream());
+        assertEquals(6, records.size());
+
+        DBObject record = KeyCompressionUtils.decompressKeys(records.get(0), parser.getCompressedKeyToKeyMap());
+        assertEquals(8, record.keySet().size());
+        // leading zeros keep the state a string
+        assertEquals("01", record.get("state"));
+        assertEquals(0L, record.get("age"));
+        // "12,034" below keeps the whole column text
+        assertEquals("37991", record.get("population_2010"));
+
+        record = KeyCompressionUtils.decompressKeys(records.get(3), parser.getCompressedKeyToKeyMap());
+        assertEquals("12,034", record.get("population_2010"));
+        record = KeyCompressionUtils.decompressKeys(records.get(4), parser.getCompressedKeyToKeyMap());
+        assertFalse(record.containsField("population_2010"));
+        assertEquals(1L, record.get("age"));
+    }
+
+    @Test
+    public void testQuotingAndSeparator() throws IOException {
+        String csv = "\uFEFFname;note;;$cost\n\"Smith; J.\";\"said \"\"hi\"\"\nand left\";x;3.5\n";
+        CsvDataParser parser = new CsvDataParser();
+        parser.setColumnSeparator(';');
+        List<DBObject> records = parser.parse(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+        assertEquals(1, records.size());
+
+        DBObject record = KeyCompressionUtils.decompressKeys(records.get(0), parser.getCompressedKeyToKeyMap());
+        assertEquals("Smith; J.", record.get("name"));
+        assertEquals("said \"hi\"\nand left", record.get("note"));
+        assertEquals("x", record.get("column_3"));
+        // no type coercion without columns or a sample size
+        assertEquals("3.5", record.get("cost"));
+    }
+
+}
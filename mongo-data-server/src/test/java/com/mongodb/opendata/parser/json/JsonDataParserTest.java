@@ -3,11 +3,13 @@ package com.mongodb.opendata.parser.json;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -15,7 +17,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.mongodb.DBObject;
+import com.mongodb.opendata.parser.KeyCompressionStatistics;
+import com.mongodb.opendata.util.KeyCompressionUtils;
 
 public class JsonDataParserTest {
     
@@ -91,5 +96,142 @@ public class JsonDataParserTest {
         DBObject record = records.get(0);
         assertEquals(7, record.keySet().size());
     }
+    
+    @Test
+    public void testNumbersAndFieldsAfterRecordsArray() throws IOException {
+        String json = "{\"results\": [ {\"small\": 1, \"big\": 12345678901, \"ratio\": 0.9664, \"nested\": [[1], [2]]}, "
+                + "{\"small\": 2} ], \"meta\": {\"count\": 2}}";
+        SimpleJsonParser loader = new SimpleJsonParser();
+        loader.setRecordsArrayName("results");
+        List<DBObject> records = loader.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals(2, records.size());
+        DBObject record = records.get(0);
+        assertEquals(1, record.get("small"));
+        assertEquals(12345678901L, record.get("big"));
+        assertEquals(0.9664, record.get("ratio"));
+        assertEquals(2, ((List<?>) record.get("nested")).size());
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNestedKeyCompression() throws IOException {
+        File jsonFile = new ClassPathResource("arraysAndNested.json").getFile();
+        KeyCompressingJsonParser parser = new KeyCompressingJsonParser();
+        
+        List<DBObject> records = parser.parse(new FileInputStream(jsonFile));
+        DBObject record = records.get(0);
+        Map<String, String> keyToCompressedKeyMap = parser.getKeyToCompressedKeyMap();
+        String[] organizationName = keyToCompressedKeyMap.get("organization.name").split("\\.");
+        assertEquals("FDA", ((DBObject) record.get(organizationName[0])).get(organizationName[1]));
+        String[] objectsB = keyToCompressedKeyMap.get("objects.b").split("\\.");
+        assertEquals(2, ((List<DBObject>) record.get(objectsB[0])).get(1).get(objectsB[1]));
+        
+        DBObject decompressed = KeyCompressionUtils.decompressKeys(record, parser.getCompressedKeyToKeyMap());
+        assertEquals(new SimpleJsonParser().parse(new FileInputStream(jsonFile)).get(0), decompressed);
+        
+        KeyCompressionStatistics statistics = parser.getKeyCompressionStatistics();
+        assertEquals(10, statistics.getKeyCount());
+        assertTrue(statistics.getCompressedKeyBytes() < statistics.getKeyBytes());
+    }
+    
+    @Test
+    public void testKeyCompressionByFrequency() throws IOException {
+        String json = "{\"results\": [ {\"rare\": 1, \"common\": 1}, {\"common\": 2}, {\"common\": 3, \"late\": 4} ]}";
+        KeyCompressingJsonParser parser = new KeyCompressingJsonParser();
+        parser.setRecordsArrayName("results");
+        parser.setKeySampleSize(2);
+        List<DBObject> records = parser.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        
+        assertEquals(3, records.size());
+        assertEquals("a", parser.getKeyToCompressedKeyMap().get("common"));
+        assertEquals("b", parser.getKeyToCompressedKeyMap().get("rare"));
+        assertEquals("c", parser.getKeyToCompressedKeyMap().get("late"));
+        assertEquals(4, records.get(2).get("c"));
+        
+        // fewer records than the sample
+        parser.setKeySampleSize(10);
+        records = parser.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals(3, records.size());
+        assertEquals("c", parser.getKeyToCompressedKeyMap().get("rare"));
+    }
+
+    @Test
+    public void testParallelParsing() throws IOException {
+        File jsonFile = new ClassPathResource("recalls.json").getFile();
+        SimpleJsonParser parser = new SimpleJsonParser();
+        parser.setRecordsArrayName("results");
+        List<DBObject> expected = parser.parse(new FileInputStream(jsonFile));
+        
+        // chunks of one record
+        parser.setParseThreads(3);
+        parser.setChunkSize(1);
+        assertEquals(expected, parser.parse(new FileInputStream(jsonFile)));
+        parser.setChunkSize(2000);
+        assertEquals(expected, parser.parse(new FileInputStream(jsonFile)));
+        
+        parser.setOrdered(false);
+        List<DBObject> unordered = parser.parse(new FileInputStream(jsonFile));
+        assertEquals(expected.size(), unordered.size());
+        assertTrue(unordered.containsAll(expected));
+    }
+    
+    @Test
+    public void testParallelParsingOfStringsAndNesting() throws IOException {
+        // a value named like the array, brackets and escaped quotes in strings
+        String json = "{\"name\": \"results\", \"x\": {\"results\" : \"no\"}, \"results\" : [ "
+                + "{\"a\": \"}],[{\\\"\", \"b\": [{\"c\": 1}, {\"c\": 2}]}, "
+                + "{\"a\": \"\\\\\", \"b\": []},\n{\"a\": \"\u00e9t\u00e9\", \"b\": {\"results\": 1}} ], "
+                + "\"after\": [{\"a\": 4}]}";
+        SimpleJsonParser parser = new SimpleJsonParser();
+        parser.setRecordsArrayName("results");
+        List<DBObject> expected = parser.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals(3, expected.size());
+        assertEquals("}],[{\"", expected.get(0).get("a"));
+        
+        parser.setParseThreads(2);
+        parser.setChunkSize(1);
+        assertEquals(expected, parser.parse(new ByteArrayInputStream(json.getBytes("UTF-8"))));
+    }
+    
+    @Test(expected = JsonParseException.class)
+    public void testParallelParsingWithoutRecordsArray() throws IOException {
+        SimpleJsonParser parser = new SimpleJsonParser();
+        parser.setRecordsArrayName("results");
+        parser.setParseThreads(2);
+        parser.parse(new ByteArrayInputStream("{\"other\": [{\"a\": 1}]}".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testJsonLines() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            lines.append("{\"id\": ").append(i).append(", \"name\": \"line\\n").append(i).append("\"}")
+                    .append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        lines.append("\n{\"id\": 50, \"extra\": {\"a\": 1}}");
+        byte[] json = lines.toString().getBytes("UTF-8");
+        
+        JsonLinesParser parser = new JsonLinesParser();
+        List<DBObject> expected = parser.parse(new ByteArrayInputStream(json));
+        assertEquals(51, expected.size());
+        String id = parser.getKeyToCompressedKeyMap().get("id");
+        assertEquals(7, expected.get(7).get(id));
+        assertEquals(2, parser.getKeyToCompressedKeyMap().get("extra.a").split("\\.").length);
+        
+        parser.setParseThreads(3);
+        parser.setChunkSize(100);
+        List<DBObject> records = parser.parse(new ByteArrayInputStream(json));
+        assertEquals(expected, records);
+        assertEquals(id, parser.getKeyToCompressedKeyMap().get("id"));
+        
+        parser.setOrdered(false);
+        records = parser.parse(new ByteArrayInputStream(json));
+        assertEquals(51, records.size());
+        assertTrue(records.containsAll(expected));
+        
+        assertEquals(0, parser.parse(new ByteArrayInputStream("\n \n".getBytes("UTF-8"))).size());
+        parser.setParseThreads(0);
+        assertEquals(0, parser.parse(new ByteArrayInputStream(new byte[0])).size());
+    }
 
 }
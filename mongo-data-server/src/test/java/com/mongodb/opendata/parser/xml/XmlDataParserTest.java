@@ -1,6 +1,8 @@
 package com.mongodb.opendata.parser.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -14,6 +16,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 
 import com.mongodb.DBObject;
+import com.mongodb.opendata.parser.ParseDataListener;
+import com.mongodb.opendata.util.KeyCompressionUtils;
 
 public class XmlDataParserTest {
     
@@ -61,6 +65,42 @@ public class XmlDataParserTest {
         logger.debug(recallRecords.get(2).toString());
     }
     
+    @Test
+    public void testParseStreamsRecordsToListener() throws IOException, XMLStreamException {
+        XmlDataParser parser = new XmlDataParser();
+        parser.setRecordName("PRODUCT");
+        InputStream input = new ClassPathResource("RecallsDataSet.xml").getInputStream();
+        final int[] recordCount = new int[1];
+        parser.parse(input, new ParseDataListener() {
+
+            @Override
+            public void recordComplete(DBObject record) {
+                assertTrue(record.keySet().size() > 0);
+                recordCount[0]++;
+            } });
+        assertTrue(recordCount[0] > 0);
+        assertNotNull(parser.getKeyToCompressedKeyMap().get("BRAND_NAME"));
+    }
+    
+    @Test
+    public void testParseAttributesAndNestedElements() throws IOException, XMLStreamException {
+        XmlDataParser parser = new XmlDataParser();
+        parser.setRecordName("row");
+        List<DBObject> records = parser.parse(new ClassPathResource("HospitalReadmissionReduction_small.xml").getInputStream());
+        DBObject first = KeyCompressionUtils.decompressKeys(records.get(0), parser.getCompressedKeyToKeyMap());
+        assertEquals("1", first.get("@_id"));
+        assertEquals(728, first.get("number_of_discharges"));
+        assertEquals("010001", first.get("provider_id"));
+        
+        parser = new XmlDataParser();
+        parser.setRecordName("PRODUCT");
+        records = parser.parse(new ClassPathResource("RecallsDataSet_nested.xml").getInputStream());
+        DBObject product = KeyCompressionUtils.decompressKeys(records.get(2), parser.getCompressedKeyToKeyMap());
+        DBObject reason = (DBObject)product.get("REASON");
+        assertEquals(5, reason.get("REASON_CODE"));
+        assertEquals("DEFECTIVE", reason.get("REASON_NAME"));
+    }
+    
     private List<DBObject> parse(XmlDataParser parser, String filename) throws IOException, XMLStreamException {
         InputStream input = new ClassPathResource(filename).getInputStream();
         List<DBObject> recallRecords = parser.parse(input);
@@ -84,4 +124,17 @@ public class XmlDataParserTest {
         return recallRecords;
     }
 
+    @Test
+    public void testToPrimitive() {
+        assertEquals(Boolean.TRUE, XmlDataParser.toPrimitive("true"));
+        assertEquals(42, XmlDataParser.toPrimitive("42"));
+        assertEquals(-4200000000L, XmlDataParser.toPrimitive("-4200000000"));
+        assertEquals(999999999999999999L, XmlDataParser.toPrimitive("999999999999999999"));
+        assertEquals(2.5, XmlDataParser.toPrimitive("2.5"));
+        // account numbers and IDs too long for a long stay text
+        assertEquals("12345678901234567890123", XmlDataParser.toPrimitive("12345678901234567890123"));
+        assertEquals("-1234567890123456789", XmlDataParser.toPrimitive("-1234567890123456789"));
+        assertEquals("007", XmlDataParser.toPrimitive("007"));
+    }
+
 }
@@ -0,0 +1,149 @@
+package com.mongodb.opendata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.dspl.model.Dataset;
+import com.google.dspl.model.Info;
+import com.google.dspl.model.Slice;
+import com.google.dspl.model.Table;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.AggregateQuery;
+import com.mongodb.opendata.loader.RollupBuilder;
+import com.mongodb.opendata.util.KeyDictionary;
+
+public class AggregateServiceTest {
+
+    @Test
+    public void testFindRollup() {
+        Dataset dataset = dataset();
+        AggregateQuery query = query("state", "sum(units)");
+        assertEquals("recalls_rollup_a", AggregateService.findRollup(dataset, query).getName());
+
+        query = query("year", "avg(units)");
+        assertEquals("recalls_rollup_a-y", AggregateService.findRollup(dataset, query).getName());
+
+        // filtered fields must be dimensions of the rollup too
+        query = query("state", "count");
+        query.setFilter(new BasicDBObject("year", 2002));
+        assertEquals("recalls_rollup_a-y", AggregateService.findRollup(dataset, query).getName());
+
+        query = query("company", "count");
+        assertNull(AggregateService.findRollup(dataset, query));
+        query = query("state", "sum(price)");
+        assertNull(AggregateService.findRollup(dataset, query));
+    }
+
+    @Test
+    public void testRollupPipeline() {
+        AggregateQuery query = query("state", "sum(units),avg(units),count");
+        query.setFilter(new BasicDBObject("year", new BasicDBObject("$gte", 2000)));
+        KeyDictionary keys = new KeyDictionary(dataset().getSlices().get(0).getKeyToCompressedKeyMap());
+        List<DBObject> pipeline = AggregateService.rollupPipeline(query, keys);
+
+        assertEquals(3, pipeline.size());
+        assertEquals("{ \"$match\" : { \"_id.y\" : { \"$gte\" : 2000}}}", pipeline.get(0).toString());
+        assertEquals("{ \"$group\" : { \"_id\" : { \"a\" : \"$_id.a\"} , \"a0\" : { \"$sum\" : \"$u_sum\"} , "
+                + "\"a1_sum\" : { \"$sum\" : \"$u_sum\"} , \"a1_n\" : { \"$sum\" : \"$u_n\"} , "
+                + "\"a2\" : { \"$sum\" : \"$count\"}}}", pipeline.get(1).toString());
+        assertEquals("{ \"$sort\" : { \"_id.a\" : 1}}", pipeline.get(2).toString());
+    }
+
+    @Test
+    public void testRecordPipeline() {
+        AggregateQuery query = query("state,year", "max(units),avg(units),count(units),count");
+        query.setFilter(new BasicDBObject("company", "Acme"));
+        KeyDictionary keys = new KeyDictionary(dataset().getSlices().get(0).getKeyToCompressedKeyMap());
+        List<DBObject> pipeline = AggregateService.recordPipeline(query, keys);
+
+        assertEquals(3, pipeline.size());
+        assertEquals("{ \"$match\" : { \"c\" : \"Acme\"}}", pipeline.get(0).toString());
+        DBObject group = (DBObject) pipeline.get(1).get("$group");
+        assertEquals("{ \"a\" : \"$a\" , \"y\" : \"$y\"}", group.get("_id").toString());
+        assertEquals("{ \"$max\" : \"$u\"}", group.get("a0").toString());
+        assertEquals("{ \"$avg\" : \"$u\"}", group.get("a1").toString());
+        assertEquals(RollupBuilder.countValues("u"), group.get("a2"));
+        assertEquals("{ \"$sum\" : 1}", group.get("a3").toString());
+        assertEquals("{ \"$sort\" : { \"_id.a\" : 1 , \"_id.y\" : 1}}", pipeline.get(2).toString());
+    }
+
+    @Test
+    public void testValidate() {
+        Slice slice = dataset().getSlices().get(0);
+        AggregateQuery query = query("state", "sum(units)");
+        query.setFilter(new BasicDBObject("year", 2002));
+        AggregateService.validate(query, slice);
+        AggregateService.validate(query("units", "count"), null);
+
+        assertInvalid(query("units", "count"), slice);
+        assertInvalid(query("state", "sum(year)"), slice);
+        query = query("state", "count");
+        query.setFilter(new BasicDBObject("price", 10));
+        assertInvalid(query, slice);
+    }
+
+    private static void assertInvalid(AggregateQuery query, Slice slice) {
+        try {
+            AggregateService.validate(query, slice);
+            fail("Expected " + query.getGroupBy() + " " + query.getAggregates() + " to be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private static AggregateQuery query(String groupBy, String metrics) {
+        AggregateQuery query = new AggregateQuery("cpsc", "recalls");
+        query.setGroupBy(QueryParameters.groupBy(groupBy));
+        query.setAggregates(QueryParameters.aggregates(metrics));
+        return query;
+    }
+
+    private static Dataset dataset() {
+        Dataset dataset = new Dataset();
+        Slice slice = slice("recalls", null, Arrays.asList("state", "year", "company"));
+        dataset.addSlice(slice);
+        dataset.addSlice(slice("recalls_rollup_a-y", "recalls", Arrays.asList("state", "year")));
+        dataset.addSlice(slice("recalls_rollup_a", "recalls", Arrays.asList("state")));
+
+        Table table = new Table();
+        Info info = new Info();
+        info.setName("recalls");
+        table.setInfo(info);
+        dataset.addTable(table);
+        String[] columns = { "state", "year", "company" };
+        long[] cardinalities = { 50, 12, 3000 };
+        for (int i = 0; i < columns.length; i++) {
+            Column column = new Column();
+            column.setId(columns[i]);
+            column.setCardinality(cardinalities[i]);
+            table.addColumn(column);
+        }
+        return dataset;
+    }
+
+    private static Slice slice(String name, String rollupOf, List<String> dimensions) {
+        Slice slice = new Slice();
+        slice.setName(name);
+        if (rollupOf != null) {
+            slice.setType(RollupBuilder.ROLLUP_TYPE);
+            slice.setRollupOf(rollupOf);
+        }
+        for (String dimension : dimensions) {
+            slice.addDimension(dimension);
+        }
+        slice.addMetric("units");
+        slice.getKeyToCompressedKeyMap().put("state", "a");
+        slice.getKeyToCompressedKeyMap().put("year", "y");
+        slice.getKeyToCompressedKeyMap().put("company", "c");
+        slice.getKeyToCompressedKeyMap().put("units", "u");
+        return slice;
+    }
+
+}
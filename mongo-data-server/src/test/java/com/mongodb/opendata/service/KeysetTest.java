@@ -0,0 +1,145 @@
+package com.mongodb.opendata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+public class KeysetTest {
+
+    @Test
+    public void testIdKeyset() {
+        DBObject sort = new BasicDBObject("_id", 1);
+        ObjectId id = new ObjectId();
+        DBObject record = new BasicDBObject("_id", id).append("state", "NY");
+
+        String token = Keyset.encode(Keyset.position(sort, record));
+        DBObject position = Keyset.decode(token, sort);
+        assertEquals(id, position.get("_id"));
+        assertEquals(new BasicDBObject("_id", new BasicDBObject("$gt", id)), Keyset.after(sort, position));
+    }
+
+    @Test
+    public void testCompoundKeyset() {
+        DBObject sort = new BasicDBObject("address.state", -1).append("_id", 1);
+        DBObject record = new BasicDBObject("_id", 7).append("address", new BasicDBObject("state", "NY"));
+
+        DBObject position = Keyset.decode(Keyset.encode(Keyset.position(sort, record)), sort);
+        String after = Keyset.after(sort, position).toString();
+        assertTrue(after, after.startsWith("{ \"$or\" : [ { \"address.state\" : { \"$lt\" : \"NY\"}} , "
+                + "{ \"address.state\" : { \"$type\" : 1}} , "));
+        // numbers and null or missing states sort before strings
+        assertTrue(after, after.endsWith("{ \"address.state\" :  null } , "
+                + "{ \"address.state\" : \"NY\" , \"_id\" : { \"$gt\" : 7}}]}"));
+    }
+
+    @Test
+    public void testNullInTheMiddle() {
+        // in sort order, null and missing values sort as equal, then numbers,
+        // then strings
+        List<DBObject> ascending = Arrays.<DBObject> asList(record(1, null), new BasicDBObject("_id", 2),
+                record(4, 2.5), record(3, 5), record(5, "x"));
+        assertPages(new BasicDBObject("a", 1).append("_id", 1), ascending);
+
+        List<DBObject> descending = Arrays.<DBObject> asList(record(5, "x"), record(3, 5), record(4, 2.5),
+                record(1, null), new BasicDBObject("_id", 2));
+        assertPages(new BasicDBObject("a", -1).append("_id", 1), descending);
+    }
+
+    private static DBObject record(int id, Object a) {
+        return new BasicDBObject("_id", id).append("a", a);
+    }
+
+    /*
+     * Each page of one record must continue with exactly the records after
+     * it.
+     */
+    private void assertPages(DBObject sort, List<DBObject> sorted) {
+        for (int i = 0; i < sorted.size(); i++) {
+            DBObject position = Keyset.decode(Keyset.encode(Keyset.position(sort, sorted.get(i))), sort);
+            DBObject after = Keyset.after(sort, position);
+            List<DBObject> rest = new ArrayList<DBObject>();
+            for (DBObject record : sorted) {
+                if (matches(after, record)) {
+                    rest.add(record);
+                }
+            }
+            assertEquals(after.toString(), sorted.subList(i + 1, sorted.size()), rest);
+        }
+    }
+
+    /*
+     * Evaluates the conditions Keyset builds, for numbers, strings and nulls.
+     */
+    private static boolean matches(DBObject condition, DBObject record) {
+        for (String key : condition.keySet()) {
+            Object expected = condition.get(key);
+            if (key.equals("$or")) {
+                boolean any = false;
+                for (Object clause : (List<?>) expected) {
+                    any |= matches((DBObject) clause, record);
+                }
+                if (!any) {
+                    return false;
+                }
+                continue;
+            }
+            Object value = record.get(key);
+            boolean matches;
+            if (expected == null) {
+                matches = value == null;
+            } else if (!(expected instanceof DBObject)) {
+                matches = Integer.valueOf(0).equals(compare(value, expected));
+            } else {
+                DBObject operator = (DBObject) expected;
+                if (operator.containsField("$gt")) {
+                    Integer c = compare(value, operator.get("$gt"));
+                    matches = c != null && c > 0;
+                } else if (operator.containsField("$lt")) {
+                    Integer c = compare(value, operator.get("$lt"));
+                    matches = c != null && c < 0;
+                } else if (operator.containsField("$ne")) {
+                    matches = value != null;
+                } else {
+                    int type = value instanceof Double ? 1 : value instanceof String ? 2 : value instanceof Integer ? 16
+                            : value instanceof Long ? 18 : -1;
+                    matches = ((Number) operator.get("$type")).intValue() == type;
+                }
+            }
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Like range operators, only compares values of the same type, else
+     * returns null.
+     */
+    private static Integer compare(Object value, Object other) {
+        if (value instanceof Number && other instanceof Number) {
+            return Double.compare(((Number) value).doubleValue(), ((Number) other).doubleValue());
+        }
+        if (value instanceof String && other instanceof String) {
+            return ((String) value).compareTo((String) other);
+        }
+        return null;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTokenForOtherSort() {
+        DBObject record = new BasicDBObject("_id", 7).append("state", "NY");
+        String token = Keyset.encode(Keyset.position(new BasicDBObject("_id", 1), record));
+        Keyset.decode(token, new BasicDBObject("state", 1).append("_id", 1));
+    }
+
+}
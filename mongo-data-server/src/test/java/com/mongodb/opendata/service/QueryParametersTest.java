@@ -0,0 +1,166 @@
+package com.mongodb.opendata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.dspl.model.DataType;
+import com.google.dspl.model.Table.Column;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Aggregate;
+import com.mongodb.opendata.util.ValueTypes;
+
+public class QueryParametersTest {
+
+    @Test
+    public void testFilter() {
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        parameters.put("state", new String[] { "NY", "CA" });
+        parameters.put("zip", new String[] { "02134" });
+        parameters.put("year[gte]", new String[] { "2000" });
+        parameters.put("year[lt]", new String[] { "2010.5" });
+        parameters.put("race[in]", new String[] { "a,b" });
+        parameters.put("limit", new String[] { "10" });
+        parameters.put("sort", new String[] { "state" });
+
+        assertEquals("{ \"state\" : { \"$in\" : [ \"NY\" , \"CA\"]} , \"zip\" : { \"$in\" : [ 2134 , \"02134\"]} , "
+                + "\"year\" : { \"$gte\" : 2000 , \"$lt\" : 2010.5} , \"race\" : { \"$in\" : [ \"a\" , \"b\"]}}",
+                QueryParameters.filter(parameters).toString());
+
+        parameters.clear();
+        parameters.put("state", new String[] { "NY" });
+        assertEquals("{ \"state\" : \"NY\"}", QueryParameters.filter(parameters).toString());
+    }
+
+    @Test
+    public void testFilterByColumnTypes() {
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        parameters.put("date[gte]", new String[] { "20020426" });
+        parameters.put("recalled", new String[] { "Y" });
+        parameters.put("units", new String[] { "12" });
+        List<Column> columns = Arrays.asList(column("date", DataType.DATE, ValueTypes.COMPACT_DATE),
+                column("recalled", DataType.BOOLEAN, null), column("units", DataType.INTEGER, null));
+
+        DBObject filter = QueryParameters.filter(parameters, columns);
+        assertEquals(new BasicDBObject("$gte", new Date(1019779200000L)), filter.get("date"));
+        assertEquals(new BasicDBObject("$in", Arrays.asList(Boolean.TRUE, "Y")), filter.get("recalled"));
+        assertEquals(new BasicDBObject("$in", Arrays.asList(12, "12")), filter.get("units"));
+
+        // not a date, compared as it is
+        parameters.put("date[gte]", new String[] { "April" });
+        assertEquals(new BasicDBObject("$gte", "April"), QueryParameters.filter(parameters, columns).get("date"));
+    }
+
+    @Test
+    public void testFilterTextColumns() {
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        parameters.put("zip[gte]", new String[] { "02000" });
+        parameters.put("zip[lt]", new String[] { "03000" });
+        parameters.put("code[ne]", new String[] { "007" });
+        parameters.put("year[gte]", new String[] { "2000" });
+        List<Column> columns = Arrays.asList(column("zip", DataType.STRING, null),
+                column("code", DataType.STRING, null), column("year", DataType.INTEGER, null));
+
+        // text columns compare text, others numbers
+        DBObject filter = QueryParameters.filter(parameters, columns);
+        assertEquals(new BasicDBObject("$gte", "02000").append("$lt", "03000"), filter.get("zip"));
+        assertEquals(new BasicDBObject("$ne", "007"), filter.get("code"));
+        assertEquals(new BasicDBObject("$gte", 2000), filter.get("year"));
+        // without metadata, numeric values are numbers
+        assertEquals(new BasicDBObject("$gte", 2000).append("$lt", 3000), QueryParameters.filter(parameters)
+                .get("zip"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOperator() {
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        parameters.put("year[regex]", new String[] { "20.*" });
+        QueryParameters.filter(parameters);
+    }
+
+    @Test
+    public void testProjectionAndSort() {
+        assertNull(QueryParameters.projection(" "));
+        assertEquals("{ \"state\" : 1 , \"population\" : 1}", QueryParameters.projection("state, population")
+                .toString());
+        assertEquals("{ \"_id\" : 1}", QueryParameters.sort(null).toString());
+        assertEquals("{ \"state\" : 1 , \"population\" : -1 , \"_id\" : 1}",
+                QueryParameters.sort("state,-population").toString());
+        assertEquals("{ \"_id\" : -1}", QueryParameters.sort("-_id").toString());
+    }
+
+    @Test
+    public void testGroupByAndAggregates() {
+        assertEquals(Arrays.asList("state", "year"), QueryParameters.groupBy("state, year,state"));
+        assertEquals(0, QueryParameters.groupBy(null).size());
+
+        List<Aggregate> aggregates = QueryParameters.aggregates("sum(units), avg( units ),count");
+        assertEquals(3, aggregates.size());
+        assertEquals(Aggregate.Function.SUM, aggregates.get(0).getFunction());
+        assertEquals("units_avg", aggregates.get(1).getName());
+        assertNull(aggregates.get(2).getField());
+        assertEquals("[count]", QueryParameters.aggregates("").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFunction() {
+        QueryParameters.aggregates("median(units)");
+    }
+
+    @Test
+    public void testOperatorFieldNames() {
+        for (String field : new String[] { "$where", "$natural", "address.$where", "a..b" }) {
+            Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+            parameters.put(field, new String[] { "sleep(10000)" });
+            try {
+                QueryParameters.filter(parameters);
+                fail("Filter by " + field);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                QueryParameters.projection("state," + field);
+                fail("Project " + field);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                QueryParameters.sort("-" + field);
+                fail("Sort by " + field);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                QueryParameters.groupBy(field);
+                fail("Group by " + field);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                QueryParameters.aggregates("sum(" + field + ")");
+                fail("Sum " + field);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals("{ \"address.zip\" : 1}", QueryParameters.projection("address.zip").toString());
+    }
+
+    private static Column column(String id, DataType type, String format) {
+        Column column = new Column();
+        column.setId(id);
+        column.setType(type);
+        column.setFormat(format);
+        return column;
+    }
+
+}
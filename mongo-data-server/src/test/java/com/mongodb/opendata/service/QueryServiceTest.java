@@ -0,0 +1,88 @@
+package com.mongodb.opendata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.opendata.domain.Query;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.loader.csv.CsvLoader;
+import com.mongodb.opendata.writer.ResultWriter;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:infrastructure.xml")
+public class QueryServiceTest {
+
+    @Autowired
+    QueryService queryService;
+
+    @Autowired
+    MetadataCache metadataCache;
+
+    @Autowired
+    CsvLoader loader;
+
+    @Autowired
+    Mongo mongo;
+
+    @Test
+    public void testFilterCoercedColumns() throws IOException {
+        String dbName = "query_typing";
+        String collectionName = "recalls";
+        new MongoTemplate(mongo, dbName).dropCollection(collectionName);
+        StringBuilder csv = new StringBuilder("id,date,recalled\n");
+        for (int i = 0; i < 12; i++) {
+            csv.append(i).append(",200204").append(19 + i).append(',').append(i % 2 == 0).append('\n');
+        }
+        loader.load(new ByteArrayInputStream(csv.toString().getBytes("UTF-8")), dbName, collectionName);
+        metadataCache.invalidate(dbName);
+
+        // stored as dates and booleans, filtered in the source's notation
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        parameters.put("date[gte]", new String[] { "20020425" });
+        parameters.put("recalled", new String[] { "true" });
+        Query query = new Query(dbName, collectionName);
+        query.setFilter(queryService.filter(dbName, collectionName, parameters));
+        final List<DBObject> records = new ArrayList<DBObject>();
+        Response response = queryService.query(query, new ResultWriter() {
+
+            @Override
+            public void start(Response response) {
+            }
+
+            @Override
+            public void write(DBObject record) {
+                records.add(record);
+            }
+
+            @Override
+            public void end(Response response) {
+            }
+        });
+
+        assertEquals(3, response.getCount());
+        assertEquals(Long.valueOf(3), response.getTotal());
+        for (DBObject record : records) {
+            assertTrue(record.toString(), record.toMap().values().contains(Boolean.TRUE));
+        }
+        assertTrue(query.getFilter().toString(), query.getFilter().get("date") instanceof DBObject
+                && ((DBObject) query.getFilter().get("date")).get("$gte") instanceof Date);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.mongodb.opendata.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+
+public class CompressedInputTest {
+
+    private static final String CONTENT = "{\"results\":[{\"id\":1},{\"id\":2}]}";
+
+    @Test
+    public void testPlainGzipAndBzip2() throws IOException {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gzip), CONTENT);
+        // two bzip2 streams, concatenated
+        ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+        write(new BZip2CompressorOutputStream(bzip2), CONTENT.substring(0, 10));
+        write(new BZip2CompressorOutputStream(bzip2), CONTENT.substring(10));
+
+        assertSingleUnit(CONTENT.getBytes("UTF-8"), Compression.NONE);
+        assertSingleUnit(gzip.toByteArray(), Compression.GZIP);
+        assertSingleUnit(bzip2.toByteArray(), Compression.BZIP2);
+    }
+
+    @Test
+    public void testZipEntries() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry("feeds/"));
+        zip.putNextEntry(new ZipEntry("feeds/recalls.json"));
+        zip.write(CONTENT.getBytes("UTF-8"));
+        zip.putNextEntry(new ZipEntry("feeds/empty.json"));
+        zip.putNextEntry(new ZipEntry("more.json"));
+        zip.write("{}".getBytes("UTF-8"));
+        zip.close();
+
+        CompressedInput input = new CompressedInput(new ByteArrayInputStream(bytes.toByteArray()), 1);
+        try {
+            assertEquals(Compression.ZIP, input.getCompression());
+            assertTrue(input.next());
+            assertEquals("feeds/recalls.json", input.getName());
+            assertEquals(CONTENT, read(input.getInputStream()));
+            assertTrue(input.next());
+            assertEquals("feeds/empty.json", input.getName());
+            // an entry that isn't read to the end is skipped
+            assertTrue(input.next());
+            assertEquals("more.json", input.getName());
+            assertEquals("{}", read(input.getInputStream()));
+            assertFalse(input.next());
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void assertSingleUnit(byte[] bytes, Compression compression) throws IOException {
+        CompressedInput input = new CompressedInput(new ByteArrayInputStream(bytes), 2);
+        try {
+            assertEquals(compression, input.getCompression());
+            assertTrue(input.next());
+            assertNull(input.getName());
+            assertEquals(CONTENT, read(input.getInputStream()));
+            assertFalse(input.next());
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void write(OutputStream out, String content) throws IOException {
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1) {
+            out.write(b);
+        }
+        return out.toString("UTF-8");
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.mongodb.opendata.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompressedKeyMapTest {
+
+    @Test
+    public void testSameCodesAsOneKeyAtATime() {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            keys.add("column_" + i);
+        }
+        Map<String, String> compressedKeyToKeyMap = new HashMap<String, String>();
+        for (String key : keys) {
+            KeyCompressionUtils.addKeyToCompressedKeyToKeyMap(key, compressedKeyToKeyMap);
+        }
+
+        CompressedKeyMap map = CompressedKeyMap.build(keys);
+        assertEquals(keys.size(), map.size());
+        assertEquals(compressedKeyToKeyMap, map.toInverseMap());
+        for (String key : keys) {
+            assertEquals(key, map.decompress(map.compress(key)));
+        }
+        assertNull(map.compress("no such key"));
+        assertNull(map.decompress("no such key"));
+    }
+
+    @Test
+    public void testDisplacedKeys() {
+        CompressedKeyMap map = CompressedKeyMap.build(Arrays.asList("state", "region"));
+        assertEquals("9e", map.compress("state"));
+        assertEquals("96", map.compress("region"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateKeys() {
+        CompressedKeyMap.build(Arrays.asList("state", "state"));
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.mongodb.opendata.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCardinality() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.offer("value " + (i % 10));
+        }
+        assertEquals(10, hll.cardinality());
+    }
+
+    @Test
+    public void testLargeCardinality() {
+        HyperLogLog hll = new HyperLogLog();
+        int distinct = 200000;
+        for (long i = 0; i < distinct; i++) {
+            hll.offer(i);
+            hll.offer(i);
+        }
+        assertTrue(hll.cardinality() + " is not close to " + distinct,
+                Math.abs(hll.cardinality() - distinct) < distinct * 0.05);
+    }
+
+    @Test
+    public void testMerge() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 5000; i++) {
+            first.offer("key" + i);
+            second.offer("key" + (i + 2500));
+        }
+        first.merge(second);
+        assertTrue(Math.abs(first.cardinality() - 7500) < 7500 * 0.05);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentPrecision() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+}
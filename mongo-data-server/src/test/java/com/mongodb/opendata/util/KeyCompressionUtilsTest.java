@@ -1,8 +1,10 @@
 package com.mongodb.opendata.util;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -45,4 +47,27 @@ public class KeyCompressionUtilsTest {
 
     }
 
+    @Test
+    public void testCodes() {
+        assertEquals("a", KeyCompressionUtils.code(0));
+        assertEquals("Z", KeyCompressionUtils.code(51));
+        assertEquals("aa", KeyCompressionUtils.code(52));
+        assertEquals("a9", KeyCompressionUtils.code(52 + 61));
+        assertEquals("ba", KeyCompressionUtils.code(52 + 62));
+        assertEquals("Z9", KeyCompressionUtils.code(52 + 52 * 62 - 1));
+        assertEquals("aaa", KeyCompressionUtils.code(52 + 52 * 62));
+    }
+
+    @Test
+    public void testKeyCompressionByFrequency() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("rare", 1);
+        counts.put("everywhere", 100);
+        counts.put("often_b", 50);
+        counts.put("often_a", 50);
+        Map<String, String> map = KeyCompressionUtils.getKeyToCompressedKeyMapByFrequency(counts);
+        assertArrayEquals(new String[] { "everywhere", "often_a", "often_b", "rare" }, map.keySet().toArray());
+        assertArrayEquals(new String[] { "a", "b", "c", "d" }, map.values().toArray());
+    }
+
 }
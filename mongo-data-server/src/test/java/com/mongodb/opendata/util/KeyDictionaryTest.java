@@ -0,0 +1,66 @@
+package com.mongodb.opendata.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+public class KeyDictionaryTest {
+
+    @Test
+    public void testCompressAndDecompress() {
+        Map<String, String> map = KeyCompressionUtils.getKeyToCompressedKeyMap(Arrays.asList("state", "race",
+                "origin"));
+        KeyDictionary dictionary = new KeyDictionary(map);
+        for (String key : map.keySet()) {
+            assertEquals(map.get(key), dictionary.compress(key));
+            assertEquals(key, dictionary.decompress(map.get(key)));
+        }
+        assertEquals("_id", dictionary.compress("_id"));
+        assertEquals("_id", dictionary.decompress("_id"));
+        assertEquals(map.get("state") + ".name", dictionary.compressPath("state.name"));
+    }
+
+    @Test
+    public void testNestedPaths() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("REASON", "4");
+        map.put("REASON.REASON_CODE", "4.e");
+        map.put("tags", "a");
+        map.put("tags.name", "a.4");
+        KeyDictionary dictionary = new KeyDictionary(map);
+        assertEquals("4.e", dictionary.compressPath("REASON.REASON_CODE"));
+        assertEquals("a.0.4", dictionary.compressPath("tags.0.name"));
+        assertEquals("REASON_CODE", dictionary.nested("4").decompress("e"));
+        assertEquals(KeyDictionary.IDENTITY, dictionary.nested("e"));
+
+        DBObject stored = new BasicDBObject("4", new BasicDBObject("e", 5)).append("a",
+                Arrays.asList(new BasicDBObject("4", "x")));
+        assertEquals(new BasicDBObject("REASON", new BasicDBObject("REASON_CODE", 5)).append("tags",
+                Arrays.asList(new BasicDBObject("name", "x"))), dictionary.decompressValue(stored));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompressedKeysMustBeUnique() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("a", "0");
+        map.put("b", "0");
+        new KeyDictionary(map);
+    }
+
+    @Test
+    public void testAddKeyWithoutDisplacing() {
+        Map<String, String> compressedKeyToKeyMap = new HashMap<String, String>();
+        assertEquals("9", KeyCompressionUtils.addKeyWithoutDisplacing("state", compressedKeyToKeyMap));
+        // "region" hashes to the same first digit, "state" keeps the key records were written with
+        assertEquals("96", KeyCompressionUtils.addKeyWithoutDisplacing("region", compressedKeyToKeyMap));
+        assertEquals("state", compressedKeyToKeyMap.get("9"));
+    }
+
+}
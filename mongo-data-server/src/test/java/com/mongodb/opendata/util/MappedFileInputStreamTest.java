@@ -0,0 +1,83 @@
+package com.mongodb.opendata.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedFileInputStreamTest {
+
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void writeFile() throws IOException {
+        content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        file = File.createTempFile("mapped", ".dat");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testReadAcrossWindows() throws IOException {
+        // window sizes that do and don't divide the file length
+        for (int windowSize : new int[] { 7, 100, 1000, 4096 }) {
+            InputStream input = new MappedFileInputStream(file, windowSize);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[64];
+                int n;
+                while ((n = input.read(buffer, 0, buffer.length)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                assertArrayEquals(content, out.toByteArray());
+                assertEquals(-1, input.read());
+                assertEquals(0, input.available());
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+    @Test
+    public void testReadSkipAndReset() throws IOException {
+        MappedFileInputStream input = new MappedFileInputStream(file, 7);
+        try {
+            assertEquals(1000, input.length());
+            assertEquals(content[0] & 0xff, input.read());
+            assertEquals(20, input.skip(20));
+            assertEquals(content[21] & 0xff, input.read());
+            input.mark(0);
+            assertEquals(500, input.skip(500));
+            assertEquals(content[522] & 0xff, input.read());
+            input.reset();
+            assertEquals(content[22] & 0xff, input.read());
+            assertEquals(977, input.available());
+            assertEquals(977, input.skip(2000));
+            assertEquals(-1, input.read());
+        } finally {
+            input.close();
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.mongodb.opendata.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+public class ParallelGzipInputStreamTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testMultipleMembers() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            byte[] member = text(random.nextInt(2000));
+            content.write(member);
+            compressed.write(gzip(member));
+        }
+        // chunk sizes smaller and larger than the members, on one and several threads
+        for (int chunkSize : new int[] { 64, 500, 1 << 20 }) {
+            for (int threads : new int[] { 1, 3 }) {
+                assertArrayEquals(content.toByteArray(), decompress(compressed.toByteArray(), threads, chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleMemberAcrossChunks() throws IOException {
+        byte[] content = text(100000);
+        byte[] compressed = gzip(content);
+        for (int chunkSize : new int[] { 1, 7, 1000 }) {
+            assertArrayEquals(content, decompress(compressed, 2, chunkSize));
+        }
+    }
+
+    @Test
+    public void testHeaderFields() throws IOException {
+        byte[] content = text(5000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        // FEXTRA, FNAME and FCOMMENT, split across chunks with a small chunk size
+        compressed.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4 | 8 | 16, 0, 0, 0, 0, 0, 3, 3, 0, 'B', 'C', 0 });
+        compressed.write("data.json\0a comment\0".getBytes("UTF-8"));
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(deflated, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        out.write(content);
+        out.close();
+        compressed.write(deflated.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        writeInt(compressed, (int) crc.getValue());
+        writeInt(compressed, content.length);
+        compressed.write(gzip(content));
+
+        byte[] expected = Arrays.copyOf(content, content.length * 2);
+        System.arraycopy(content, 0, expected, content.length, content.length);
+        for (int chunkSize : new int[] { 3, 16, 100000 }) {
+            assertArrayEquals(expected, decompress(compressed.toByteArray(), 2, chunkSize));
+        }
+    }
+
+    @Test
+    public void testTruncatedAndCorruptInput() throws IOException {
+        byte[] compressed = gzip(text(10000));
+        try {
+            decompress(Arrays.copyOf(compressed, compressed.length - 4), 2, 100);
+            fail("Truncated input should fail");
+        } catch (EOFException e) {
+            // expected
+        }
+        compressed[compressed.length - 8]++;
+        try {
+            decompress(compressed, 2, 100);
+            fail("A wrong CRC should fail");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHighlyCompressibleInput() throws IOException {
+        // each chunk of a few hundred bytes decodes to a quarter megabyte
+        byte[] content = new byte[4 * 1024 * 1024];
+        System.arraycopy(text(1000), 0, content, content.length / 2, 1000);
+        byte[] single = gzip(content);
+        ByteArrayOutputStream multiple = new ByteArrayOutputStream();
+        for (int i = 0; i < 4; i++) {
+            multiple.write(gzip(Arrays.copyOfRange(content, i * content.length / 4, (i + 1) * content.length / 4)));
+        }
+        for (byte[] compressed : new byte[][] { single, multiple.toByteArray() }) {
+            InputStream input = new ParallelGzipInputStream(new ByteArrayInputStream(compressed), 3, 256, 4096, 2);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[10000];
+                int n;
+                while ((n = input.read(buffer, 0, buffer.length)) != -1) {
+                    // the output comes in blocks
+                    assertTrue(n <= 4096);
+                    out.write(buffer, 0, n);
+                }
+                assertArrayEquals(content, out.toByteArray());
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+    @Test
+    public void testTrailingPadding() throws IOException {
+        byte[] content = text(10000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(gzip(content));
+        compressed.write(gzip(content));
+        // as tar and some tape formats pad the file
+        compressed.write(new byte[512]);
+
+        byte[] expected = Arrays.copyOf(content, content.length * 2);
+        System.arraycopy(content, 0, expected, content.length, content.length);
+        for (int chunkSize : new int[] { 3, 100, 100000 }) {
+            assertArrayEquals(expected, decompress(compressed.toByteArray(), 2, chunkSize));
+        }
+        try {
+            decompress(new byte[512], 2, 100);
+            fail("Padding alone should fail");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    private byte[] text(int length) {
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = (byte) (random.nextInt(8) == 0 ? ' ' : 'a' + random.nextInt(26));
+        }
+        return text;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(content);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >>> (i * 8));
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed, int threads, int chunkSize) throws IOException {
+        InputStream input = new ParallelGzipInputStream(new ByteArrayInputStream(compressed), threads, chunkSize);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = input.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.mongodb.opendata.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+    @Test
+    public void testReadAcrossBlocks() throws IOException {
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        InputStream input = new ReadAheadInputStream(new ByteArrayInputStream(content), 7, 2);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int n;
+            while ((n = input.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            assertArrayEquals(content, out.toByteArray());
+            assertEquals(-1, input.read());
+        } finally {
+            input.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorWhileReadingAhead() throws IOException {
+        InputStream failing = new InputStream() {
+
+            private int count;
+
+            @Override
+            public int read() {
+                if (++count > 10) {
+                    throw new OutOfMemoryError("simulated");
+                }
+                return 'x';
+            }
+        };
+        InputStream input = new ReadAheadInputStream(failing, 4, 1);
+        try {
+            while (input.read() != -1) {
+                // read until the error
+            }
+            fail("The error should reach the reader");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof OutOfMemoryError);
+        } finally {
+            input.close();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.mongodb.opendata.writer.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.util.KeyCompressionUtils;
+import com.mongodb.opendata.util.KeyDictionary;
+
+public class CsvResultWriterTest {
+
+    @Test
+    public void testColumnsFromResponse() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvResultWriter writer = new CsvResultWriter(output);
+        Response response = new Response();
+        response.setColumns(Arrays.asList("state", "population", "tags"));
+        writer.start(response);
+        writer.write(new BasicDBObject("_id", new ObjectId()).append("population", 19378102)
+                .append("state", "New York, NY").append("tags", Arrays.asList("a", "b")));
+        writer.write(new BasicDBObject("_id", new ObjectId()).append("state", "CA").append("other", 1));
+        writer.end(response);
+
+        assertEquals("state,population,tags\n\"New York, NY\",19378102,\"[ \"\"a\"\" , \"\"b\"\"]\"\nCA,,\n",
+                output.toString("UTF-8"));
+    }
+
+    @Test
+    public void testColumnsFromFirstRecord() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvResultWriter writer = new CsvResultWriter(output);
+        Response response = new Response();
+        writer.start(response);
+        writer.write(new BasicDBObject("_id", 1).append("a", 1.5).append("b", true));
+        writer.write(new BasicDBObject("_id", 2).append("b", false).append("a", 2.5));
+        writer.end(response);
+
+        assertEquals("a,b\n1.5,true\n2.5,false\n", output.toString("UTF-8"));
+    }
+
+    @Test
+    public void testOriginalKeyNames() throws Exception {
+        Map<String, String> keyToCompressedKeyMap = KeyCompressionUtils.getKeyToCompressedKeyMap(Arrays.asList(
+                "state", "population"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvResultWriter writer = new CsvResultWriter(output);
+        Response response = new Response();
+        response.setKeyDictionary(new KeyDictionary(keyToCompressedKeyMap));
+        writer.start(response);
+        writer.write(new BasicDBObject("_id", 1).append(keyToCompressedKeyMap.get("state"), "NY").append(
+                keyToCompressedKeyMap.get("population"), 19378102));
+        writer.end(response);
+
+        assertEquals("state,population\nNY,19378102\n", output.toString("UTF-8"));
+    }
+
+    @Test
+    public void testDottedColumns() throws Exception {
+        Map<String, String> keyToCompressedKeyMap = new HashMap<String, String>();
+        keyToCompressedKeyMap.put("address", "a");
+        keyToCompressedKeyMap.put("address.zip", "a.z");
+        keyToCompressedKeyMap.put("tags", "t");
+        keyToCompressedKeyMap.put("owner", "5");
+        keyToCompressedKeyMap.put("owner.name", "5.n");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvResultWriter writer = new CsvResultWriter(output);
+        Response response = new Response();
+        response.setKeyDictionary(new KeyDictionary(keyToCompressedKeyMap));
+        response.setColumns(Arrays.asList("address.zip", "tags.1", "owner"));
+        writer.start(response);
+        writer.write(new BasicDBObject("_id", 1).append("a", new BasicDBObject("z", "02134")).append("t",
+                Arrays.asList("a", "b")).append("5", new BasicDBObject("n", "Smith")));
+        writer.write(new BasicDBObject("_id", 2));
+        writer.end(response);
+
+        assertEquals("address.zip,tags.1,owner\n02134,b,\"{ \"\"name\"\" : \"\"Smith\"\"}\"\n,,\n",
+                output.toString("UTF-8"));
+    }
+
+    @Test
+    public void testHeaderWithoutRecords() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvResultWriter writer = new CsvResultWriter(output);
+        Response response = new Response();
+        response.setColumns(Arrays.asList("state", "population"));
+        writer.start(response);
+        writer.end(response);
+
+        assertEquals("state,population\n", output.toString("UTF-8"));
+    }
+
+}
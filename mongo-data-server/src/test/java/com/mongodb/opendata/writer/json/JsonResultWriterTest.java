@@ -0,0 +1,68 @@
+package com.mongodb.opendata.writer.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.util.KeyCompressionUtils;
+import com.mongodb.opendata.util.KeyDictionary;
+import com.mongodb.util.JSON;
+
+public class JsonResultWriterTest {
+
+    @Test
+    public void testSameJsonAsDriver() throws Exception {
+        DBObject record = new BasicDBObject("_id", new ObjectId()).append("name", "a \"quoted\" name")
+                .append("count", 3).append("big", 1L << 40).append("ratio", 0.25).append("flag", true)
+                .append("none", null).append("tags", Arrays.asList("x", "y"))
+                .append("nested", new BasicDBObject("zip", "02134"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonResultWriter writer = new JsonResultWriter(output);
+        Response response = new Response();
+        response.setTotal(2L);
+        writer.start(response);
+        writer.write(record);
+        response.setCount(1);
+        response.setNext("token");
+        response.setNextLink("http://localhost/api/a/b.json?after=token");
+        writer.end(response);
+
+        DBObject result = (DBObject) JSON.parse(output.toString("UTF-8"));
+        assertEquals(Arrays.asList(record), result.get("results"));
+        assertEquals(2, result.get("total"));
+        assertEquals(1, result.get("count"));
+        assertEquals("token", result.get("next"));
+        assertEquals("http://localhost/api/a/b.json?after=token", ((DBObject) result.get("links")).get("next"));
+    }
+
+    @Test
+    public void testOriginalKeyNames() throws Exception {
+        Map<String, String> keyToCompressedKeyMap = KeyCompressionUtils.getKeyToCompressedKeyMap(Arrays.asList(
+                "state", "population"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonResultWriter writer = new JsonResultWriter(output);
+        Response response = new Response();
+        response.setKeyDictionary(new KeyDictionary(keyToCompressedKeyMap));
+        writer.start(response);
+        writer.write(new BasicDBObject("_id", 1).append(keyToCompressedKeyMap.get("state"), "NY").append(
+                keyToCompressedKeyMap.get("population"), new BasicDBObject("2010", 19378102)));
+        writer.end(response);
+
+        DBObject result = (DBObject) JSON.parse(output.toString("UTF-8"));
+        assertEquals(Arrays.asList(new BasicDBObject("_id", 1).append("state", "NY").append("population",
+                new BasicDBObject("2010", 19378102))), result.get("results"));
+        // not counted
+        assertFalse(result.containsField("total"));
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.mongodb.opendata.writer.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.opendata.domain.Response;
+import com.mongodb.opendata.parser.xml.XmlDataParser;
+import com.mongodb.opendata.util.KeyCompressionUtils;
+import com.mongodb.opendata.util.KeyDictionary;
+
+public class XmlResultWriterTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        XmlDataParser parser = new XmlDataParser();
+        parser.setRecordName("PRODUCT");
+        List<DBObject> records = parser.parse(new ClassPathResource("RecallsDataSet_small.xml").getInputStream());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XmlResultWriter writer = new XmlResultWriter(output);
+        Response response = new Response();
+        response.setRecordName("PRODUCT");
+        response.setKeyDictionary(new KeyDictionary(parser.getKeyToCompressedKeyMap()));
+        response.setTotal((long) records.size());
+        writer.start(response);
+        for (DBObject record : records) {
+            writer.write(record);
+        }
+        response.setCount(records.size());
+        writer.end(response);
+
+        XmlDataParser reparser = new XmlDataParser();
+        reparser.setRecordName("PRODUCT");
+        List<DBObject> reparsed = reparser.parse(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(decompress(parser, records), decompress(reparser, reparsed));
+    }
+
+    private List<DBObject> decompress(XmlDataParser parser, List<DBObject> records) {
+        List<DBObject> decompressed = new ArrayList<DBObject>();
+        for (DBObject record : records) {
+            decompressed.add(KeyCompressionUtils.decompressKeys(record, parser.getCompressedKeyToKeyMap()));
+        }
+        return decompressed;
+    }
+
+    @Test
+    public void testAttributesAndInvalidNames() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XmlResultWriter writer = new XmlResultWriter(output);
+        Response response = new Response();
+        writer.start(response);
+        writer.write(new BasicDBObject("@id", 7).append("#text", "a < b").append("2010 population", 5)
+                .append("note", null));
+        response.setCount(1);
+        response.setNext("abc");
+        writer.end(response);
+
+        String xml = output.toString("UTF-8");
+        assertTrue(xml, xml.contains("<record id=\"7\">a &lt; b<_2010_population>5</_2010_population><note></note></record>"));
+        assertTrue(xml, xml.contains("<page count=\"1\" next=\"abc\"/></results>"));
+    }
+
+}